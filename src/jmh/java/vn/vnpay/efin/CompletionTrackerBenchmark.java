@@ -0,0 +1,99 @@
+package vn.vnpay.efin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark JMH cho phần theo dõi hoàn thành khi gửi nhiều tác vụ: CountDownLatch chung, danh sách Future
+ * và {@link CompletionTracker}. Tác vụ rỗng nên số đo là chi phí của chính phần theo dõi cùng việc tạo thread;
+ * chạy kèm -prof gc để so byte cấp phát mỗi op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class CompletionTrackerBenchmark {
+
+    public enum ExecutorKind {
+        VIRTUAL_PER_TASK,
+        WORK_STEALING_POOL
+    }
+
+    @Param({"VIRTUAL_PER_TASK", "WORK_STEALING_POOL"})
+    public ExecutorKind executorKind;
+
+    @Param({"10000", "100000"})
+    public int taskCount;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = switch (executorKind) {
+            case VIRTUAL_PER_TASK -> Executors.newVirtualThreadPerTaskExecutor();
+            case WORK_STEALING_POOL -> Executors.newWorkStealingPool();
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Benchmark
+    public long latch() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            executor.execute(latch::countDown);
+        }
+        latch.await();
+        return latch.getCount();
+    }
+
+    @Benchmark
+    public int futureList() throws Exception {
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < taskCount; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> index));
+        }
+        int sum = 0;
+        for (Future<Integer> future : futures) {
+            sum += future.get();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long tracker() throws InterruptedException {
+        CompletionTracker<Void> tracker = CompletionTracker.counting(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            tracker.execute(executor, i, index -> null);
+        }
+        tracker.await();
+        return tracker.completed();
+    }
+
+    @Benchmark
+    public int trackerCollecting() throws InterruptedException {
+        CompletionTracker<Integer> tracker = CompletionTracker.collecting(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            tracker.execute(executor, i, index -> index);
+        }
+        tracker.await();
+        int sum = 0;
+        for (int i = 0; i < taskCount; i++) {
+            sum += tracker.result(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,93 @@
+package vn.vnpay.efin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark JMH cho {@link QueryCoalescer}: mỗi op là fanIn virtual thread cùng tra cứu key ngẫu nhiên.
+ *
+ * SampleTime cho p50/p99 thời gian hoàn thành cả đợt tra cứu, counter roundTrips cho số lần gọi backend mỗi op.
+ * windowMicros = 0 là không gom, mỗi tra cứu gọi thẳng backend.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryCoalescerBenchmark {
+
+    @Param({"0", "500", "2000", "10000"})
+    public long windowMicros;
+
+    @Param({"1000"})
+    public int fanIn;
+
+    @Param({"500"})
+    public int distinctKeys;
+
+    // Độ trễ một round-trip xuống backend
+    @Param({"5"})
+    public int roundTripMillis;
+
+    private QueryCoalescer<Integer, Integer> coalescer;
+    private ExecutorService executor;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class RoundTrips {
+        public long roundTrips;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        if (windowMicros > 0) {
+            coalescer = new QueryCoalescer<>(this::loadBatch, Duration.ofNanos(windowMicros * 1_000), 1_000);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.close();
+        if (coalescer != null) {
+            coalescer.close();
+        }
+    }
+
+    private Map<Integer, Integer> loadBatch(List<Integer> keys) throws InterruptedException {
+        Thread.sleep(roundTripMillis);
+        Map<Integer, Integer> result = new HashMap<>(keys.size() * 2);
+        for (Integer key : keys) {
+            result.put(key, key * 2);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void lookups(RoundTrips counters) throws InterruptedException {
+        long before = coalescer == null ? 0 : coalescer.roundTrips();
+        VirtualThreadDemo.submitTasks(executor, fanIn, () -> {
+            int key = ThreadLocalRandom.current().nextInt(distinctKeys);
+            if (coalescer == null) {
+                loadBatch(List.of(key));
+            } else {
+                try {
+                    coalescer.get(key);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        counters.roundTrips += coalescer == null ? fanIn : coalescer.roundTrips() - before;
+    }
+}
@@ -0,0 +1,82 @@
+package vn.vnpay.efin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark JMH: truyền ngữ cảnh request xuống fanOut virtual thread con bằng InheritableThreadLocal (kiểu MDC,
+ * mỗi thread con nhận bản sao Map) so với {@link RequestContext} trên ScopedValue. Mọi biến thể đều fork qua
+ * StructuredTaskScope, chỉ khác cách truyền ngữ cảnh; {@code none} là mức nền khi không có ngữ cảnh.
+ *
+ * Chạy kèm -prof gc: gc.alloc.rate.norm chia cho fanOut là số byte mỗi thread con, thời gian mỗi op chia cho
+ * fanOut là chi phí tạo một thread con.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Xms1g", "-Xmx1g"})
+public class RequestContextBenchmark {
+
+    // Số mục trong ngữ cảnh kiểu MDC (request id, user, deadline, trace id...)
+    private static final int CONTEXT_ENTRIES = 8;
+
+    private static final InheritableThreadLocal<Map<String, String>> MDC = new InheritableThreadLocal<>() {
+        @Override
+        protected Map<String, String> childValue(Map<String, String> parentValue) {
+            return parentValue == null ? null : new HashMap<>(parentValue);
+        }
+    };
+
+    @Param({"100", "10000"})
+    public int fanOut;
+
+    private Map<String, String> mdc;
+    private RequestContext context;
+
+    @Setup
+    public void setUp() {
+        mdc = new HashMap<>();
+        for (int i = 0; i < CONTEXT_ENTRIES; i++) {
+            mdc.put("key-" + i, "value-" + i);
+        }
+        context = new RequestContext("req-1", "alice", Instant.now().plusSeconds(3600));
+    }
+
+    @Benchmark
+    public long none() throws Exception {
+        return fanOut(() -> 1L);
+    }
+
+    @Benchmark
+    public long inheritableThreadLocal() throws Exception {
+        MDC.set(mdc);
+        try {
+            return fanOut(() -> (long) MDC.get().size());
+        } finally {
+            MDC.remove();
+        }
+    }
+
+    @Benchmark
+    public long scopedValue() throws Exception {
+        return context.call(() -> fanOut(() -> (long) RequestContext.current().requestId().length()));
+    }
+
+    private long fanOut(Callable<Long> read) throws InterruptedException {
+        try (var scope = new StructuredTaskScope<Long>()) {
+            for (int i = 0; i < fanOut; i++) {
+                scope.fork(read);
+            }
+            scope.join();
+        }
+        return fanOut;
+    }
+}
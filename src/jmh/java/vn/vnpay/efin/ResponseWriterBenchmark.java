@@ -0,0 +1,156 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark JMH cho đường ghi response của /api/fast: nối String + getBytes (cách cũ của sendResponse)
+ * so với {@link ResponseWriter}. Chạy kèm -prof gc, so sánh gc.alloc.rate.norm (byte cấp phát mỗi op).
+ *
+ * Exchange là stub bỏ qua dữ liệu ghi ra, nên chỉ đo phần tạo và encode body.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseWriterBenchmark {
+
+    private static final ResponseWriter.Segment PREFIX = ResponseWriter.Segment.of("Phản hồi nhanh từ ");
+
+    private final StubExchange exchange = new StubExchange();
+
+    @Benchmark
+    public long stringConcat() throws Exception {
+        String response = "Phản hồi nhanh từ " + Thread.currentThread();
+        byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, responseBytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(responseBytes);
+        }
+        return exchange.written;
+    }
+
+    @Benchmark
+    public long responseWriter() throws Exception {
+        try (ResponseWriter writer = ResponseWriter.acquire()) {
+            writer.append(PREFIX).append(Thread.currentThread()).send(exchange, 200);
+        }
+        return exchange.written;
+    }
+
+    /**
+     * HttpExchange tối thiểu: bỏ qua body, chỉ đếm số byte để JIT không loại bỏ phần ghi.
+     */
+    static final class StubExchange extends HttpExchange {
+
+        private final Headers headers = new Headers();
+        private long written;
+        private int responseCode;
+
+        private final OutputStream body = new OutputStream() {
+            @Override
+            public void write(int b) {
+                written++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written += len;
+            }
+        };
+
+        @Override
+        public Headers getRequestHeaders() {
+            return headers;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return headers;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return null;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return "GET";
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return body;
+        }
+
+        @Override
+        public void sendResponseHeaders(int rCode, long responseLength) {
+            responseCode = rCode;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public String getProtocol() {
+            return "HTTP/1.1";
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return null;
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+        }
+
+        @Override
+        public void setStreams(InputStream i, OutputStream o) {
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return null;
+        }
+    }
+}
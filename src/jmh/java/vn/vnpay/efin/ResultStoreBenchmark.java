@@ -0,0 +1,74 @@
+package vn.vnpay.efin;
+
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark JMH cho phần tổng hợp kết quả batch (min/max/sum/p99): danh sách String tách độ trễ bằng split như
+ * demoMultiTableQuery cũ, danh sách record (một object mỗi kết quả, giá trị boxed khi đi qua stream) và
+ * {@link ResultStore} dạng cột. Chạy kèm -prof gc để so byte cấp phát mỗi op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ResultStoreBenchmark {
+
+    public record Result(int batchId, long latencyMicros, byte status) {}
+
+    @Param({"100000", "1000000"})
+    public int resultCount;
+
+    private List<String> strings;
+    private List<Result> records;
+    private ResultStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        strings = new ArrayList<>(resultCount);
+        records = new ArrayList<>(resultCount);
+        store = new ResultStore("benchmark");
+        try (ResultStore.Writer writer = store.writer()) {
+            for (int i = 0; i < resultCount; i++) {
+                long latency = random.nextLong(1_000, 20_000);
+                byte status = random.nextInt(100) == 0 ? ResultStore.ERROR : ResultStore.OK;
+                strings.add("Batch " + i / 1_000 + " xong sau " + latency + "ms");
+                records.add(new Result(i / 1_000, latency, status));
+                writer.append(i / 1_000, latency, status);
+            }
+        }
+    }
+
+    @Benchmark
+    public long stringSplit() {
+        long max = strings.stream().mapToLong(r -> Long.parseLong(r.split("sau ")[1].split("ms")[0])).max().orElse(0);
+        long sum = strings.stream().mapToLong(r -> Long.parseLong(r.split("sau ")[1].split("ms")[0])).sum();
+        Histogram histogram = new Histogram(TimeUnit.HOURS.toMicros(1), 3);
+        strings.forEach(r -> histogram.recordValue(Long.parseLong(r.split("sau ")[1].split("ms")[0])));
+        return max + sum + histogram.getValueAtPercentile(99);
+    }
+
+    @Benchmark
+    public long recordList() {
+        long max = records.stream().map(Result::latencyMicros).max(Long::compare).orElse(0L);
+        long min = records.stream().map(Result::latencyMicros).min(Long::compare).orElse(0L);
+        long sum = records.stream().mapToLong(Result::latencyMicros).sum();
+        Histogram histogram = new Histogram(TimeUnit.HOURS.toMicros(1), 3);
+        records.forEach(r -> histogram.recordValue(r.latencyMicros()));
+        return max + min + sum + histogram.getValueAtPercentile(99);
+    }
+
+    @Benchmark
+    public long columnar() {
+        ResultStore.Summary summary = store.summarize();
+        return summary.max() + summary.min() + summary.sum() + summary.percentile(99);
+    }
+}
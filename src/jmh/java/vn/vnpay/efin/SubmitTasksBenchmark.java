@@ -0,0 +1,77 @@
+package vn.vnpay.efin;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark JMH cho {@link VirtualThreadDemo#submitTasks} với các loại thread khác nhau.
+ *
+ * Throughput cho số lần gửi-và-chờ mỗi ms, SampleTime cho phân phối độ trễ (p50/p99),
+ * chạy kèm {@code -prof gc} để đo allocation mỗi op (gc.alloc.rate.norm).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class SubmitTasksBenchmark {
+
+    public enum ExecutorKind {
+        FIXED_POOL,
+        WORK_STEALING_POOL,
+        VIRTUAL_PER_TASK
+    }
+
+    @Param({"FIXED_POOL", "WORK_STEALING_POOL", "VIRTUAL_PER_TASK"})
+    public ExecutorKind executorKind;
+
+    // Kích thước pool cho FIXED_POOL (giống giá trị 100 trong VirtualThreadDemo)
+    @Param({"100"})
+    public int poolSize;
+
+    @Param({"1000", "10000"})
+    public int taskCount;
+
+    // Thời gian blocking IO (Thread.sleep) của mỗi tác vụ, 0 = thuần CPU
+    @Param({"0", "1", "10"})
+    public int blockMillis;
+
+    // Lượng công việc CPU mỗi tác vụ (token của Blackhole.consumeCPU), 0 = thuần IO
+    @Param({"0", "10000"})
+    public long cpuTokens;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = switch (executorKind) {
+            case FIXED_POOL -> Executors.newFixedThreadPool(poolSize);
+            case WORK_STEALING_POOL -> Executors.newWorkStealingPool();
+            case VIRTUAL_PER_TASK -> Executors.newVirtualThreadPerTaskExecutor();
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Benchmark
+    public void submitTasks() throws InterruptedException {
+        long tokens = cpuTokens;
+        long sleepMillis = blockMillis;
+        VirtualThreadDemo.submitTasks(executor, taskCount, () -> {
+            if (tokens > 0) {
+                Blackhole.consumeCPU(tokens);
+            }
+            if (sleepMillis > 0) {
+                Thread.sleep(sleepMillis);
+            }
+        });
+    }
+}
@@ -0,0 +1,66 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lớp kiểm soát tiếp nhận (admission control) đặt trước một HttpHandler.
+ *
+ * Request vượt giới hạn của ConcurrencyLimiter bị từ chối ngay (503 hoặc 429, kèm Retry-After)
+ * thay vì tạo thêm virtual thread chờ tài nguyên downstream, nên độ trễ của request được nhận vẫn ổn định.
+ */
+public class AdmissionHandler implements HttpHandler {
+
+    private final HttpHandler delegate;
+    private final ConcurrencyLimiter limiter;
+    private final int rejectStatus;
+    private final byte[] rejectBody;
+
+    public AdmissionHandler(HttpHandler delegate, ConcurrencyLimiter limiter, int rejectStatus) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.rejectStatus = rejectStatus;
+        this.rejectBody = ("Server quá tải (" + limiter.name() + "), vui lòng thử lại sau")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Bọc handler, từ chối bằng 503 Service Unavailable khi quá giới hạn.
+     */
+    public static AdmissionHandler wrap(HttpHandler delegate, ConcurrencyLimiter limiter) {
+        return new AdmissionHandler(delegate, limiter, 503);
+    }
+
+    public ConcurrencyLimiter limiter() {
+        return limiter;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!limiter.tryAcquire()) {
+            reject(exchange);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            delegate.handle(exchange);
+            dropped = exchange.getResponseCode() >= 500;
+        } finally {
+            limiter.release(System.nanoTime() - start, dropped);
+        }
+    }
+
+    private void reject(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(rejectStatus, rejectBody.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(rejectBody);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package vn.vnpay.efin;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logger bất đồng bộ: các thread ghi log chỉ đặt tham số vào một ring buffer lock-free,
+ * một writer thread duy nhất format message, encode UTF-8 vào direct buffer và ghi theo lô xuống FileChannel.
+ *
+ * Khác với System.out (PrintStream có lock bên trong), 10k virtual thread ghi log cùng lúc không phải
+ * tranh nhau một lock, và message chỉ được format ở phía consumer.
+ */
+public class AsyncLogger implements AutoCloseable {
+
+    /**
+     * Xử lý khi ring buffer đầy: bỏ message (đếm lại) hoặc chờ tới khi có chỗ.
+     */
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK
+    }
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    // Một ô trong ring buffer; sequence cho biết ô đang trống hay đã có dữ liệu (thuật toán của Vyukov)
+    private static final class Slot {
+        private volatile long sequence;
+        private long timestampMillis;
+        private String template;
+        private int argCount;
+        private Object arg0;
+        private Object arg1;
+        private Object arg2;
+        private Object arg3;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final OverflowPolicy policy;
+    private final FileChannel channel;
+    private final boolean closeChannel;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+
+    // Chỉ writer thread dùng các trường dưới đây
+    private long head;
+    private final StringBuilder line = new StringBuilder(256);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024);
+
+    // Vị trí đã ghi xong xuống channel, để awaitDrained biết khi nào log đã ra tới file
+    private volatile long written;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity số message tối đa đang chờ ghi, làm tròn lên lũy thừa của 2
+     */
+    public AsyncLogger(FileChannel channel, boolean closeChannel, int capacity, OverflowPolicy policy) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i;
+        }
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.policy = policy;
+        this.writer = Thread.ofPlatform().daemon().name("async-log-writer").start(this::drainLoop);
+    }
+
+    /**
+     * Logger ghi ra stdout qua FileChannel (không đi qua PrintStream của System.out).
+     */
+    public static AsyncLogger toStdout(int capacity, OverflowPolicy policy) {
+        FileChannel stdout = new FileOutputStream(FileDescriptor.out).getChannel();
+        return new AsyncLogger(stdout, false, capacity, policy);
+    }
+
+    public static AsyncLogger toFile(Path file, int capacity, OverflowPolicy policy) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new AsyncLogger(channel, true, capacity, policy);
+    }
+
+    public void log(String template) {
+        publish(template, 0, null, null, null, null);
+    }
+
+    public void log(String template, Object arg0) {
+        publish(template, 1, arg0, null, null, null);
+    }
+
+    public void log(String template, Object arg0, Object arg1) {
+        publish(template, 2, arg0, arg1, null, null);
+    }
+
+    public void log(String template, Object arg0, Object arg1, Object arg2) {
+        publish(template, 3, arg0, arg1, arg2, null);
+    }
+
+    public void log(String template, Object arg0, Object arg1, Object arg2, Object arg3) {
+        publish(template, 4, arg0, arg1, arg2, arg3);
+    }
+
+    // Số message bị bỏ do ring buffer đầy (policy DROP), hoặc logger đóng khi producer đang chờ chỗ (policy BLOCK)
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    private void publish(String template, int argCount, Object arg0, Object arg1, Object arg2, Object arg3) {
+        if (closed) {
+            return;
+        }
+        int spins = 0;
+        long position;
+        Slot slot;
+        while (true) {
+            position = tail.get();
+            slot = slots[(int) (position & mask)];
+            long difference = slot.sequence - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                // Ring buffer đầy. Đã đóng thì writer thread không còn drain nữa: chờ tiếp sẽ treo mãi
+                if (policy == OverflowPolicy.DROP || closed) {
+                    dropped.increment();
+                    return;
+                }
+                backoff(spins++);
+            }
+        }
+        slot.timestampMillis = System.currentTimeMillis();
+        slot.template = template;
+        slot.argCount = argCount;
+        slot.arg0 = arg0;
+        slot.arg1 = arg1;
+        slot.arg2 = arg2;
+        slot.arg3 = arg3;
+        slot.sequence = position + 1;
+    }
+
+    private static void backoff(int spins) {
+        if (spins < 100) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+    }
+
+    private void drainLoop() {
+        int idle = 0;
+        while (true) {
+            int drained = drain();
+            if (drained > 0) {
+                idle = 0;
+                continue;
+            }
+            flush();
+            written = head;
+            if (closed && drain() == 0) {
+                flush();
+                written = head;
+                return;
+            }
+            // Không có log: ngủ tăng dần tới 1ms, tránh chiếm CPU khi rảnh
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(Math.min(1000, 10L << Math.min(idle++, 7))));
+        }
+    }
+
+    private int drain() {
+        int count = 0;
+        while (true) {
+            Slot slot = slots[(int) (head & mask)];
+            if (slot.sequence != head + 1) {
+                return count;
+            }
+            format(slot);
+            slot.template = null;
+            slot.arg0 = null;
+            slot.arg1 = null;
+            slot.arg2 = null;
+            slot.arg3 = null;
+            slot.sequence = head + slots.length;
+            head++;
+            count++;
+            encodeLine();
+        }
+    }
+
+    private void format(Slot slot) {
+        line.setLength(0);
+        TIME_FORMAT.formatTo(Instant.ofEpochMilli(slot.timestampMillis), line);
+        line.append(' ');
+        String template = slot.template;
+        int argIndex = 0;
+        int from = 0;
+        int placeholder;
+        while ((placeholder = template.indexOf("{}", from)) >= 0) {
+            line.append(template, from, placeholder);
+            if (argIndex < slot.argCount) {
+                appendArg(switch (argIndex) {
+                    case 0 -> slot.arg0;
+                    case 1 -> slot.arg1;
+                    case 2 -> slot.arg2;
+                    default -> slot.arg3;
+                });
+                argIndex++;
+            } else {
+                line.append("{}");
+            }
+            from = placeholder + 2;
+        }
+        line.append(template, from, template.length()).append('\n');
+    }
+
+    private void appendArg(Object arg) {
+        // Thread được ghi theo id/tên lúc format; carrier thread lúc ghi log không còn ý nghĩa khi đã xuống consumer
+        if (arg instanceof Thread thread) {
+            line.append(thread.isVirtual() ? "VirtualThread[#" : "Thread[#").append(thread.threadId());
+            if (!thread.getName().isEmpty()) {
+                line.append(',').append(thread.getName());
+            }
+            line.append(']');
+        } else {
+            line.append(arg);
+        }
+    }
+
+    private void encodeLine() {
+        CharBuffer chars = CharBuffer.wrap(line);
+        while (true) {
+            CoderResult result = encoder.encode(chars, out, true);
+            if (!result.isOverflow()) {
+                break;
+            }
+            flush();
+        }
+        encoder.reset();
+    }
+
+    private void flush() {
+        out.flip();
+        try {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } catch (IOException e) {
+            // Không ghi được log thì bỏ, không làm hỏng ứng dụng
+        }
+        out.clear();
+    }
+
+    /**
+     * Chờ tới khi mọi message đã được publish trước lời gọi này được ghi xuống channel.
+     */
+    public void awaitDrained() {
+        long target = tail.get();
+        while (written < target && writer.isAlive()) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+    /**
+     * Ghi nốt các message còn trong ring buffer rồi dừng writer thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+            if (closeChannel) {
+                channel.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // Bỏ qua lỗi khi đóng file log
+        }
+    }
+}
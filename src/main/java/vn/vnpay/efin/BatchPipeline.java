@@ -0,0 +1,212 @@
+package vn.vnpay.efin;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Pipeline xử lý batch dạng streaming: source → batcher → workers → sink, nối với nhau bằng hàng đợi có giới hạn.
+ *
+ * Record được đọc dần từ source, khi hàng đợi phía sau đầy thì stage phía trước bị chặn lại (backpressure),
+ * nên bộ nhớ dùng chỉ phụ thuộc kích thước hàng đợi và batch, không phụ thuộc tổng số record.
+ * Mỗi stage chạy trên virtual thread; số worker cố định nên độ song song có giới hạn.
+ *
+ * @param <T> kiểu record
+ */
+public class BatchPipeline<T> {
+
+    /**
+     * Stage xử lý một batch, chạy trên worker.
+     */
+    @FunctionalInterface
+    public interface BatchWorker<T> {
+        void process(int batchId, List<T> batch) throws Exception;
+    }
+
+    // Kết quả một batch được đưa tới sink
+    public record BatchResult(int batchId, int size, Duration processingTime) {}
+
+    // Số record đi qua một stage và tốc độ của stage đó
+    public record StageStats(String stage, long records, Duration elapsed) {
+        public long recordsPerSecond() {
+            return elapsed.toNanos() == 0 ? 0 : records * 1_000_000_000L / elapsed.toNanos();
+        }
+    }
+
+    /**
+     * Kết quả chạy pipeline; maxInFlight là số record lớn nhất đã đọc từ source mà sink chưa nhận (lấy mẫu mỗi
+     * 1024 record), bị chặn bởi kích thước hàng đợi và batch chứ không tăng theo tổng số record.
+     */
+    public record Report(List<StageStats> stages, long batches, Duration elapsed, long maxInFlight, Throwable error) {}
+
+    // Đánh dấu hết dữ liệu trong các hàng đợi
+    private static final Object END = new Object();
+    private static final Batch<?> END_BATCH = new Batch<>(-1, List.of());
+    private static final BatchResult END_RESULT = new BatchResult(-1, 0, Duration.ZERO);
+
+    private record Batch<T>(int id, List<T> records) {}
+
+    private final int batchSize;
+    private final int workers;
+    private final int queueCapacity;
+    private final BatchWorker<T> worker;
+    private final Consumer<BatchResult> sink;
+
+    public BatchPipeline(int batchSize, int workers, int queueCapacity, BatchWorker<T> worker, Consumer<BatchResult> sink) {
+        this.batchSize = batchSize;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.worker = worker;
+        this.sink = sink;
+    }
+
+    /**
+     * Chạy pipeline tới khi source hết dữ liệu hoặc có stage bị lỗi.
+     */
+    public Report run(Iterator<? extends T> source) throws InterruptedException {
+        // Hàng đợi record đủ chứa vài batch, hàng đợi batch/kết quả tính theo số batch
+        BlockingQueue<Object> records = new ArrayBlockingQueue<>(Math.max(queueCapacity, batchSize) * 2);
+        BlockingQueue<Batch<T>> batches = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<BatchResult> results = new ArrayBlockingQueue<>(queueCapacity);
+
+        LongAdder sourced = new LongAdder();
+        LongAdder batched = new LongAdder();
+        LongAdder processed = new LongAdder();
+        LongAdder sunk = new LongAdder();
+        LongAdder batchCount = new LongAdder();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+
+        long start = System.nanoTime();
+        long[] stageEnd = new long[4];
+        long[] maxInFlight = new long[1];
+
+        threads.add(stage("pipeline-source", error, () -> {
+            long read = 0;
+            while (source.hasNext()) {
+                records.put(source.next());
+                sourced.increment();
+                if ((++read & 1023) == 0) {
+                    maxInFlight[0] = Math.max(maxInFlight[0], read - sunk.sum());
+                }
+            }
+            records.put(END);
+            stageEnd[0] = System.nanoTime();
+        }));
+
+        threads.add(stage("pipeline-batcher", error, () -> {
+            int batchId = 0;
+            List<T> current = new ArrayList<>(batchSize);
+            while (true) {
+                Object record = records.take();
+                if (record == END) {
+                    break;
+                }
+                @SuppressWarnings("unchecked")
+                T typed = (T) record;
+                current.add(typed);
+                if (current.size() == batchSize) {
+                    batches.put(new Batch<>(batchId++, current));
+                    batched.add(current.size());
+                    current = new ArrayList<>(batchSize);
+                }
+            }
+            if (!current.isEmpty()) {
+                batches.put(new Batch<>(batchId, current));
+                batched.add(current.size());
+            }
+            batches.put(endBatch());
+            stageEnd[1] = System.nanoTime();
+        }));
+
+        AtomicInteger finishedWorkers = new AtomicInteger();
+        for (int i = 0; i < workers; i++) {
+            threads.add(stage("pipeline-worker-" + i, error, () -> {
+                while (true) {
+                    Batch<T> batch = batches.take();
+                    if (batch == END_BATCH) {
+                        // Trả lại dấu kết thúc cho các worker khác, worker cuối cùng báo cho sink
+                        batches.put(batch);
+                        if (finishedWorkers.incrementAndGet() == workers) {
+                            results.put(END_RESULT);
+                            stageEnd[2] = System.nanoTime();
+                        }
+                        return;
+                    }
+                    long t0 = System.nanoTime();
+                    worker.process(batch.id(), batch.records());
+                    processed.add(batch.records().size());
+                    results.put(new BatchResult(batch.id(), batch.records().size(), Duration.ofNanos(System.nanoTime() - t0)));
+                }
+            }));
+        }
+
+        threads.add(stage("pipeline-sink", error, () -> {
+            while (true) {
+                BatchResult result = results.take();
+                if (result == END_RESULT) {
+                    break;
+                }
+                sink.accept(result);
+                sunk.add(result.size());
+                batchCount.increment();
+            }
+            stageEnd[3] = System.nanoTime();
+        }));
+
+        // Một stage lỗi thì dừng toàn bộ pipeline để các stage khác không bị treo trên hàng đợi
+        try {
+            for (Thread thread : threads) {
+                while (!thread.join(Duration.ofMillis(100))) {
+                    if (error.get() != null) {
+                        threads.forEach(Thread::interrupt);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            threads.forEach(Thread::interrupt);
+            throw e;
+        }
+
+        long end = System.nanoTime();
+        List<StageStats> stages = List.of(
+                stats("source", sourced, start, stageEnd[0], end),
+                stats("batcher", batched, start, stageEnd[1], end),
+                stats("workers", processed, start, stageEnd[2], end),
+                stats("sink", sunk, start, stageEnd[3], end));
+        return new Report(stages, batchCount.sum(), Duration.ofNanos(end - start), maxInFlight[0], error.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Batch<T> endBatch() {
+        return (Batch<T>) END_BATCH;
+    }
+
+    private static StageStats stats(String name, LongAdder count, long start, long stageEnd, long end) {
+        return new StageStats(name, count.sum(), Duration.ofNanos((stageEnd == 0 ? end : stageEnd) - start));
+    }
+
+    @FunctionalInterface
+    private interface StageBody {
+        void run() throws Exception;
+    }
+
+    private static Thread stage(String name, AtomicReference<Throwable> error, StageBody body) {
+        return Thread.ofVirtual().name(name).start(() -> {
+            try {
+                body.run();
+            } catch (InterruptedException e) {
+                // Pipeline bị dừng do stage khác lỗi
+            } catch (Throwable e) {
+                error.compareAndSet(null, e);
+            }
+        });
+    }
+}
@@ -0,0 +1,89 @@
+package vn.vnpay.efin;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Các cách mô phỏng blocking IO trong demo.
+ *
+ * Thread.sleep không bao giờ pin carrier thread, nên demo chỉ dùng sleep sẽ che mất vấn đề pinning.
+ * Chọn chiến lược qua system property, ví dụ: -Dblocking.strategy=SYNCHRONIZED
+ */
+public enum BlockingStrategy {
+
+    // Thread.sleep thuần: virtual thread unmount khỏi carrier
+    SLEEP {
+        @Override
+        public void block(long millis) throws InterruptedException {
+            Thread.sleep(millis);
+        }
+    },
+
+    // Chờ IO bên trong synchronized: virtual thread bị pin vào carrier suốt thời gian chờ (JDK 21)
+    SYNCHRONIZED {
+        @Override
+        public void block(long millis) throws InterruptedException {
+            synchronized (MONITORS[stripe()]) {
+                Thread.sleep(millis);
+            }
+        }
+    },
+
+    // Cùng đoạn code nhưng dùng ReentrantLock: virtual thread vẫn unmount được khi chờ
+    REENTRANT_LOCK {
+        @Override
+        public void block(long millis) throws InterruptedException {
+            ReentrantLock lock = LOCKS[stripe()];
+            lock.lockInterruptibly();
+            try {
+                Thread.sleep(millis);
+            } finally {
+                lock.unlock();
+            }
+        }
+    },
+
+    // Đọc socket thật từ echo server cục bộ, server trả lời sau millis
+    SOCKET {
+        @Override
+        public void block(long millis) throws InterruptedException {
+            try {
+                LocalEchoServer.shared().roundTrip(millis);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    };
+
+    // Chia lock theo stripe để SYNCHRONIZED và REENTRANT_LOCK có cùng mức tranh chấp, chỉ khác ở pinning
+    private static final int STRIPES = 64;
+    private static final Object[] MONITORS = new Object[STRIPES];
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            MONITORS[i] = new Object();
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    private static final BlockingStrategy CURRENT =
+            BlockingStrategy.valueOf(System.getProperty("blocking.strategy", "SLEEP").toUpperCase());
+
+    /**
+     * Chặn thread hiện tại trong khoảng millis theo chiến lược này.
+     */
+    public abstract void block(long millis) throws InterruptedException;
+
+    /**
+     * Chiến lược được chọn qua system property blocking.strategy (mặc định SLEEP).
+     */
+    public static BlockingStrategy current() {
+        return CURRENT;
+    }
+
+    private static int stripe() {
+        return (int) (Thread.currentThread().threadId() % STRIPES);
+    }
+}
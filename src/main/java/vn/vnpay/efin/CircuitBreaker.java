@@ -0,0 +1,178 @@
+package vn.vnpay.efin;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Circuit breaker không dùng lock cho một downstream.
+ *
+ * - CLOSED: cho mọi cuộc gọi qua, đếm lỗi theo cửa sổ windowSize cuộc gọi liên tiếp. Khi đủ minCalls và tỉ lệ lỗi
+ *   vượt ngưỡng thì chuyển sang OPEN.
+ * - OPEN: từ chối ngay (fail fast) trong openDuration, không để request dồn vào dependency đang hỏng.
+ * - HALF_OPEN: cho tối đa halfOpenProbes cuộc gọi thử; tất cả thành công thì đóng lại, một lần lỗi thì mở tiếp.
+ *
+ * Mọi chuyển trạng thái là CAS trên AtomicReference, bộ đếm cửa sổ gói số cuộc gọi/số lỗi trong một AtomicLong.
+ * Các bộ đếm chỉ cần gần đúng: kết quả của cuộc gọi thử trả về muộn có thể rơi vào chu kỳ sau.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Quyền gọi do {@link #tryAcquire()} cấp, truyền lại khi báo kết quả.
+     */
+    public enum Permit {
+        REJECTED,
+        NORMAL,
+        // Cuộc gọi thử trong trạng thái HALF_OPEN
+        PROBE
+    }
+
+    // 32 bit cao: số cuộc gọi trong cửa sổ, 32 bit thấp: số lỗi
+    private static final long CALL = 1L << 32;
+    private static final long FAILURE_MASK = CALL - 1;
+
+    private final String name;
+    private final int windowSize;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenProbes;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicInteger probesStarted = new AtomicInteger();
+    private final AtomicInteger probesSucceeded = new AtomicInteger();
+    private volatile long openedAtNanos;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    public CircuitBreaker(String name, int windowSize, int minCalls, double failureRateThreshold,
+                          Duration openDuration, int halfOpenProbes) {
+        this.name = name;
+        this.windowSize = windowSize;
+        this.minCalls = Math.min(minCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    /**
+     * Mở khi từ 50% trong 20 cuộc gọi gần nhất lỗi (tối thiểu 10 cuộc gọi), thử lại sau 2 giây với 3 cuộc gọi.
+     */
+    public static CircuitBreaker withDefaults(String name) {
+        return new CircuitBreaker(name, 20, 10, 0.5, Duration.ofSeconds(2), 3);
+    }
+
+    public Permit tryAcquire() {
+        while (true) {
+            switch (state.get()) {
+                case CLOSED -> {
+                    return Permit.NORMAL;
+                }
+                case OPEN -> {
+                    if (System.nanoTime() - openedAtNanos < openNanos) {
+                        rejected.increment();
+                        return Permit.REJECTED;
+                    }
+                    // Hết thời gian mở: một thread chuyển sang HALF_OPEN, các thread khác đọc lại trạng thái
+                    state.compareAndSet(State.OPEN, State.HALF_OPEN);
+                }
+                case HALF_OPEN -> {
+                    int started = probesStarted.get();
+                    if (started >= halfOpenProbes) {
+                        rejected.increment();
+                        return Permit.REJECTED;
+                    }
+                    if (probesStarted.compareAndSet(started, started + 1)) {
+                        return Permit.PROBE;
+                    }
+                }
+            }
+        }
+    }
+
+    public void onSuccess(Permit permit) {
+        if (permit == Permit.PROBE) {
+            if (state.get() == State.HALF_OPEN && probesSucceeded.incrementAndGet() >= halfOpenProbes) {
+                window.set(0);
+                state.compareAndSet(State.HALF_OPEN, State.CLOSED);
+            }
+        } else if (permit == Permit.NORMAL) {
+            record(CALL);
+        }
+    }
+
+    public void onFailure(Permit permit) {
+        if (permit == Permit.PROBE) {
+            trip(State.HALF_OPEN);
+        } else if (permit == Permit.NORMAL) {
+            long current = record(CALL + 1);
+            long calls = current >>> 32;
+            long failures = current & FAILURE_MASK;
+            if (calls >= minCalls && failures >= calls * failureRateThreshold) {
+                trip(State.CLOSED);
+            }
+        }
+    }
+
+    /**
+     * Cuộc gọi bị hủy trước khi có kết quả (thread gọi bị interrupt): không tính vào cửa sổ lỗi, lượt gọi thử được
+     * trả lại để cuộc gọi khác thử thay.
+     */
+    public void onCancel(Permit permit) {
+        if (permit == Permit.PROBE && state.get() == State.HALF_OPEN) {
+            probesStarted.updateAndGet(started -> Math.max(0, started - 1));
+        }
+    }
+
+    // Cộng vào cửa sổ; cửa sổ đầy thì thread đầu tiên thấy nó đặt lại về 0
+    private long record(long delta) {
+        long current = window.addAndGet(delta);
+        if ((current >>> 32) >= windowSize) {
+            window.compareAndSet(current, 0);
+        }
+        return current;
+    }
+
+    // Bộ đếm cuộc gọi thử được đặt lại trước khi trạng thái OPEN hiện ra, nên chu kỳ HALF_OPEN sau bắt đầu từ 0
+    private void trip(State from) {
+        // Lỗi của cuộc gọi bắt đầu từ trạng thái trước (trả về muộn) không được làm hỏng chu kỳ hiện tại
+        if (state.get() != from) {
+            return;
+        }
+        openedAtNanos = System.nanoTime();
+        probesStarted.set(0);
+        probesSucceeded.set(0);
+        if (state.compareAndSet(from, State.OPEN)) {
+            opened.increment();
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public State state() {
+        return state.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Số lần breaker chuyển sang OPEN.
+     */
+    public long opened() {
+        return opened.sum();
+    }
+}
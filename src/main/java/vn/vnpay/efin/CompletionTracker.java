@@ -0,0 +1,240 @@
+package vn.vnpay.efin;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Theo dõi hoàn thành của một số lượng tác vụ biết trước, thay cho một CountDownLatch chung hoặc danh sách Future.
+ *
+ * - Đếm ngược theo stripe: tác vụ thứ i thuộc stripe i % stripes, mỗi stripe là một ô đếm riêng (cách nhau
+ *   128 byte để không false sharing), nên hàng nghìn thread kết thúc cùng lúc không CAS chung một biến.
+ *   Stripe về 0 thì giảm bộ đếm stripe còn lại; stripe cuối cùng đánh thức các thread đang chờ.
+ * - Lỗi được gom lại: lỗi đầu tiên là lỗi chính, các lỗi sau gắn vào dạng suppressed (tối đa MAX_SUPPRESSED).
+ * - Kết quả (tùy chọn) ghi vào mảng cấp phát sẵn theo index, không có Future hay danh sách tăng dần.
+ *
+ * Mỗi index chỉ được hoàn thành một lần. Bộ nhớ chiếm cố định theo số stripe, cộng mảng kết quả nếu có.
+ */
+public final class CompletionTracker<T> {
+
+    /**
+     * Tác vụ nhận index của nó, giá trị trả về được lưu nếu tracker thu kết quả.
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        T call(int index) throws Exception;
+    }
+
+    // 16 long = 128 byte giữa hai ô đếm, đủ tránh false sharing kể cả với prefetch theo cặp cache line
+    private static final int PAD = 16;
+    private static final int MAX_SUPPRESSED = 16;
+
+    private final int expected;
+    private final int stripes;
+    private final AtomicLongArray remaining;
+    private final AtomicInteger pendingStripes;
+    private final Object[] results;
+    private final LongAdder failed = new LongAdder();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicInteger suppressed = new AtomicInteger();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition finished = lock.newCondition();
+    private volatile boolean done;
+
+    private CompletionTracker(int expected, boolean collectResults) {
+        if (expected < 0) {
+            throw new IllegalArgumentException("expected phải >= 0");
+        }
+        this.expected = expected;
+        this.stripes = Math.max(1, Math.min(expected,
+                Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4)));
+        this.remaining = new AtomicLongArray(stripes * PAD);
+        for (int s = 0; s < stripes; s++) {
+            remaining.set(s * PAD, expected / stripes + (s < expected % stripes ? 1 : 0));
+        }
+        this.pendingStripes = new AtomicInteger(stripes);
+        this.results = collectResults ? new Object[expected] : null;
+        this.done = expected == 0;
+    }
+
+    /**
+     * Chỉ đếm hoàn thành và gom lỗi, không giữ kết quả.
+     */
+    public static CompletionTracker<Void> counting(int expected) {
+        return new CompletionTracker<>(expected, false);
+    }
+
+    /**
+     * Đếm hoàn thành và lưu kết quả của tác vụ thứ i vào ô i của mảng cấp phát sẵn.
+     */
+    public static <T> CompletionTracker<T> collecting(int expected) {
+        return new CompletionTracker<>(expected, true);
+    }
+
+    /**
+     * Gửi tác vụ index vào executor. Dùng execute nên không tạo Future cho mỗi tác vụ.
+     * Executor từ chối thì tác vụ được tính là lỗi (để await không chờ mãi) rồi ném lại ngoại lệ.
+     */
+    public void execute(Executor executor, int index, Task<? extends T> task) {
+        checkIndex(index);
+        try {
+            executor.execute(() -> run(index, task));
+        } catch (RejectedExecutionException e) {
+            fail(index, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Chạy tác vụ index trên thread hiện tại và ghi nhận kết quả hoặc lỗi.
+     */
+    public void run(int index, Task<? extends T> task) {
+        T value;
+        try {
+            value = task.call(index);
+        } catch (Throwable e) {
+            fail(index, e);
+            return;
+        }
+        complete(index, value);
+    }
+
+    public void complete(int index, T value) {
+        checkIndex(index);
+        if (results != null) {
+            // Ghi trước khi đếm ngược: thread chờ thấy kết quả nhờ happens-before qua các biến atomic/volatile
+            results[index] = value;
+        }
+        countDown(index);
+    }
+
+    public void fail(int index, Throwable error) {
+        checkIndex(index);
+        failed.increment();
+        try {
+            // Cùng một exception báo nhiều lần (ví dụ lỗi dùng chung của downstream) không tự suppress chính nó
+            Throwable first = failure.compareAndExchange(null, error);
+            if (first != null && first != error && suppressed.getAndIncrement() < MAX_SUPPRESSED) {
+                first.addSuppressed(error);
+            }
+        } finally {
+            // Luôn đếm ngược, nếu không thread đang await() chờ mãi
+            countDown(index);
+        }
+    }
+
+    private void countDown(int index) {
+        if (remaining.decrementAndGet((index % stripes) * PAD) == 0 && pendingStripes.decrementAndGet() == 0) {
+            lock.lock();
+            try {
+                done = true;
+                finished.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= expected) {
+            throw new IndexOutOfBoundsException("index " + index + " ngoài [0, " + expected + ")");
+        }
+    }
+
+    public void await() throws InterruptedException {
+        if (done) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (!done) {
+                finished.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false nếu hết thời gian mà vẫn còn tác vụ chưa xong
+     */
+    public boolean await(Duration timeout) throws InterruptedException {
+        if (done) {
+            return true;
+        }
+        long nanos = timeout.toNanos();
+        lock.lock();
+        try {
+            while (!done) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = finished.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public int expected() {
+        return expected;
+    }
+
+    // Đọc lần lượt các stripe nên chỉ là giá trị gần đúng khi tác vụ còn đang chạy
+    public long completed() {
+        long left = 0;
+        for (int s = 0; s < stripes; s++) {
+            left += remaining.get(s * PAD);
+        }
+        return expected - left;
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Lỗi đầu tiên, các lỗi sau nằm trong getSuppressed(); null nếu không có tác vụ nào lỗi.
+     */
+    public Throwable failure() {
+        return failure.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    public T result(int index) {
+        if (results == null) {
+            throw new IllegalStateException("Tracker không thu kết quả, dùng CompletionTracker.collecting");
+        }
+        return (T) results[index];
+    }
+
+    /**
+     * Danh sách kết quả theo index (view trên mảng, không sao chép). Tác vụ lỗi có kết quả null.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> results() {
+        if (results == null) {
+            throw new IllegalStateException("Tracker không thu kết quả, dùng CompletionTracker.collecting");
+        }
+        return (List<T>) Arrays.asList(results);
+    }
+
+    @Override
+    public String toString() {
+        return "CompletionTracker[" + completed() + "/" + expected + ", lỗi " + failedCount() + "]";
+    }
+}
@@ -0,0 +1,179 @@
+package vn.vnpay.efin;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Giới hạn số request xử lý đồng thời, hoạt động như một semaphore non-blocking:
+ * tryAcquire trả về false ngay khi đã đủ giới hạn thay vì xếp hàng.
+ *
+ * Giới hạn có thể cố định hoặc được điều chỉnh theo độ trễ quan sát được (AIMD hoặc gradient).
+ */
+public class ConcurrencyLimiter {
+
+    /**
+     * Thuật toán tính giới hạn mới từ một mẫu độ trễ.
+     */
+    public interface Algorithm {
+        double update(double limit, long rttNanos, int inFlight, boolean dropped);
+    }
+
+    private final String name;
+    private final Algorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    // Cập nhật giới hạn theo kiểu lấy mẫu: thread nào không lấy được lock thì bỏ qua mẫu của mình
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    private volatile double limit;
+
+    public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, Algorithm algorithm) {
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.algorithm = algorithm;
+    }
+
+    public static ConcurrencyLimiter fixed(String name, int limit) {
+        return new ConcurrencyLimiter(name, limit, limit, limit, null);
+    }
+
+    public static ConcurrencyLimiter aimd(String name, int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold) {
+        return new ConcurrencyLimiter(name, initialLimit, minLimit, maxLimit, new Aimd(latencyThreshold.toNanos(), 0.9));
+    }
+
+    public static ConcurrencyLimiter gradient(String name, int initialLimit, int minLimit, int maxLimit) {
+        return new ConcurrencyLimiter(name, initialLimit, minLimit, maxLimit, new Gradient());
+    }
+
+    /**
+     * Nhận một chỗ nếu số request đang xử lý còn dưới giới hạn, không bao giờ chờ.
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        accepted.increment();
+        return true;
+    }
+
+    /**
+     * Trả chỗ và đưa độ trễ của request vào bộ điều khiển giới hạn.
+     *
+     * @param dropped request lỗi hoặc bị coi là quá tải
+     */
+    public void release(long rttNanos, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        if (algorithm != null && updateLock.tryLock()) {
+            try {
+                double next = algorithm.update(limit, rttNanos, current, dropped);
+                limit = Math.max(minLimit, Math.min(maxLimit, next));
+            } finally {
+                updateLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Trả chỗ của một request bị hủy giữa chừng: không có mẫu RTT nên không cập nhật giới hạn.
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long accepted() {
+        return accepted.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Additive increase / multiplicative decrease: tăng 1 khi đang dùng gần hết giới hạn,
+     * nhân với backoff khi request lỗi hoặc chậm quá ngưỡng.
+     */
+    static final class Aimd implements Algorithm {
+
+        private final long latencyThresholdNanos;
+        private final double backoff;
+
+        Aimd(long latencyThresholdNanos, double backoff) {
+            this.latencyThresholdNanos = latencyThresholdNanos;
+            this.backoff = backoff;
+        }
+
+        @Override
+        public double update(double limit, long rttNanos, int inFlight, boolean dropped) {
+            if (dropped || rttNanos > latencyThresholdNanos) {
+                return limit * backoff;
+            }
+            // Chỉ tăng khi thật sự bị giới hạn, tránh giới hạn phình to lúc tải thấp
+            return inFlight * 2 >= limit ? limit + 1 : limit;
+        }
+    }
+
+    /**
+     * Gradient: so sánh độ trễ dài hạn (gần với độ trễ không tải) với độ trễ ngắn hạn.
+     * Độ trễ ngắn hạn tăng (hàng đợi dồn lên ở downstream) thì giới hạn giảm theo tỉ lệ,
+     * còn ổn định thì giới hạn tăng thêm một khoảng sqrt(limit) để dò tải.
+     */
+    static final class Gradient implements Algorithm {
+
+        private static final double SHORT_SMOOTHING = 0.2;
+        private static final double LONG_SMOOTHING = 0.01;
+        private static final double LIMIT_SMOOTHING = 0.2;
+
+        private double shortRtt;
+        private double longRtt;
+
+        @Override
+        public double update(double limit, long rttNanos, int inFlight, boolean dropped) {
+            if (shortRtt == 0) {
+                shortRtt = rttNanos;
+                longRtt = rttNanos;
+                return limit;
+            }
+            shortRtt += (rttNanos - shortRtt) * SHORT_SMOOTHING;
+            longRtt += (rttNanos - longRtt) * LONG_SMOOTHING;
+            // Độ trễ dài hạn không được trôi lên quá xa so với hiện tại, nếu không sẽ không bao giờ giảm tải
+            if (longRtt > shortRtt * 2) {
+                longRtt = shortRtt * 2;
+            }
+            if (dropped) {
+                return limit * 0.9;
+            }
+            // Tải thấp hơn nhiều so với giới hạn thì không có thông tin gì để điều chỉnh
+            if (inFlight * 2 < limit) {
+                return limit;
+            }
+
+            double gradient = Math.max(0.5, Math.min(1.0, longRtt / shortRtt));
+            double next = limit * gradient + Math.sqrt(limit);
+            return limit * (1 - LIMIT_SMOOTHING) + next * LIMIT_SMOOTHING;
+        }
+    }
+}
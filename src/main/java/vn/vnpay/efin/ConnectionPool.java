@@ -0,0 +1,287 @@
+package vn.vnpay.efin;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connection pool thân thiện với Virtual Thread.
+ *
+ * - Chỉ dùng ReentrantLock/Condition (không synchronized) nên thread chờ kết nối không pin carrier.
+ * - Thread chờ xếp hàng FIFO, kết nối trả về được giao thẳng cho thread chờ lâu nhất (không chen ngang).
+ * - acquire có timeout; kết nối bị giữ quá leakThreshold được báo kèm tên thread đã lấy. Stack trace nơi lấy kết nối
+ *   chỉ được ghi khi bật -Dpool.leakTrace=true (tạo Throwable mỗi lần lấy kết nối là tốn kém).
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    // Thống kê của pool: thời gian chờ lấy kết nối và số lần hết hạn chờ
+    public record Stats(int size, int idle, int borrowed, int waiting, long acquired,
+                        long timeouts, Duration totalWait, long leaksDetected) {}
+
+    private static final boolean LEAK_TRACE = Boolean.getBoolean("pool.leakTrace");
+
+    private final SimulatedDatabase database;
+    private final int maxSize;
+    private final Duration leakThreshold;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<SimulatedDatabase.Connection> idle = new ArrayDeque<>();
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private int size;
+    private boolean closed;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder leaksDetected = new LongAdder();
+    private final Thread leakDetector;
+
+    public ConnectionPool(SimulatedDatabase database, int maxSize, Duration leakThreshold) {
+        this.database = database;
+        this.maxSize = maxSize;
+        this.leakThreshold = leakThreshold;
+        this.leakDetector = Thread.ofVirtual().name("pool-leak-detector").start(this::detectLeaks);
+    }
+
+    /**
+     * Lấy một kết nối, chờ tối đa timeout nếu pool đã hết.
+     *
+     * @throws TimeoutException nếu không lấy được kết nối trong thời gian timeout
+     */
+    public PooledConnection acquire(Duration timeout) throws InterruptedException, TimeoutException, SQLException {
+        long start = System.nanoTime();
+        SimulatedDatabase.Connection connection = null;
+        boolean create = false;
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new SQLException("Pool đã đóng");
+            }
+            // Chỉ lấy kết nối rảnh khi không ai đang chờ, để giữ thứ tự FIFO
+            if (waiters.isEmpty()) {
+                connection = idle.poll();
+                if (connection == null && size < maxSize) {
+                    size++;
+                    create = true;
+                }
+            }
+            if (connection == null && !create) {
+                Waiter waiter = awaitHandoff(timeout);
+                connection = waiter.connection;
+                create = waiter.create;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (create) {
+            // Mở kết nối bên ngoài lock để các thread khác không phải chờ
+            try {
+                connection = database.connect();
+            } catch (SQLException e) {
+                lock.lock();
+                try {
+                    size--;
+                    // Slot vừa trống: thread chờ đầu hàng thử mở kết nối thay, không phải chờ tới hết timeout
+                    grantSlot();
+                } finally {
+                    lock.unlock();
+                }
+                throw e;
+            }
+        }
+        return lease(connection, System.nanoTime() - start);
+    }
+
+    // Gọi khi đang giữ lock. Trả về waiter đã nhận kết nối, hoặc được cấp slot để tự mở kết nối mới (create)
+    private Waiter awaitHandoff(Duration timeout) throws InterruptedException, TimeoutException, SQLException {
+        Waiter waiter = new Waiter(lock.newCondition());
+        waiters.addLast(waiter);
+        long nanos = timeout.toNanos();
+        try {
+            while (waiter.connection == null && !waiter.create) {
+                if (waiter.closed) {
+                    throw new SQLException("Pool đã đóng");
+                }
+                if (nanos <= 0) {
+                    waiters.remove(waiter);
+                    timeouts.increment();
+                    throw new TimeoutException("Không lấy được kết nối sau " + timeout.toMillis() + "ms");
+                }
+                nanos = waiter.ready.awaitNanos(nanos);
+            }
+            return waiter;
+        } catch (InterruptedException e) {
+            waiters.remove(waiter);
+            // Kết nối hoặc slot đã được giao trước khi bị interrupt thì chuyển tiếp cho người chờ kế tiếp
+            if (waiter.connection != null) {
+                giveBack(waiter.connection);
+            } else if (waiter.create) {
+                size--;
+                grantSlot();
+            }
+            throw e;
+        }
+    }
+
+    // Gọi khi đang giữ lock: còn chỗ trong pool thì giao slot cho thread chờ lâu nhất để nó tự mở kết nối
+    private void grantSlot() {
+        if (closed || size >= maxSize) {
+            return;
+        }
+        Waiter waiter = waiters.pollFirst();
+        if (waiter != null) {
+            size++;
+            waiter.create = true;
+            waiter.ready.signal();
+        }
+    }
+
+    private PooledConnection lease(SimulatedDatabase.Connection connection, long waitedNanos) {
+        acquired.increment();
+        waitNanos.add(waitedNanos);
+        PooledConnection pooled = new PooledConnection(connection, waitedNanos);
+        borrowed.add(pooled);
+        return pooled;
+    }
+
+    private void release(PooledConnection pooled) {
+        if (borrowed.remove(pooled)) {
+            lock.lock();
+            try {
+                giveBack(pooled.connection);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Gọi khi đang giữ lock: giao thẳng cho thread chờ lâu nhất, nếu không có thì cất vào idle
+    private void giveBack(SimulatedDatabase.Connection connection) {
+        if (closed) {
+            connection.close();
+            size--;
+            return;
+        }
+        Waiter waiter = waiters.pollFirst();
+        if (waiter != null) {
+            waiter.connection = connection;
+            waiter.ready.signal();
+        } else {
+            idle.push(connection);
+        }
+    }
+
+    private void detectLeaks() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(Math.max(10, leakThreshold.toMillis() / 2));
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            for (PooledConnection pooled : borrowed) {
+                if (!pooled.leakReported && now - pooled.borrowedAt > leakThreshold.toNanos()) {
+                    pooled.leakReported = true;
+                    leaksDetected.increment();
+                    System.out.println("Nghi ngờ rò rỉ kết nối: giữ quá " + leakThreshold.toMillis()
+                            + "ms, lấy bởi thread #" + pooled.acquiredById + " " + pooled.acquiredByName
+                            + (pooled.acquiredAt == null ? "" : " tại " + pooled.acquiredSite()));
+                }
+            }
+        }
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(size, idle.size(), borrowed.size(), waiters.size(), acquired.sum(),
+                    timeouts.sum(), Duration.ofNanos(waitNanos.sum()), leaksDetected.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        leakDetector.interrupt();
+        lock.lock();
+        try {
+            closed = true;
+            idle.forEach(SimulatedDatabase.Connection::close);
+            size -= idle.size();
+            idle.clear();
+            // Thread đang chờ không đợi tới hết timeout mà nhận lỗi "Pool đã đóng" ngay
+            for (Waiter waiter : waiters) {
+                waiter.closed = true;
+                waiter.ready.signal();
+            }
+            waiters.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Waiter {
+        private final Condition ready;
+        private SimulatedDatabase.Connection connection;
+        private boolean create;
+        private boolean closed;
+
+        private Waiter(Condition ready) {
+            this.ready = ready;
+        }
+    }
+
+    /**
+     * Kết nối mượn từ pool; close() trả kết nối về pool thay vì đóng thật.
+     */
+    public final class PooledConnection implements AutoCloseable {
+
+        private final SimulatedDatabase.Connection connection;
+        private final long borrowedAt = System.nanoTime();
+        private final long waitedNanos;
+        // Thread đã lấy kết nối, để báo cáo khi nghi ngờ rò rỉ; stack trace chỉ ghi khi bật pool.leakTrace
+        private final long acquiredById = Thread.currentThread().threadId();
+        private final String acquiredByName = Thread.currentThread().getName();
+        private final Throwable acquiredAt = LEAK_TRACE ? new Throwable() : null;
+        private volatile boolean leakReported;
+
+        private PooledConnection(SimulatedDatabase.Connection connection, long waitedNanos) {
+            this.connection = connection;
+            this.waitedNanos = waitedNanos;
+        }
+
+        public String query(String sql) throws SQLException, InterruptedException {
+            return connection.query(sql);
+        }
+
+        // Frame đầu tiên bên ngoài pool, tức là nơi gọi acquire
+        private StackTraceElement acquiredSite() {
+            for (StackTraceElement frame : acquiredAt.getStackTrace()) {
+                if (!frame.getClassName().startsWith(ConnectionPool.class.getName())) {
+                    return frame;
+                }
+            }
+            return null;
+        }
+
+        // Thời gian đã chờ trong hàng đợi của pool để lấy kết nối này
+        public Duration waited() {
+            return Duration.ofNanos(waitedNanos);
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+}
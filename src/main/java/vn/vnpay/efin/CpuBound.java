@@ -0,0 +1,17 @@
+package vn.vnpay.efin;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Đánh dấu lớp tác vụ (Runnable/Callable) chủ yếu dùng CPU. {@link HybridExecutor} chạy các tác vụ này trên
+ * pool platform thread cỡ bằng số core thay vì trên virtual thread, để chúng không chiếm carrier thread.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface CpuBound {
+}
@@ -1,11 +1,17 @@
 package vn.vnpay.efin;
 
+import java.lang.management.ManagementFactory;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
 /**
@@ -18,21 +24,63 @@ public class DatabaseVirtualThreadDemo {
     
     // Record để lưu kết quả truy vấn
     private record QueryResult(String tableName, String data) {}
+
+    // Cache kết quả truy vấn bảng users: sống 5 giây, làm mới trước khi hết hạn từ giây thứ 3
+    private static final LoadingCache<String, QueryResult> TABLE_CACHE = new LoadingCache<>(
+            "tables", 100, Duration.ofSeconds(5), Duration.ofSeconds(3), table -> simulateDatabaseTableQuery(table, 300));
     
+    /**
+     * Chạy mọi phần, hoặc chỉ các phần được chọn theo số thứ tự (ví dụ {@code 3 7}).
+     */
     public static void main(String[] args) throws Exception {
         System.out.println("\n=== Demo Virtual Thread với Truy vấn Database ===\n");
+        List<String> sections = List.of(args);
         
         // So sánh hiệu suất giữa xử lý tuần tự và đồng thời
-        System.out.println("1. So sánh hiệu suất xử lý tuần tự vs đồng thời với Virtual Thread:");
-        compareSequentialVsConcurrent();
+        if (selected(sections, 1)) {
+            System.out.println("1. So sánh hiệu suất xử lý tuần tự vs đồng thời với Virtual Thread:");
+            compareSequentialVsConcurrent();
+        }
         
         // Demo truy vấn nhiều bảng đồng thời
-//        System.out.println("\n2. Demo truy vấn nhiều bảng đồng thời:");
-//        demoMultiTableQuery();
-//
-//        // Xử lý batch với Virtual Thread
-//        System.out.println("\n3. Xử lý batch với Virtual Thread:");
-//        demoBatchProcessing();
+        if (selected(sections, 2)) {
+            System.out.println("\n2. Demo truy vấn nhiều bảng đồng thời:");
+            demoMultiTableQuery();
+        }
+
+        // Xử lý batch dạng streaming qua pipeline có backpressure
+        if (selected(sections, 3)) {
+            System.out.println("\n3. Xử lý batch với Virtual Thread:");
+            demoBatchProcessing();
+        }
+
+        // Connection pool giới hạn với Virtual Thread
+        if (selected(sections, 4)) {
+            System.out.println("\n4. Demo connection pool với Virtual Thread:");
+            demoConnectionPool();
+        }
+
+        // Gom truy vấn đồng thời thành batch
+        if (selected(sections, 5)) {
+            System.out.println("\n5. Demo gom truy vấn (micro-batching) với Virtual Thread:");
+            demoQueryCoalescing();
+        }
+
+        // Cache kết quả truy vấn, nhiều thread cùng thiếu một key chỉ truy vấn một lần
+        if (selected(sections, 6)) {
+            System.out.println("\n6. Demo cache truy vấn bảng users với Virtual Thread:");
+            demoQueryCache();
+        }
+
+        // Kết quả batch lưu dạng cột, tổng hợp một lần không boxing
+        if (selected(sections, 7)) {
+            System.out.println("\n7. Tổng hợp 10.000.000 kết quả batch với kho dạng cột:");
+            demoResultAggregation();
+        }
+    }
+
+    private static boolean selected(List<String> sections, int section) {
+        return sections.isEmpty() || sections.contains(String.valueOf(section));
     }
     
     private static void compareSequentialVsConcurrent() throws Exception {
@@ -45,6 +93,7 @@ public class DatabaseVirtualThreadDemo {
         }
         
         Duration sequentialDuration = Duration.between(start, Instant.now());
+        Log.flush();
         System.out.println("Thời gian xử lý tuần tự: " + sequentialDuration.toMillis() + " ms");
         
         // Thực hiện đồng thời với Virtual Thread
@@ -52,23 +101,24 @@ public class DatabaseVirtualThreadDemo {
         start = Instant.now();
         
         try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
-            List<Future<?>> futures = new ArrayList<>();
+            CompletionTracker<Void> tracker = CompletionTracker.counting(CONCURRENT_QUERIES);
             
             for (int i = 0; i < CONCURRENT_QUERIES; i++) {
-                final int queryId = i;
-                futures.add(executor.submit(() -> {
+                tracker.execute(executor, i, queryId -> {
                     simulateDatabaseQuery("Query " + queryId);
                     return null;
-                }));
+                });
             }
             
-            // Chờ tất cả queries hoàn thành
-            for (Future<?> future : futures) {
-                future.get();
+            // Chờ tất cả queries hoàn thành, lỗi của các query được gom vào một ngoại lệ
+            tracker.await();
+            if (tracker.failure() != null) {
+                throw new ExecutionException(tracker.failedCount() + " truy vấn lỗi", tracker.failure());
             }
         }
         
         Duration concurrentDuration = Duration.between(start, Instant.now());
+        Log.flush();
         System.out.println("Thời gian xử lý đồng thời: " + concurrentDuration.toMillis() + " ms");
         System.out.println("Cải thiện: " + 
                 (sequentialDuration.toMillis() - concurrentDuration.toMillis()) + " ms (" + 
@@ -77,25 +127,30 @@ public class DatabaseVirtualThreadDemo {
     
     private static void demoMultiTableQuery() throws Exception {
         System.out.println("Mô phỏng truy vấn đồng thời từ nhiều bảng trong database...");
-        
+
+        // Độ trễ từng truy vấn ghi vào kho dạng cột (batch id = thứ tự bảng), không phải đọc ngược từ chuỗi kết quả
+        List<String> tables = List.of("users", "orders", "products", "payments", "logs");
+        // Chỉ có 5 kết quả nên chunk nhỏ cỡ số bảng
+        ResultStore latencies = new ResultStore("tables", tables.size());
+
         try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
             Instant start = Instant.now();
             
             // Tạo các truy vấn đồng thời cho 5 bảng khác nhau
             CompletableFuture<QueryResult> usersQuery = CompletableFuture.supplyAsync(
-                    () -> simulateDatabaseTableQuery("users", 300), executor);
+                    () -> timedQuery(latencies, 0, DatabaseVirtualThreadDemo::cachedUsersQuery), executor);
             
             CompletableFuture<QueryResult> ordersQuery = CompletableFuture.supplyAsync(
-                    () -> simulateDatabaseTableQuery("orders", 250), executor);
+                    () -> timedQuery(latencies, 1, () -> simulateDatabaseTableQuery("orders", 250)), executor);
             
             CompletableFuture<QueryResult> productsQuery = CompletableFuture.supplyAsync(
-                    () -> simulateDatabaseTableQuery("products", 200), executor);
+                    () -> timedQuery(latencies, 2, () -> simulateDatabaseTableQuery("products", 200)), executor);
             
             CompletableFuture<QueryResult> paymentsQuery = CompletableFuture.supplyAsync(
-                    () -> simulateDatabaseTableQuery("payments", 350), executor);
+                    () -> timedQuery(latencies, 3, () -> simulateDatabaseTableQuery("payments", 350)), executor);
             
             CompletableFuture<QueryResult> logsQuery = CompletableFuture.supplyAsync(
-                    () -> simulateDatabaseTableQuery("logs", 150), executor);
+                    () -> timedQuery(latencies, 4, () -> simulateDatabaseTableQuery("logs", 150)), executor);
             
             // Kết hợp tất cả các kết quả
             CompletableFuture<Void> allQueries = CompletableFuture.allOf(
@@ -120,74 +175,282 @@ public class DatabaseVirtualThreadDemo {
                 System.out.println("- " + result.tableName() + ": " + result.data());
             }
             
-            // Hiển thị độ cải thiện
-            int maxDelay = results.stream()
-                    .mapToInt(r -> r.data().contains("sau ") ? 
-                            Integer.parseInt(r.data().split("sau ")[1].split("ms")[0]) : 0)
-                    .max()
-                    .orElse(0);
-            
-            System.out.println("Truy vấn chậm nhất mất: " + maxDelay + " ms");
-            System.out.println("Tổng thời gian nếu tuần tự: " + 
-                    results.stream()
-                            .mapToInt(r -> r.data().contains("sau ") ? 
-                                    Integer.parseInt(r.data().split("sau ")[1].split("ms")[0]) : 0)
-                            .sum() + " ms");
-            System.out.println("Cải thiện so với xử lý tuần tự: " + 
-                    (results.stream()
-                            .mapToInt(r -> r.data().contains("sau ") ? 
-                                    Integer.parseInt(r.data().split("sau ")[1].split("ms")[0]) : 0)
-                            .sum() - duration.toMillis()) + " ms");
+            // Hiển thị độ cải thiện: max và tổng lấy trong một lần tổng hợp
+            ResultStore.Summary summary = latencies.summarize();
+            long[] perTable = latencies.sumByBatch(tables.size());
+            int slowest = 0;
+            for (int i = 1; i < perTable.length; i++) {
+                if (perTable[i] > perTable[slowest]) {
+                    slowest = i;
+                }
+            }
+            long totalMillis = summary.sum() / 1_000;
+            
+            System.out.println("Truy vấn chậm nhất mất: " + summary.max() / 1_000 + " ms (" + tables.get(slowest) + ")");
+            System.out.println("Tổng thời gian nếu tuần tự: " + totalMillis + " ms");
+            System.out.println("Cải thiện so với xử lý tuần tự: " + (totalMillis - duration.toMillis()) + " ms");
+        }
+    }
+
+    // Chạy truy vấn và ghi độ trễ đo được vào kho kết quả
+    private static QueryResult timedQuery(ResultStore latencies, int tableIndex, Supplier<QueryResult> query) {
+        long start = System.nanoTime();
+        QueryResult result = query.get();
+        try (ResultStore.Writer writer = latencies.writer()) {
+            writer.append(tableIndex, (System.nanoTime() - start) / 1_000,
+                    result.data().startsWith("Error") ? ResultStore.ERROR : ResultStore.OK);
         }
+        return result;
     }
     
     private static void demoBatchProcessing() throws Exception {
-        System.out.println("Mô phỏng xử lý batch với 10,000 records...");
-        
-        // Tạo bộ dữ liệu mẫu 10,000 records
-        List<String> records = IntStream.range(0, 10_000)
+        // Mỗi batch 1000 records, tối đa 8 batch xử lý song song; kết quả ghi theo từng record
+        runBatchPipeline(10_000, 1_000, 8, true);
+
+        // Đầu vào lớn, cùng cấu hình pipeline cho 1 triệu và 5 triệu records: records sinh dần, số record nằm trong
+        // pipeline giữ nguyên vì hàng đợi giữa các stage có giới hạn ((2 * 64 + 64) batch x 2000 records).
+        // Chỉ ghi một kết quả mỗi batch, nếu không kho kết quả (13 byte/record) lớn dần theo đầu vào
+        for (int totalRecords : new int[]{1_000_000, 5_000_000}) {
+            System.out.println();
+            runBatchPipeline(totalRecords, 2_000, 64, false);
+        }
+    }
+
+    private static void runBatchPipeline(int totalRecords, int batchSize, int workers, boolean perRecordResults)
+            throws Exception {
+        System.out.printf("Mô phỏng xử lý batch với %,d records (streaming)...%n", totalRecords);
+
+        // Records được sinh dần khi pipeline cần, không tạo sẵn toàn bộ danh sách trong bộ nhớ
+        Iterator<String> records = IntStream.range(0, totalRecords)
                 .mapToObj(i -> "Record " + i)
-                .collect(Collectors.toList());
-        
-        int batchSize = 1000; // Mỗi batch 1000 records
-        int numberOfBatches = (records.size() + batchSize - 1) / batchSize;
-        
-        System.out.println("Tổng số records: " + records.size());
+                .iterator();
+
+        System.out.println("Tổng số records: " + totalRecords);
         System.out.println("Kích thước batch: " + batchSize);
-        System.out.println("Số lượng batches: " + numberOfBatches);
-        
+        System.out.println("Số worker song song: " + workers);
+
+        // processBatch là stage worker, hàng đợi giữa các stage chứa tối đa 2 * workers batch.
+        // Kết quả từng record ghi vào kho dạng cột thay cho danh sách String
+        ResultStore results = new ResultStore("batch");
+        BatchPipeline<String> pipeline = new BatchPipeline<>(batchSize, workers, workers * 2,
+                (batchId, batch) -> processBatch(batchId, batch, results, perRecordResults), result -> {});
+        BatchPipeline.Report report = pipeline.run(records);
+        Log.flush();
+
+        if (report.error() != null) {
+            System.out.println("Pipeline dừng do lỗi: " + report.error());
+        }
+        System.out.println("Tất cả batches đã được xử lý trong: " + report.elapsed().toMillis() + " ms");
+        System.out.println("Số batch đã xử lý: " + report.batches());
+        for (BatchPipeline.StageStats stage : report.stages()) {
+            System.out.printf("- %s: %,d records, %,d records/giây%n", stage.stage(), stage.records(),
+                    stage.recordsPerSecond());
+        }
+        System.out.printf("Records nằm trong pipeline nhiều nhất: %,d / %,d (%.1f%%)%n", report.maxInFlight(),
+                totalRecords, report.maxInFlight() * 100.0 / totalRecords);
+        printSummary(perRecordResults ? "Độ trễ mỗi record" : "Độ trễ mỗi batch", results.summarize());
+    }
+
+    // Báo cáo trên hàng triệu kết quả: ghi song song vào kho dạng cột rồi tổng hợp một lần, so với cách cũ
+    // (danh sách String rồi tách độ trễ ra bằng split cho từng phép tính)
+    private static void demoResultAggregation() throws Exception {
+        int totalResults = 10_000_000;
+        int writers = 8;
+        int batchSize = 1_000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        ResultStore store = new ResultStore("batch-10m");
         Instant start = Instant.now();
-        
         try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
-            CountDownLatch latch = new CountDownLatch(numberOfBatches);
-            
-            // Xử lý mỗi batch trong một virtual thread riêng
-            for (int i = 0; i < numberOfBatches; i++) {
-                int fromIndex = i * batchSize;
-                int toIndex = Math.min(fromIndex + batchSize, records.size());
-                List<String> batch = records.subList(fromIndex, toIndex);
-                
-                // Tạo bản sao final của biến i để sử dụng trong lambda
-                final int batchId = i;
-                
+            for (int w = 0; w < writers; w++) {
+                int first = w * (totalResults / writers);
+                int last = w == writers - 1 ? totalResults : first + totalResults / writers;
                 executor.submit(() -> {
-                    try {
-                        processBatch(batchId, batch);
-                    } finally {
-                        latch.countDown();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try (ResultStore.Writer writer = store.writer()) {
+                        for (int i = first; i < last; i++) {
+                            writer.append(i / batchSize, simulatedLatencyMicros(random), simulatedStatus(random));
+                        }
                     }
                 });
             }
-            
-            System.out.println("Đã gửi tất cả batches tới xử lý đồng thời sử dụng Virtual Thread.");
-            System.out.println("Đang chờ tất cả batches hoàn thành...");
-            latch.await();
         }
-        
+        System.out.printf("Ghi %,d kết quả bằng %d writer: %d ms, %d MB cho các cột (%d byte/kết quả)%n",
+                store.size(), writers, Duration.between(start, Instant.now()).toMillis(),
+                store.allocatedBytes() >> 20, store.allocatedBytes() / Math.max(1, store.size()));
+
+        // Lượt đầu để JIT biên dịch vòng tổng hợp
+        store.summarize();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        start = Instant.now();
+        ResultStore.Summary summary = store.summarize();
+        long[] perBatch = store.sumByBatch(totalResults / batchSize);
+        System.out.printf("Tổng hợp %,d kết quả (min/max/sum/phân vị/đếm trạng thái + tổng theo %,d batch): %d ms,"
+                        + " cấp phát %d KB%n", summary.count(), perBatch.length,
+                Duration.between(start, Instant.now()).toMillis(),
+                (threads.getCurrentThreadAllocatedBytes() - allocatedBefore) >> 10);
+        printSummary("Độ trễ", summary);
+
+        // Cách cũ trên 1/10 số kết quả: mỗi kết quả là một String, mỗi phép tính tách lại độ trễ bằng split
+        int legacyResults = totalResults / 10;
+        List<String> legacy = new ArrayList<>(legacyResults);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < legacyResults; i++) {
+            legacy.add("Batch " + i / batchSize + " xong sau " + simulatedLatencyMicros(random) / 1_000 + "ms");
+        }
+        allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        start = Instant.now();
+        int max = legacy.stream().mapToInt(r -> Integer.parseInt(r.split("sau ")[1].split("ms")[0])).max().orElse(0);
+        long sum = legacy.stream().mapToLong(r -> Integer.parseInt(r.split("sau ")[1].split("ms")[0])).sum();
+        System.out.printf("Cách cũ với %,d String (chỉ max và sum): %d ms, cấp phát %d MB (max %d ms, tổng %d ms)%n",
+                legacy.size(), Duration.between(start, Instant.now()).toMillis(),
+                (threads.getCurrentThreadAllocatedBytes() - allocatedBefore) >> 20, max, sum);
+    }
+
+    // Độ trễ giả lập: phần lớn 1-20ms, 1% đuôi chậm 100-500ms
+    private static long simulatedLatencyMicros(ThreadLocalRandom random) {
+        return random.nextInt(100) == 0 ? random.nextLong(100_000, 500_000) : random.nextLong(1_000, 20_000);
+    }
+
+    private static byte simulatedStatus(ThreadLocalRandom random) {
+        int roll = random.nextInt(1_000);
+        return roll < 5 ? ResultStore.ERROR : roll < 7 ? ResultStore.TIMEOUT : ResultStore.OK;
+    }
+
+    private static void printSummary(String label, ResultStore.Summary summary) {
+        System.out.printf("%s: %,d kết quả, min %.1fms, p50 %.1fms, p99 %.1fms, max %.1fms, trung bình %.1fms%n",
+                label, summary.count(), summary.min() / 1e3, summary.percentile(50) / 1e3,
+                summary.percentile(99) / 1e3, summary.max() / 1e3, summary.mean() / 1e3);
+        System.out.printf("Trạng thái: %s %,d, %s %,d, %s %,d%n",
+                ResultStore.statusName(ResultStore.OK), summary.count(ResultStore.OK),
+                ResultStore.statusName(ResultStore.ERROR), summary.count(ResultStore.ERROR),
+                ResultStore.statusName(ResultStore.TIMEOUT), summary.count(ResultStore.TIMEOUT));
+    }
+    
+    private static void demoConnectionPool() throws Exception {
+        // Database giả lập cho phép tối đa 50 kết nối, mỗi truy vấn 20-40ms
+        SimulatedDatabase database = new SimulatedDatabase(50, 20, 40);
+        System.out.println("Database giả lập: tối đa " + database.maxConnections() + " kết nối, mỗi truy vấn 20-40ms");
+        System.out.printf("%-10s %-10s %-14s %-14s %-16s %s%n",
+                "Pool", "Threads", "Chờ pool (ms)", "Truy vấn (ms)", "Throughput (q/s)", "Nhận định");
+
+        for (int poolSize : new int[]{10, 25, 50}) {
+            for (int threads : new int[]{100, 1_000}) {
+                runPoolWorkload(database, poolSize, threads);
+            }
+        }
+    }
+
+    private static void runPoolWorkload(SimulatedDatabase database, int poolSize, int threads) throws Exception {
+        LongAdder waitNanos = new LongAdder();
+        LongAdder queryNanos = new LongAdder();
+        LongAdder timeouts = new LongAdder();
+
+        Instant start = Instant.now();
+        try (ConnectionPool pool = new ConnectionPool(database, poolSize, Duration.ofSeconds(5));
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < threads; i++) {
+                final int queryId = i;
+                executor.submit(() -> {
+                    try (ConnectionPool.PooledConnection connection = pool.acquire(Duration.ofSeconds(10))) {
+                        long queryStart = System.nanoTime();
+                        connection.query("Query " + queryId);
+                        queryNanos.add(System.nanoTime() - queryStart);
+                        waitNanos.add(connection.waited().toNanos());
+                    } catch (TimeoutException e) {
+                        timeouts.increment();
+                    }
+                    return null;
+                });
+            }
+        }
         Duration duration = Duration.between(start, Instant.now());
-        System.out.println("Tất cả batches đã được xử lý trong: " + duration.toMillis() + " ms");
-        System.out.println("Thời gian trung bình cho mỗi batch: " + (duration.toMillis() / numberOfBatches) + " ms");
-        System.out.println("Tốc độ xử lý: " + (records.size() * 1000L / duration.toMillis()) + " records/giây");
+
+        long completed = Math.max(1, threads - timeouts.sum());
+        long avgWaitMs = waitNanos.sum() / completed / 1_000_000;
+        long avgQueryMs = queryNanos.sum() / completed / 1_000_000;
+        // Chờ pool lâu hơn thời gian truy vấn nghĩa là pool là nút thắt, ngược lại là bị giới hạn bởi độ trễ
+        String verdict = avgWaitMs > avgQueryMs ? "pool-bound" : "latency-bound";
+        System.out.printf("%-10d %-10d %-14d %-14d %-16d %s%s%n", poolSize, threads, avgWaitMs, avgQueryMs,
+                completed * 1000 / Math.max(1, duration.toMillis()), verdict,
+                timeouts.sum() > 0 ? " (" + timeouts.sum() + " timeout)" : "");
+    }
+    
+    private static void demoQueryCoalescing() throws Exception {
+        int lookups = 5_000;
+        int distinctUsers = 2_000;
+        System.out.println(lookups + " virtual threads cùng tra cứu bảng users (" + distinctUsers + " user khác nhau)");
+        System.out.printf("%-14s %-12s %-10s %-10s %s%n", "Cửa sổ", "Round-trips", "p50 (ms)", "p99 (ms)", "Gộp trùng");
+
+        // Không gom: mỗi lần tra cứu là một round-trip
+        long[] latencies = new long[lookups];
+        Instant start = Instant.now();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < lookups; i++) {
+                final int index = i;
+                executor.submit(() -> {
+                    long t0 = System.nanoTime();
+                    simulateDatabaseTableQuery("users", 50);
+                    latencies[index] = System.nanoTime() - t0;
+                });
+            }
+        }
+        printCoalescingRow("không gom", lookups, latencies, 0);
+
+        for (int windowMs : new int[]{1, 5, 10, 20}) {
+            try (QueryCoalescer<Integer, QueryResult> coalescer = new QueryCoalescer<>(
+                    ids -> simulateDatabaseBatchQuery("users", 50, ids), Duration.ofMillis(windowMs), 500)) {
+                try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                    for (int i = 0; i < lookups; i++) {
+                        final int index = i;
+                        executor.submit(() -> {
+                            long t0 = System.nanoTime();
+                            coalescer.get(ThreadLocalRandom.current().nextInt(distinctUsers));
+                            latencies[index] = System.nanoTime() - t0;
+                            return null;
+                        });
+                    }
+                }
+                printCoalescingRow(windowMs + "ms", coalescer.roundTrips(), latencies, coalescer.deduplicated());
+            }
+        }
+        System.out.println("Tổng thời gian demo: " + Duration.between(start, Instant.now()).toMillis() + " ms");
+    }
+
+    private static void demoQueryCache() throws Exception {
+        int lookups = 1_000;
+        for (String round : new String[]{"lần đầu (cache trống)", "lần hai (cache hit)"}) {
+            Instant start = Instant.now();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < lookups; i++) {
+                    executor.submit(DatabaseVirtualThreadDemo::cachedUsersQuery);
+                }
+            }
+            LoadingCache.Stats stats = TABLE_CACHE.stats();
+            System.out.printf("%s: %d virtual threads đọc bảng users trong %d ms, tổng %d lần truy vấn database%n",
+                    round, lookups, Duration.between(start, Instant.now()).toMillis(), stats.loads());
+        }
+        LoadingCache.Stats stats = TABLE_CACHE.stats();
+        System.out.printf("Hit: %d, miss: %d (tỉ lệ hit %.1f%%), làm mới: %d, hết hạn: %d%n",
+                stats.hits(), stats.misses(), stats.hitRate() * 100, stats.refreshes(), stats.expirations());
+    }
+
+    private static QueryResult cachedUsersQuery() {
+        try {
+            return TABLE_CACHE.get("users");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new QueryResult("users", "Error: Interrupted");
+        } catch (ExecutionException e) {
+            return new QueryResult("users", "Error: " + e.getCause().getMessage());
+        }
+    }
+
+    private static void printCoalescingRow(String window, long roundTrips, long[] latencies, long deduplicated) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-14s %-12d %-10d %-10d %d%n", window, roundTrips,
+                sorted[sorted.length / 2] / 1_000_000, sorted[(int) (sorted.length * 0.99)] / 1_000_000, deduplicated);
     }
     
     // Các phương thức helper để mô phỏng database operations
@@ -196,9 +459,9 @@ public class DatabaseVirtualThreadDemo {
         try {
             // Mô phỏng thời gian truy vấn database từ 50-150ms
             int delay = ThreadLocalRandom.current().nextInt(50, 150);
-            Thread.sleep(delay);
+            BlockingStrategy.current().block(delay);
 
-            System.out.println(queryName + " hoàn thành sau " + delay + "ms trên " + Thread.currentThread());
+            Log.info("{} hoàn thành sau {}ms trên {}", queryName, delay, Thread.currentThread());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -219,18 +482,43 @@ public class DatabaseVirtualThreadDemo {
         }
     }
     
-    private static void processBatch(int batchId, List<String> batch) {
+    // Một round-trip trả về nhiều dòng: độ trễ gần như không đổi theo số key, chỉ cộng thêm chút ít mỗi key
+    private static Map<Integer, QueryResult> simulateDatabaseBatchQuery(String tableName, int baseDelay, List<Integer> ids)
+            throws InterruptedException {
+        int delay = baseDelay + ThreadLocalRandom.current().nextInt(-10, 10) + ids.size() / 100;
+        BlockingStrategy.current().block(Math.max(10, delay));
+        Map<Integer, QueryResult> results = new HashMap<>(ids.size() * 2);
+        for (Integer id : ids) {
+            results.put(id, new QueryResult(tableName, "Dòng " + id + " từ bảng " + tableName + " sau " + delay + "ms"));
+        }
+        return results;
+    }
+    
+    private static void processBatch(int batchId, List<String> batch, ResultStore results, boolean perRecordResults) {
         try {
             // Mô phỏng thời gian xử lý batch từ 200-400ms
-            int processingTime = ThreadLocalRandom.current().nextInt(200, 400);
-            Thread.sleep(processingTime);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int processingTime = random.nextInt(200, 400);
+            BlockingStrategy.current().block(processingTime);
+
+            // Mỗi record chiếm một phần thời gian của batch, lệch ngẫu nhiên ±50%; 0.5% record lỗi
+            long perRecordMicros = processingTime * 1_000L / Math.max(1, batch.size());
+            try (ResultStore.Writer writer = results.writer()) {
+                if (perRecordResults) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        writer.append(batchId, perRecordMicros / 2 + random.nextLong(perRecordMicros + 1),
+                                random.nextInt(200) == 0 ? ResultStore.ERROR : ResultStore.OK);
+                    }
+                } else {
+                    writer.append(batchId, processingTime * 1_000L, ResultStore.OK);
+                }
+            }
             
-            System.out.println("Batch " + batchId + " (" + batch.size() + 
-                    " records) đã xử lý sau " + processingTime + 
-                    "ms trên " + Thread.currentThread());
+            Log.info("Batch {} ({} records) đã xử lý sau {}ms trên {}",
+                    batchId, batch.size(), processingTime, Thread.currentThread());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            System.out.println("Batch " + batchId + " bị gián đoạn");
+            Log.info("Batch {} bị gián đoạn", batchId);
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,133 @@
+package vn.vnpay.efin;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Downstream giả lập có độ trễ theo phân phối cấu hình được, đuôi chậm, lỗi ngẫu nhiên và trạng thái sự cố
+ * (mọi cuộc gọi treo rồi lỗi), dùng để thử các cơ chế trong {@link ResilientCall}.
+ *
+ * Chờ bằng Thread.sleep nên cuộc gọi dừng ngay khi virtual thread bị interrupt.
+ */
+public class FlakyBackend {
+
+    /**
+     * Phân phối độ trễ của một cuộc gọi bình thường.
+     */
+    @FunctionalInterface
+    public interface LatencyDistribution {
+
+        long sampleNanos(ThreadLocalRandom random);
+
+        static LatencyDistribution constant(Duration latency) {
+            long nanos = latency.toNanos();
+            return random -> nanos;
+        }
+
+        static LatencyDistribution uniform(Duration min, Duration max) {
+            long from = min.toNanos();
+            long to = max.toNanos();
+            return random -> random.nextLong(from, to + 1);
+        }
+
+        static LatencyDistribution exponential(Duration mean) {
+            double nanos = mean.toNanos();
+            return random -> (long) (-Math.log(1 - random.nextDouble()) * nanos);
+        }
+
+        /**
+         * Log-normal: phần lớn quanh median, đuôi dài hơn khi sigma lớn (0.2 hẹp, 1.0 rất lệch).
+         */
+        static LatencyDistribution logNormal(Duration median, double sigma) {
+            double mu = Math.log(median.toNanos());
+            return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+        }
+    }
+
+    private final String name;
+    private final LatencyDistribution latency;
+    private volatile double slowProbability;
+    private volatile Duration slowLatency = Duration.ZERO;
+    private volatile double errorProbability;
+    // Khác null khi đang sự cố: mọi cuộc gọi treo chừng này rồi lỗi
+    private volatile Duration outageHang;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAccumulator maxInFlight = new LongAccumulator(Long::max, 0);
+
+    public FlakyBackend(String name, LatencyDistribution latency) {
+        this.name = name;
+        this.latency = latency;
+    }
+
+    /**
+     * Tỉ lệ cuộc gọi rơi vào đuôi chậm (GC pause, lock, mạng chập chờn...) và độ trễ của chúng.
+     */
+    public FlakyBackend slowTail(double probability, Duration latency) {
+        this.slowProbability = probability;
+        this.slowLatency = latency;
+        return this;
+    }
+
+    public FlakyBackend errors(double probability) {
+        this.errorProbability = probability;
+        return this;
+    }
+
+    /**
+     * Bắt đầu sự cố: mọi cuộc gọi treo hang rồi lỗi, tới khi gọi {@link #recover()}.
+     */
+    public void outage(Duration hang) {
+        this.outageHang = hang;
+    }
+
+    public void recover() {
+        this.outageHang = null;
+    }
+
+    public String call(String request) throws IOException, InterruptedException {
+        calls.increment();
+        maxInFlight.accumulate(inFlight.incrementAndGet());
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Duration hang = outageHang;
+            if (hang != null) {
+                Thread.sleep(hang);
+                errors.increment();
+                throw new IOException(name + " không phản hồi sau " + hang.toMillis() + "ms");
+            }
+            long nanos = random.nextDouble() < slowProbability ? slowLatency.toNanos() : latency.sampleNanos(random);
+            Thread.sleep(Duration.ofNanos(nanos));
+            if (random.nextDouble() < errorProbability) {
+                errors.increment();
+                throw new IOException(name + " lỗi khi xử lý " + request);
+            }
+            return name + " xử lý " + request + " sau " + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms";
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long calls() {
+        return calls.sum();
+    }
+
+    public long errors() {
+        return errors.sum();
+    }
+
+    public long maxInFlight() {
+        return maxInFlight.get();
+    }
+}
@@ -0,0 +1,267 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Làm nóng đường xử lý request trước khi nhận traffic thật, để các request đầu tiên không chạy ở tốc độ interpreter.
+ *
+ * - {@link #inMemory}: gọi thẳng chuỗi handler đã đăng ký (đo lường, RequestContext, admission, handler) bằng
+ *   HttpExchange trong bộ nhớ, chạy trước khi mở cổng. JIT biên dịch sẵn code của handler, limiter, cache,
+ *   StructuredTaskScope; ResilientCall cũng có sẵn mẫu độ trễ để tính ngưỡng hedge. Code mạng của server thì không
+ *   được làm nóng.
+ * - {@link #overHttp}: gửi request thật qua cổng, dùng cho lần chạy huấn luyện tạo AppCDS archive để archive có cả
+ *   các class mạng của server và client.
+ *
+ * Request warmup đi qua toàn bộ chuỗi handler nên có mặt trong /metrics, với X-User là "warmup".
+ */
+public final class HandlerWarmup {
+
+    /**
+     * URI được gọi khi warmup, theo thứ tự in kết quả. Hàm nhận số thứ tự của lần gọi.
+     */
+    public static final Map<String, IntFunction<String>> DEFAULT_TARGETS = targets();
+
+    private static final String WARMUP_USER = "warmup";
+
+    private HandlerWarmup() {
+    }
+
+    private static Map<String, IntFunction<String>> targets() {
+        Map<String, IntFunction<String>> targets = new LinkedHashMap<>();
+        targets.put("/api/fast", i -> "/api/fast");
+        // Vài key lặp lại: lần đầu nạp qua loader, các lần sau đi đường cache hit
+        targets.put("/api/slow", i -> "/api/slow?warmup=" + (i & 31));
+        targets.put("/api/parallel", i -> "/api/parallel");
+        return targets;
+    }
+
+    /**
+     * Gọi các handler trong handlers (path của context -> handler) với concurrency client cho mỗi target tới khi
+     * hết budget, trả về số lần gọi theo target.
+     */
+    public static Map<String, Long> inMemory(Map<String, HttpHandler> handlers, Duration budget, int concurrency)
+            throws InterruptedException {
+        return run(budget, concurrency, uri -> {
+            HttpHandler handler = find(handlers, uri.getPath());
+            if (handler == null) {
+                return false;
+            }
+            InMemoryExchange exchange = new InMemoryExchange(uri);
+            handler.handle(exchange);
+            exchange.close();
+            return exchange.getResponseCode() < 500;
+        });
+    }
+
+    /**
+     * Gửi request thật tới server đang chạy trên cổng port trong duration.
+     */
+    public static Map<String, Long> overHttp(int port, Duration duration, int concurrency) throws InterruptedException {
+        try (HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build()) {
+            return run(duration, concurrency, uri -> {
+                HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port).resolve(uri))
+                        .header("X-User", WARMUP_USER).timeout(Duration.ofSeconds(5)).GET().build();
+                return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() < 500;
+            });
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        boolean call(URI uri) throws Exception;
+    }
+
+    private static Map<String, Long> run(Duration budget, int concurrency, Call call) throws InterruptedException {
+        Map<String, LongAdder> counts = new LinkedHashMap<>();
+        DEFAULT_TARGETS.keySet().forEach(target -> counts.put(target, new LongAdder()));
+        LongAdder failures = new LongAdder();
+        long start = System.nanoTime();
+        long deadline = start + budget.toNanos();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            DEFAULT_TARGETS.forEach((target, uris) -> {
+                LongAdder count = counts.get(target);
+                for (int c = 0; c < concurrency; c++) {
+                    clients.submit(() -> {
+                        for (int i = 0; System.nanoTime() < deadline; i++) {
+                            try {
+                                if (!call.call(URI.create(uris.apply(i)))) {
+                                    failures.increment();
+                                }
+                            } catch (Exception e) {
+                                failures.increment();
+                            }
+                            count.increment();
+                            // Nhường carrier: target không blocking (/api/fast) không được chiếm hết carrier
+                            // của các target đang chờ IO
+                            Thread.yield();
+                        }
+                    });
+                }
+            });
+        }
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        counts.forEach((target, count) -> result.put(target, count.sum()));
+        System.out.println("Warmup " + Duration.ofNanos(System.nanoTime() - start).toMillis() + "ms: " + result
+                + (failures.sum() > 0 ? ", " + failures.sum() + " lần lỗi/bị từ chối" : ""));
+        return result;
+    }
+
+    // Giống HttpServer: context có path dài nhất là prefix của request path
+    private static HttpHandler find(Map<String, HttpHandler> handlers, String path) {
+        String best = null;
+        for (String context : handlers.keySet()) {
+            if (path.startsWith(context) && (best == null || context.length() > best.length())) {
+                best = context;
+            }
+        }
+        return best == null ? null : handlers.get(best);
+    }
+
+    /**
+     * HttpExchange trong bộ nhớ: request GET không body, response bị bỏ đi.
+     */
+    private static final class InMemoryExchange extends HttpExchange {
+
+        private static final InetSocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+        private final URI uri;
+        private final Headers requestHeaders = new Headers();
+        private final Headers responseHeaders = new Headers();
+        private InputStream requestBody = InputStream.nullInputStream();
+        private OutputStream responseBody = OutputStream.nullOutputStream();
+        private Map<String, Object> attributes;
+        private int responseCode = -1;
+
+        InMemoryExchange(URI uri) {
+            this.uri = uri;
+            requestHeaders.set("X-User", WARMUP_USER);
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return requestHeaders;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return responseHeaders;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return uri;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return "GET";
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            try {
+                requestBody.close();
+                responseBody.close();
+            } catch (IOException e) {
+                // Stream trong bộ nhớ, không có lỗi thật
+            }
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return requestBody;
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return responseBody;
+        }
+
+        @Override
+        public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+            if (responseCode != -1) {
+                throw new IOException("Response headers đã được gửi");
+            }
+            responseCode = rCode;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return LOOPBACK;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return LOOPBACK;
+        }
+
+        @Override
+        public String getProtocol() {
+            return "HTTP/1.1";
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes == null ? null : attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            if (attributes == null) {
+                attributes = new HashMap<>();
+            }
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void setStreams(InputStream i, OutputStream o) {
+            if (i != null) {
+                requestBody = i;
+            }
+            if (o != null) {
+                responseBody = o;
+            }
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return null;
+        }
+    }
+}
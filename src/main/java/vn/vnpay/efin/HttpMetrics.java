@@ -0,0 +1,434 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Đo lường HTTP ngay trong process: số request, số request đang xử lý và histogram độ trễ cho từng endpoint,
+ * cùng số virtual thread và mức sử dụng carrier thread. Xuất ra định dạng Prometheus qua {@link #handler()}.
+ *
+ * Đường ghi không lock và không cấp phát: bộ đếm dùng LongAdder, độ trễ ghi vào các HdrHistogram Recorder
+ * chia theo stripe (theo thread id); các stripe chỉ được gộp lại khi đọc (scrape).
+ */
+public class HttpMetrics {
+
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentSkipListMap<>();
+    private final List<ConcurrencyLimiter> limiters = new CopyOnWriteArrayList<>();
+    private final List<LoadingCache<?, ?>> caches = new CopyOnWriteArrayList<>();
+    private final List<ResilientCall> downstreams = new CopyOnWriteArrayList<>();
+    private final List<PriorityExecutor> schedulers = new CopyOnWriteArrayList<>();
+    private volatile StartupTimer startup;
+    private final LongAdder virtualThreadsStarted = new LongAdder();
+    private final LongAdder virtualThreadsLive = new LongAdder();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    // Chỉ dùng khi scrape, để tính mức sử dụng carrier giữa hai lần scrape
+    private final ReentrantLock scrapeLock = new ReentrantLock();
+    private long lastScrapeNanos = System.nanoTime();
+    private long lastCarrierCpuNanos;
+    private String carrierNamePrefix;
+
+    /**
+     * Bọc handler để ghi số request, số request đang xử lý và độ trễ của endpoint.
+     */
+    public HttpHandler instrument(String endpoint, HttpHandler delegate) {
+        EndpointMetrics metrics = endpoints.computeIfAbsent(endpoint, k -> new EndpointMetrics());
+        return exchange -> {
+            metrics.inFlight.increment();
+            long start = System.nanoTime();
+            try {
+                delegate.handle(exchange);
+            } finally {
+                metrics.inFlight.decrement();
+                metrics.record(System.nanoTime() - start, exchange.getResponseCode());
+            }
+        };
+    }
+
+    /**
+     * ThreadFactory tạo virtual thread và đếm số thread đã tạo/đang sống, dùng làm executor của server.
+     */
+    public ThreadFactory virtualThreadFactory(String prefix) {
+        ThreadFactory delegate = Thread.ofVirtual().name(prefix, 0).factory();
+        return task -> delegate.newThread(() -> {
+            virtualThreadsStarted.increment();
+            virtualThreadsLive.increment();
+            try {
+                task.run();
+            } finally {
+                virtualThreadsLive.decrement();
+            }
+        });
+    }
+
+    /**
+     * Xuất thêm trạng thái của limiter (giới hạn hiện tại, đang xử lý, số request nhận/từ chối).
+     */
+    public ConcurrencyLimiter register(ConcurrencyLimiter limiter) {
+        limiters.add(limiter);
+        return limiter;
+    }
+
+    /**
+     * Xuất thêm thống kê của cache (hit/miss, số lần nạp, làm mới, bị loại, hết hạn, kích thước).
+     */
+    public <K, V> LoadingCache<K, V> register(LoadingCache<K, V> cache) {
+        caches.add(cache);
+        return cache;
+    }
+
+    /**
+     * Xuất thêm thống kê của downstream (kết quả cuộc gọi, hedge, số lần bị từ chối, trạng thái circuit breaker).
+     */
+    public ResilientCall register(ResilientCall downstream) {
+        downstreams.add(downstream);
+        return downstream;
+    }
+
+    /**
+     * Xuất thêm số liệu xếp lịch theo loại ưu tiên (được cấp permit, bị bỏ vì hết deadline, đang chờ, thời gian chờ).
+     */
+    public PriorityExecutor register(PriorityExecutor scheduler) {
+        schedulers.add(scheduler);
+        return scheduler;
+    }
+
+    /**
+     * Xuất thêm các mốc khởi động (giây tính từ lúc process bắt đầu).
+     */
+    public StartupTimer register(StartupTimer startup) {
+        this.startup = startup;
+        return startup;
+    }
+
+    /**
+     * Handler cho context /metrics, trả về định dạng text của Prometheus.
+     */
+    public HttpHandler handler() {
+        return this::scrape;
+    }
+
+    private void scrape(HttpExchange exchange) throws IOException {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    String render() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        sb.append("# TYPE http_requests_total counter\n");
+        endpoints.forEach((endpoint, m) -> sample(sb, "http_requests_total", endpoint, null, m.requests.sum()));
+        sb.append("# TYPE http_requests_errors_total counter\n");
+        endpoints.forEach((endpoint, m) -> sample(sb, "http_requests_errors_total", endpoint, null, m.errors.sum()));
+        sb.append("# TYPE http_requests_in_flight gauge\n");
+        endpoints.forEach((endpoint, m) -> sample(sb, "http_requests_in_flight", endpoint, null, m.inFlight.sum()));
+
+        sb.append("# TYPE http_request_duration_seconds summary\n");
+        Map<String, Long> maxMicros = new LinkedHashMap<>();
+        endpoints.forEach((endpoint, m) -> {
+            Histogram histogram = m.snapshot();
+            maxMicros.put(endpoint, histogram.getMaxValue());
+            for (double quantile : QUANTILES) {
+                sample(sb, "http_request_duration_seconds", endpoint, String.valueOf(quantile),
+                        histogram.getValueAtPercentile(quantile * 100) / 1e6);
+            }
+            sample(sb, "http_request_duration_seconds_sum", endpoint, null, m.sumMicros.sum() / 1e6);
+            sample(sb, "http_request_duration_seconds_count", endpoint, null, histogram.getTotalCount());
+        });
+        // Max không thuộc summary: là một family gauge riêng, đặt sau để mỗi family liền một khối
+        sb.append("# TYPE http_request_duration_seconds_max gauge\n");
+        maxMicros.forEach((endpoint, max) -> sample(sb, "http_request_duration_seconds_max", endpoint, null, max / 1e6));
+
+        sb.append("# TYPE admission_limit gauge\n");
+        limiters.forEach(l -> limiterSample(sb, "admission_limit", l, l.limit()));
+        sb.append("# TYPE admission_in_flight gauge\n");
+        limiters.forEach(l -> limiterSample(sb, "admission_in_flight", l, l.inFlight()));
+        sb.append("# TYPE admission_accepted_total counter\n");
+        limiters.forEach(l -> limiterSample(sb, "admission_accepted_total", l, l.accepted()));
+        sb.append("# TYPE admission_rejected_total counter\n");
+        limiters.forEach(l -> limiterSample(sb, "admission_rejected_total", l, l.rejected()));
+
+        if (!caches.isEmpty()) {
+            appendCacheMetrics(sb);
+        }
+        if (!downstreams.isEmpty()) {
+            appendDownstreamMetrics(sb);
+        }
+        if (!schedulers.isEmpty()) {
+            appendSchedulerMetrics(sb);
+        }
+        StartupTimer startup = this.startup;
+        if (startup != null) {
+            sb.append("# TYPE startup_phase_seconds gauge\n");
+            for (StartupTimer.Phase phase : startup.phases()) {
+                sb.append("startup_phase_seconds{phase=\"").append(phase.name()).append("\"} ")
+                        .append(phase.millis() / 1e3).append('\n');
+            }
+        }
+
+        // Chỉ đếm virtual thread tạo qua virtualThreadFactory (thread của HTTP server), không phải toàn JVM
+        sb.append("# TYPE http_virtual_threads_started_total counter\n")
+                .append("http_virtual_threads_started_total ").append(virtualThreadsStarted.sum()).append('\n');
+        sb.append("# TYPE http_virtual_threads_live gauge\n")
+                .append("http_virtual_threads_live ").append(virtualThreadsLive.sum()).append('\n');
+        appendCarrierMetrics(sb);
+        return sb.toString();
+    }
+
+    private void appendCacheMetrics(StringBuilder sb) {
+        List<LoadingCache.Stats> stats = caches.stream().map(LoadingCache::stats).toList();
+        sb.append("# TYPE cache_requests_total counter\n");
+        for (int i = 0; i < caches.size(); i++) {
+            String cache = caches.get(i).name();
+            sb.append("cache_requests_total{cache=\"").append(cache).append("\",result=\"hit\"} ")
+                    .append(stats.get(i).hits()).append('\n');
+            sb.append("cache_requests_total{cache=\"").append(cache).append("\",result=\"miss\"} ")
+                    .append(stats.get(i).misses()).append('\n');
+        }
+        cacheSamples(sb, "cache_loads_total", "counter", stats, LoadingCache.Stats::loads);
+        cacheSamples(sb, "cache_load_failures_total", "counter", stats, LoadingCache.Stats::loadFailures);
+        cacheSamples(sb, "cache_refreshes_total", "counter", stats, LoadingCache.Stats::refreshes);
+        cacheSamples(sb, "cache_evictions_total", "counter", stats, LoadingCache.Stats::evictions);
+        cacheSamples(sb, "cache_expirations_total", "counter", stats, LoadingCache.Stats::expirations);
+        cacheSamples(sb, "cache_size", "gauge", stats, LoadingCache.Stats::size);
+    }
+
+    private void cacheSamples(StringBuilder sb, String name, String type, List<LoadingCache.Stats> stats,
+                              ToLongFunction<LoadingCache.Stats> value) {
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (int i = 0; i < caches.size(); i++) {
+            sb.append(name).append("{cache=\"").append(caches.get(i).name()).append("\"} ")
+                    .append(value.applyAsLong(stats.get(i))).append('\n');
+        }
+    }
+
+    private void appendDownstreamMetrics(StringBuilder sb) {
+        List<ResilientCall.Stats> stats = downstreams.stream().map(ResilientCall::stats).toList();
+        sb.append("# TYPE downstream_calls_total counter\n");
+        for (int i = 0; i < downstreams.size(); i++) {
+            String downstream = downstreams.get(i).name();
+            ResilientCall.Stats s = stats.get(i);
+            downstreamSample(sb, "downstream_calls_total", downstream, "result", "success", s.successes());
+            downstreamSample(sb, "downstream_calls_total", downstream, "result", "failure", s.failures() - s.timeouts());
+            downstreamSample(sb, "downstream_calls_total", downstream, "result", "timeout", s.timeouts());
+            downstreamSample(sb, "downstream_calls_total", downstream, "result", "cancelled", s.cancelled());
+        }
+        sb.append("# TYPE downstream_rejected_total counter\n");
+        for (int i = 0; i < downstreams.size(); i++) {
+            String downstream = downstreams.get(i).name();
+            downstreamSample(sb, "downstream_rejected_total", downstream, "reason", "circuit_breaker",
+                    stats.get(i).rejectedByBreaker());
+            downstreamSample(sb, "downstream_rejected_total", downstream, "reason", "bulkhead",
+                    stats.get(i).rejectedByBulkhead());
+        }
+        downstreamSamples(sb, "downstream_hedges_total", "counter", stats, ResilientCall.Stats::hedges);
+        downstreamSamples(sb, "downstream_hedge_wins_total", "counter", stats, ResilientCall.Stats::hedgeWins);
+        // 0 = CLOSED, 1 = OPEN, 2 = HALF_OPEN
+        downstreamSamples(sb, "downstream_circuit_state", "gauge", stats, s -> s.breakerState().ordinal());
+        sb.append("# TYPE downstream_hedge_delay_seconds gauge\n");
+        for (int i = 0; i < downstreams.size(); i++) {
+            sb.append("downstream_hedge_delay_seconds{downstream=\"").append(downstreams.get(i).name()).append("\"} ")
+                    .append(stats.get(i).hedgeDelay().toNanos() / 1e9).append('\n');
+        }
+    }
+
+    private void appendSchedulerMetrics(StringBuilder sb) {
+        sb.append("# TYPE scheduler_permits_available gauge\n");
+        schedulers.forEach(s -> sb.append("scheduler_permits_available{scheduler=\"").append(s.name()).append("\"} ")
+                .append(s.available()).append('\n'));
+        List<List<PriorityExecutor.Stats>> stats = schedulers.stream().map(PriorityExecutor::stats).toList();
+        schedulerSamples(sb, "scheduler_admitted_total", "counter", stats, PriorityExecutor.Stats::admitted);
+        schedulerSamples(sb, "scheduler_expired_total", "counter", stats, PriorityExecutor.Stats::expired);
+        schedulerSamples(sb, "scheduler_waiting", "gauge", stats, PriorityExecutor.Stats::waiting);
+        sb.append("# TYPE scheduler_wait_seconds_total counter\n");
+        for (int i = 0; i < schedulers.size(); i++) {
+            for (PriorityExecutor.Stats s : stats.get(i)) {
+                schedulerLabels(sb.append("scheduler_wait_seconds_total"), schedulers.get(i), s)
+                        .append(s.totalWait().toNanos() / 1e9).append('\n');
+            }
+        }
+    }
+
+    private void schedulerSamples(StringBuilder sb, String name, String type, List<List<PriorityExecutor.Stats>> stats,
+                                  ToLongFunction<PriorityExecutor.Stats> value) {
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (int i = 0; i < schedulers.size(); i++) {
+            for (PriorityExecutor.Stats s : stats.get(i)) {
+                schedulerLabels(sb.append(name), schedulers.get(i), s).append(value.applyAsLong(s)).append('\n');
+            }
+        }
+    }
+
+    private static StringBuilder schedulerLabels(StringBuilder sb, PriorityExecutor scheduler, PriorityExecutor.Stats s) {
+        return sb.append("{scheduler=\"").append(scheduler.name()).append("\",priority=\"")
+                .append(s.priority().label()).append("\"} ");
+    }
+
+    private void downstreamSample(StringBuilder sb, String name, String downstream, String label, String labelValue,
+                                  long value) {
+        sb.append(name).append("{downstream=\"").append(downstream).append("\",").append(label).append("=\"")
+                .append(labelValue).append("\"} ").append(value).append('\n');
+    }
+
+    private void downstreamSamples(StringBuilder sb, String name, String type, List<ResilientCall.Stats> stats,
+                                   ToLongFunction<ResilientCall.Stats> value) {
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (int i = 0; i < downstreams.size(); i++) {
+            sb.append(name).append("{downstream=\"").append(downstreams.get(i).name()).append("\"} ")
+                    .append(value.applyAsLong(stats.get(i))).append('\n');
+        }
+    }
+
+    // Carrier được nhận ra theo tên thread của pool scheduler (getThreadInfo với maxDepth 0 không chụp stack, khác
+    // Thread.getAllStackTraces() phải dừng mọi thread ở safepoint); mức sử dụng tính theo CPU time của các carrier
+    // giữa hai lần scrape, chia cho thời gian thực * số carrier tối đa (parallelism)
+    private void appendCarrierMetrics(StringBuilder sb) {
+        int parallelism = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                Runtime.getRuntime().availableProcessors());
+        long carriers = 0;
+        long cpuNanos = 0;
+
+        double utilization;
+        scrapeLock.lock();
+        try {
+            String prefix = carrierNamePrefix();
+            for (ThreadInfo info : threadBean.getThreadInfo(threadBean.getAllThreadIds(), 0)) {
+                // null nếu thread đã kết thúc sau khi lấy danh sách id
+                if (info != null && info.getThreadName().startsWith(prefix)) {
+                    carriers++;
+                    long cpu = threadBean.isThreadCpuTimeSupported()
+                            ? threadBean.getThreadCpuTime(info.getThreadId()) : -1;
+                    if (cpu > 0) {
+                        cpuNanos += cpu;
+                    }
+                }
+            }
+
+            long now = System.nanoTime();
+            long wall = now - lastScrapeNanos;
+            // Carrier có thể đã kết thúc giữa hai lần scrape nên tổng CPU time có thể giảm
+            long cpuDelta = Math.max(0, cpuNanos - lastCarrierCpuNanos);
+            utilization = wall == 0 ? 0 : Math.min(1.0, cpuDelta / (double) (wall * parallelism));
+            lastScrapeNanos = now;
+            lastCarrierCpuNanos = cpuNanos;
+        } finally {
+            scrapeLock.unlock();
+        }
+
+        sb.append("# TYPE jvm_virtual_thread_carriers gauge\n")
+                .append("jvm_virtual_thread_carriers ").append(carriers).append('\n');
+        sb.append("# TYPE jvm_virtual_thread_carrier_parallelism gauge\n")
+                .append("jvm_virtual_thread_carrier_parallelism ").append(parallelism).append('\n');
+        sb.append("# TYPE jvm_virtual_thread_carrier_utilization gauge\n")
+                .append("jvm_virtual_thread_carrier_utilization ").append(utilization).append('\n');
+    }
+
+    // Gọi khi giữ scrapeLock. Tên carrier lấy từ toString() của một virtual thread đang chạy
+    // ("VirtualThread[#22]/runnable@ForkJoinPool-1-worker-1"), bỏ số thứ tự ở cuối
+    private String carrierNamePrefix() {
+        if (carrierNamePrefix == null) {
+            String[] description = new String[1];
+            Thread probe = Thread.ofVirtual().start(() -> description[0] = Thread.currentThread().toString());
+            try {
+                probe.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String carrier = description[0] == null ? "" : description[0].substring(description[0].indexOf('@') + 1);
+            int end = carrier.length();
+            while (end > 0 && Character.isDigit(carrier.charAt(end - 1))) {
+                end--;
+            }
+            if (end == 0 || end == carrier.length()) {
+                // Không đọc được tên carrier: dùng tên pool mặc định của scheduler
+                return "ForkJoinPool-1-worker-";
+            }
+            carrierNamePrefix = carrier.substring(0, end);
+        }
+        return carrierNamePrefix;
+    }
+
+    private static void sample(StringBuilder sb, String name, String endpoint, String quantile, Object value) {
+        sb.append(name).append("{endpoint=\"").append(endpoint).append('"');
+        if (quantile != null) {
+            sb.append(",quantile=\"").append(quantile).append('"');
+        }
+        sb.append("} ").append(value).append('\n');
+    }
+
+    private static void limiterSample(StringBuilder sb, String name, ConcurrencyLimiter limiter, long value) {
+        sb.append(name).append("{limiter=\"").append(limiter.name()).append("\"} ").append(value).append('\n');
+    }
+
+    /**
+     * Số liệu của một endpoint. Độ trễ lưu theo micro giây.
+     */
+    private static final class EndpointMetrics {
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder sumMicros = new LongAdder();
+        private final Recorder[] recorders = new Recorder[STRIPES];
+        // Histogram cộng dồn từ các lần scrape, chỉ truy cập khi giữ lock
+        private final Histogram cumulative = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+        private final ReentrantLock readLock = new ReentrantLock();
+        // Histogram tái sử dụng khi lấy interval, mỗi Recorder một cái
+        private final Histogram[] intervals = new Histogram[STRIPES];
+
+        private EndpointMetrics() {
+            for (int i = 0; i < STRIPES; i++) {
+                recorders[i] = new Recorder(TimeUnit.MINUTES.toMicros(1), 3);
+            }
+        }
+
+        private void record(long nanos, int status) {
+            long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), TimeUnit.MINUTES.toMicros(1));
+            requests.increment();
+            if (status >= 500 || status < 0) {
+                errors.increment();
+            }
+            sumMicros.add(micros);
+            recorders[(int) (Thread.currentThread().threadId() & (STRIPES - 1))].recordValue(micros);
+        }
+
+        private Histogram snapshot() {
+            readLock.lock();
+            try {
+                for (int i = 0; i < STRIPES; i++) {
+                    intervals[i] = recorders[i].getIntervalHistogram(intervals[i]);
+                    cumulative.add(intervals[i]);
+                }
+                return cumulative.copy();
+            } finally {
+                readLock.unlock();
+            }
+        }
+    }
+}
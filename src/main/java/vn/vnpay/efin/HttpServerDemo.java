@@ -8,112 +8,309 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.Executors;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 public class HttpServerDemo {
 
+    // Engine HTTP: "jdk" (com.sun.net.httpserver) hoặc "nio" (NioHttpServer), chọn qua -Dhttp.engine=nio
+    private static final String ENGINE = System.getProperty("http.engine", "jdk");
+
+    // Số liệu của server, xem tại /metrics (định dạng Prometheus)
+    static final HttpMetrics METRICS = new HttpMetrics();
+
+    // Thư mục phục vụ tại /static/, chọn qua -Dstatic.dir; không đặt thì không mở /static/ (tránh lộ thư mục
+    // làm việc gồm .git, mã nguồn, build/)
+    private static final String STATIC_DIR = System.getProperty("static.dir");
+
+    // Dừng server êm: hết request đang xử lý hoặc quá -Dhttp.drainSeconds (mặc định 10) thì hủy phần còn lại
+    static final ServerLifecycle LIFECYCLE = new ServerLifecycle("http",
+            Duration.ofSeconds(Long.getLong("http.drainSeconds", 10)));
+
+    // Xếp lịch theo loại ưu tiên và deadline: tối đa -Dhttp.permits (mặc định 256) request chạy cùng lúc, khi quá tải
+    // /api/fast được cấp permit trước còn /api/slow, /api/parallel chịu phần xếp hàng
+    static final PriorityExecutor PRIORITY = METRICS.register(new PriorityExecutor("http",
+            Integer.getInteger("http.permits", 256), METRICS.virtualThreadFactory("http-")));
+
+    // Mốc khởi động: vào main, warmup xong, mở cổng, request đầu tiên
+    static final StartupTimer STARTUP = METRICS.register(new StartupTimer());
+
     public static void main(String[] args) throws IOException {
-        int port = 8080;
-        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
-        
-        // Đăng ký handlers cho các endpoints
-        server.createContext("/api/fast", new FastHandler());
-        server.createContext("/api/slow", new SlowHandler());
-        server.createContext("/api/parallel", new ParallelTaskHandler());
-        
-        // Sử dụng Virtual Thread Executor để xử lý các requests
-        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
-        
-        server.start();
-        System.out.println("HTTP Server đang chạy tại http://localhost:" + port);
+        STARTUP.mark("main");
+        int port = Integer.getInteger("http.port", 8080);
+        // Lần chạy huấn luyện cho AppCDS (./gradlew trainCds): warmup, gọi các endpoint qua cổng thật rồi dừng
+        boolean training = Boolean.getBoolean("http.training");
+
+        // Đăng ký handler một lần; warmup gọi thẳng các handler này trước khi cổng được mở
+        Map<String, HttpHandler> handlers = new LinkedHashMap<>();
+        registerHandlers(handlers::put);
+        if (training || Boolean.getBoolean("http.warmup")) {
+            try {
+                HandlerWarmup.inMemory(handlers, Duration.ofMillis(Long.getLong("http.warmupMillis", 2_000)), 16);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            STARTUP.mark("warmup");
+        }
+
+        if ("nio".equalsIgnoreCase(ENGINE)) {
+            // Engine NIO: N selector loop accept kết nối, mỗi kết nối chạy trên một virtual thread
+            NioHttpServer server = NioHttpServer.create(new InetSocketAddress(port), 0);
+            server.setThreadFactory(METRICS.virtualThreadFactory("nio-http-"));
+            handlers.forEach(server::createContext);
+            server.start();
+            LIFECYCLE.attach(server::stop);
+        } else {
+            HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+            handlers.forEach(server::createContext);
+
+            // Mỗi request một virtual thread; việc xếp lịch theo ưu tiên nằm ở handler của từng endpoint
+            server.setExecutor(PRIORITY);
+            server.start();
+            LIFECYCLE.attach(server::stop);
+        }
+        // SIGTERM (rolling restart) hoặc Ctrl+C: drain request đang xử lý trước khi JVM thoát
+        LIFECYCLE.installShutdownHook();
+        STARTUP.ready();
+
+        System.out.println("HTTP Server (engine " + ENGINE + ") đang chạy tại http://localhost:" + port);
         System.out.println("Các endpoints có sẵn:");
         System.out.println("  - GET /api/fast - Phản hồi nhanh");
         System.out.println("  - GET /api/slow - Phản hồi chậm (mô phỏng blocking IO)");
         System.out.println("  - GET /api/parallel - Phản hồi sau khi thực hiện nhiều tác vụ song song");
-        System.out.println("\nĐể test hiệu suất, sử dụng công cụ như Apache Bench:");
-        System.out.println("  ab -n 1000 -c 100 http://localhost:8080/api/slow");
-        
-        // Không dừng server trong demo này, chỉ chạy 30 giây
+        System.out.println("  - GET /api/stream?lines=N - Body lớn gửi dạng chunked");
+        if (STATIC_DIR != null) {
+            System.out.println("  - GET /static/<file> - File tĩnh trong "
+                    + Path.of(STATIC_DIR).toAbsolutePath().normalize());
+        } else {
+            System.out.println("  - (tắt) /static/ - Đặt -Dstatic.dir=<thư mục> để phục vụ file tĩnh");
+        }
+        System.out.println("  - GET /metrics - Số request, độ trễ p50/p99/p999 theo endpoint, virtual thread, carrier");
+        System.out.println("  - GET /health - 200 khi đang chạy, 503 khi đang drain");
+        System.out.println("\nĐể test hiệu suất, dùng LoadGenerator (open-loop, không bị coordinated omission như ab):");
+        System.out.println("  ./gradlew runMain -PmainClass=vn.vnpay.efin.LoadGenerator --args=\"mode=open rate=500 duration=20\"");
+
+        // Demo chạy -Dhttp.runSeconds giây (mặc định 30) rồi tự dừng êm; 0 = chạy tới khi nhận SIGTERM
+        long runSeconds = Long.getLong("http.runSeconds", 30);
         try {
-            Thread.sleep(30_000);
-            server.stop(0);
-            System.out.println("HTTP Server đã dừng sau 30 giây.");
+            if (training) {
+                HandlerWarmup.overHttp(port, Duration.ofMillis(Long.getLong("http.trainingMillis", 3_000)), 16);
+                LIFECYCLE.shutdown();
+            } else if (runSeconds <= 0) {
+                LIFECYCLE.awaitStopped();
+            } else if (!LIFECYCLE.awaitStopped(Duration.ofSeconds(runSeconds))) {
+                LIFECYCLE.shutdown();
+                System.out.println("HTTP Server đã dừng sau " + runSeconds + " giây.");
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
+
+    // Đăng ký handlers cho các endpoints, dùng chung cho cả hai engine.
+    // Mỗi endpoint có giới hạn đồng thời riêng, request vượt giới hạn bị từ chối ngay với 503
+    // trước khi xếp hàng chờ permit của PRIORITY.
+    // Lớp đo lường bọc ngoài cùng nên request bị từ chối cũng được tính vào số liệu
+    static void registerHandlers(BiConsumer<String, HttpHandler> createContext) {
+        // Phản hồi /api/slow sống 10 giây, được làm mới trước khi hết hạn từ giây thứ 7
+        LoadingCache<String, byte[]> slowCache = METRICS.register(new LoadingCache<>(
+                "slow", 1_000, Duration.ofSeconds(10), Duration.ofSeconds(7), SlowHandler::load));
+        register(createContext, "/api/fast", PriorityExecutor.Priority.HIGH, new FastHandler(),
+                METRICS.register(ConcurrencyLimiter.gradient("fast", 1_000, 100, 20_000)));
+        register(createContext, "/api/slow", PriorityExecutor.Priority.NORMAL, new SlowHandler(slowCache),
+                METRICS.register(ConcurrencyLimiter.aimd("slow", 200, 20, 2_000, Duration.ofMillis(600))));
+        register(createContext, "/api/parallel", PriorityExecutor.Priority.LOW, new ParallelTaskHandler(),
+                METRICS.register(ConcurrencyLimiter.aimd("parallel", 100, 10, 1_000, Duration.ofMillis(800))));
+        register(createContext, "/api/stream", PriorityExecutor.Priority.LOW, new StreamHandler());
+        if (STATIC_DIR != null) {
+            register(createContext, "/static/", PriorityExecutor.Priority.NORMAL,
+                    new StaticFileHandler(Path.of(STATIC_DIR), "/static/"));
+        }
+        createContext.accept("/metrics", METRICS.handler());
+        createContext.accept("/health", LIFECYCLE.healthHandler());
+    }
+
+    // Mỗi request có RequestContext riêng (request id, người gọi, deadline) gắn bằng ScopedValue,
+    // qua giới hạn đồng thời của endpoint (nếu có) rồi mới chờ permit theo loại ưu tiên của endpoint.
+    // Đặt limiter trước hàng đợi ưu tiên để request vượt giới hạn bị từ chối ngay thay vì nằm chờ trong hàng đợi
+    // không giới hạn của PriorityExecutor; thời gian chờ permit được tính vào độ trễ mà limiter đo.
+    // LIFECYCLE bọc ngoài cùng để biết mọi request đang xử lý khi server dừng
+    private static void register(BiConsumer<String, HttpHandler> createContext, String path,
+                                 PriorityExecutor.Priority priority, HttpHandler handler) {
+        register(createContext, path, priority, handler, null);
+    }
+
+    private static void register(BiConsumer<String, HttpHandler> createContext, String path,
+                                 PriorityExecutor.Priority priority, HttpHandler handler,
+                                 ConcurrencyLimiter limiter) {
+        HttpHandler prioritized = PRIORITY.handler(priority, handler);
+        HttpHandler admitted = limiter == null ? prioritized : AdmissionHandler.wrap(prioritized, limiter);
+        createContext.accept(path, LIFECYCLE.track(STARTUP.track(
+                METRICS.instrument(path, RequestContext.bind(admitted)))));
+    }
     
-    // Handler xử lý nhanh, không có blocking
+    // Handler xử lý nhanh, không có blocking.
+    // Body ghép từ đoạn cố định đã encode sẵn và buffer dùng lại từ pool, gần như không cấp phát mỗi request
     static class FastHandler implements HttpHandler {
+
+        private static final ResponseWriter.Segment PREFIX = ResponseWriter.Segment.of("Phản hồi nhanh từ ");
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            String response = "Phản hồi nhanh từ " + Thread.currentThread();
-            sendResponse(exchange, response);
+            try (ResponseWriter writer = ResponseWriter.acquire()) {
+                writer.append(PREFIX).append(Thread.currentThread()).send(exchange, 200);
+            }
+        }
+    }
+
+    // Handler trả body lớn dạng chunked: mỗi khi buffer của writer đầy thì đẩy ra một chunk,
+    // bộ nhớ dùng cố định bất kể số dòng. Số dòng chọn qua query ?lines=N
+    static class StreamHandler implements HttpHandler {
+
+        private static final ResponseWriter.Segment LINE = ResponseWriter.Segment.of("Dòng ");
+        private static final ResponseWriter.Segment FROM = ResponseWriter.Segment.of(" từ ");
+        private static final int MAX_LINES = 1_000_000;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int lines = 10_000;
+            String query = exchange.getRequestURI().getQuery();
+            if (query != null && query.startsWith("lines=")) {
+                try {
+                    lines = Math.min(MAX_LINES, Integer.parseInt(query.substring("lines=".length())));
+                } catch (NumberFormatException e) {
+                    sendResponse(exchange, "Tham số lines không hợp lệ", 400);
+                    return;
+                }
+            }
+            Thread current = Thread.currentThread();
+            try (ResponseWriter writer = ResponseWriter.chunked(exchange, 200)) {
+                for (int i = 1; i <= lines; i++) {
+                    writer.append(LINE).append(i).append(FROM).append(current).append("\n");
+                }
+            }
         }
     }
     
-    // Handler mô phỏng blocking IO operation
+    // Handler mô phỏng blocking IO operation.
+    // Phản hồi được cache theo URI dưới dạng byte[] đã encode sẵn: cache hit không phải chờ IO cũng không encode lại
     static class SlowHandler implements HttpHandler {
+
+        private final LoadingCache<String, byte[]> cache;
+
+        SlowHandler(LoadingCache<String, byte[]> cache) {
+            this.cache = cache;
+        }
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             try {
-                // Mô phỏng blocking IO từ 200-500ms (như gọi database, external API...)
-                Thread.sleep(ThreadLocalRandom.current().nextInt(200, 500));
-                String response = "Phản hồi chậm sau khi chờ IO từ " + Thread.currentThread();
-                sendResponse(exchange, response);
+                sendResponse(exchange, cache.get(exchange.getRequestURI().toString()), 200);
             } catch (InterruptedException e) {
+                // Bị hủy khi server dừng: trả lời trước rồi mới đặt lại cờ interrupt, vì ghi socket khi cờ đang bật
+                // sẽ đóng kết nối; 503 để client thử lại ở instance khác
+                sendResponse(exchange, "Request bị hủy do server đang dừng", 503);
                 Thread.currentThread().interrupt();
-                String response = "Operation bị gián đoạn";
-                sendResponse(exchange, response, 500);
+            } catch (ExecutionException e) {
+                sendResponse(exchange, "Lỗi khi xử lý: " + e.getCause().getMessage(), 500);
             }
         }
+
+        static byte[] load(String uri) throws InterruptedException {
+            // Mô phỏng blocking IO từ 200-500ms (như gọi database, external API...)
+            BlockingStrategy.current().block(ThreadLocalRandom.current().nextInt(200, 500));
+            String response = "Phản hồi chậm sau khi chờ IO từ " + Thread.currentThread();
+            return response.getBytes(StandardCharsets.UTF_8);
+        }
     }
     
     // Handler thực hiện nhiều tác vụ song song sử dụng virtual threads
     static class ParallelTaskHandler implements HttpHandler {
+
+        // Deadline cho toàn bộ fan-out của một request
+        private static final Duration DEADLINE = Duration.ofSeconds(1);
+
+        // Đọc dữ liệu là idempotent nên được hedge; thanh toán không idempotent nên chỉ có timeout, breaker, bulkhead
+        private static final ResilientCall DATABASE = METRICS.register(
+                new ResilientCall("database").timeout(Duration.ofMillis(800)).hedge(95).bulkhead(500));
+        private static final ResilientCall PAYMENT = METRICS.register(
+                new ResilientCall("payment").timeout(Duration.ofMillis(600)).bulkhead(200)
+                        .circuitBreaker(CircuitBreaker.withDefaults("payment")));
+        private static final ResilientCall AUTH = METRICS.register(
+                new ResilientCall("auth").timeout(Duration.ofMillis(500)).hedge(95).bulkhead(500));
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
-                // Tạo 5 tác vụ song song và chờ tất cả hoàn thành
-                var future1 = executor.submit(() -> simulateTask("Database query", 300));
-                var future2 = executor.submit(() -> simulateTask("Payment API call", 200));
-                var future3 = executor.submit(() -> simulateTask("Authentication", 150));
-                var future4 = executor.submit(() -> simulateTask("Logging", 100));
-                var future5 = executor.submit(() -> simulateTask("Notification", 250));
-                
-                try {
-                    String result1 = future1.get();
-                    String result2 = future2.get();
-                    String result3 = future3.get();
-                    String result4 = future4.get();
-                    String result5 = future5.get();
-                    
-                    String response = "Các tác vụ song song đã hoàn thành:\n" +
-                            "1. " + result1 + "\n" +
-                            "2. " + result2 + "\n" +
-                            "3. " + result3 + "\n" +
-                            "4. " + result4 + "\n" +
-                            "5. " + result5 + "\n" +
-                            "Xử lý bởi: " + Thread.currentThread();
-                    
-                    sendResponse(exchange, response);
-                } catch (Exception e) {
-                    String response = "Lỗi khi thực hiện tác vụ song song: " + e.getMessage();
-                    sendResponse(exchange, response, 500);
-                }
+            // Tạo 5 tác vụ song song; một tác vụ lỗi hoặc hết deadline thì các tác vụ còn lại bị hủy ngay.
+            // Deadline là mốc sớm hơn giữa DEADLINE và deadline client gửi kèm request
+            RequestContext context = RequestContext.current();
+            Instant start = Instant.now();
+            Instant deadline = start.plus(DEADLINE);
+            if (context.deadline().isBefore(deadline)) {
+                deadline = context.deadline();
             }
-        }
-        
-        private String simulateTask(String taskName, int delayMs) {
+            ScatterGather.Result<String> result;
             try {
-                Thread.sleep(delayMs);
-                return taskName + " hoàn thành sau " + delayMs + "ms trên " + Thread.currentThread();
+                result = ScatterGather.<String>allSuccessful()
+                        .fork("Database query", () -> DATABASE.call(() -> simulateTask("Database query", 300)))
+                        .fork("Payment API call", () -> PAYMENT.call(() -> simulateTask("Payment API call", 200)))
+                        .fork("Authentication", () -> AUTH.call(() -> simulateTask("Authentication", 150)))
+                        .fork("Logging", () -> simulateTask("Logging", 100))
+                        .fork("Notification", () -> simulateTask("Notification", 250))
+                        .execute(deadline);
             } catch (InterruptedException e) {
+                // Như SlowHandler: trả lời trước khi đặt lại cờ interrupt
+                sendResponse(exchange, "Request bị hủy do server đang dừng", 503);
                 Thread.currentThread().interrupt();
-                return taskName + " bị gián đoạn";
+                return;
+            }
+
+            switch (result.status()) {
+                case SUCCESS -> {
+                    StringBuilder response = new StringBuilder("Các tác vụ song song đã hoàn thành:\n");
+                    for (int i = 0; i < result.values().size(); i++) {
+                        response.append(i + 1).append(". ").append(result.values().get(i)).append("\n");
+                    }
+                    result.critical().ifPresent(c -> response.append("Đường găng: ").append(c.name())
+                            .append(" (").append(c.latency().toMillis()).append("ms)\n"));
+                    response.append("Xử lý bởi: ").append(Thread.currentThread())
+                            .append(", request ").append(context.requestId()).append(" của ").append(context.principal());
+                    sendResponse(exchange, response.toString());
+                }
+                // Downstream hết hạn (theo timeout riêng hoặc deadline của request) cũng là quá hạn với client
+                case FAILED -> sendResponse(exchange,
+                        "Lỗi khi thực hiện tác vụ song song: " + result.cause().getMessage() + "\n" + timings(result),
+                        result.cause() instanceof TimeoutException ? 504 : 500);
+                case TIMED_OUT -> sendResponse(exchange,
+                        "Quá deadline " + Duration.between(start, deadline).toMillis() + "ms, đã hủy các tác vụ còn lại\n" + timings(result), 504);
             }
         }
+
+        private static String timings(ScatterGather.Result<String> result) {
+            StringBuilder sb = new StringBuilder();
+            for (ScatterGather.BranchTiming branch : result.branches()) {
+                sb.append("- ").append(branch.name()).append(": ").append(branch.state())
+                        .append(" sau ").append(branch.latency().toMillis()).append("ms\n");
+            }
+            return sb.toString();
+        }
+
+        private String simulateTask(String taskName, int delayMs) throws InterruptedException {
+            // Thread con của scope thấy ngữ cảnh của request mà không cần truyền tham số hay sao chép
+            RequestContext context = RequestContext.current();
+            // Để InterruptedException lan ra để scope biết nhánh này đã bị hủy
+            Thread.sleep(delayMs);
+            return taskName + " [" + context.requestId() + "] hoàn thành sau " + delayMs + "ms trên "
+                    + Thread.currentThread();
+        }
     }
     
     // Helper method để gửi HTTP response
@@ -122,7 +319,10 @@ public class HttpServerDemo {
     }
     
     private static void sendResponse(HttpExchange exchange, String response, int statusCode) throws IOException {
-        byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+        sendResponse(exchange, response.getBytes(StandardCharsets.UTF_8), statusCode);
+    }
+
+    private static void sendResponse(HttpExchange exchange, byte[] responseBytes, int statusCode) throws IOException {
         exchange.sendResponseHeaders(statusCode, responseBytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
             os.write(responseBytes);
@@ -0,0 +1,135 @@
+package vn.vnpay.efin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor cho tải trộn CPU và IO.
+ *
+ * Virtual thread không bị preempt: một tác vụ tính toán nặng giữ carrier tới khi xong, các virtual thread
+ * đang chờ IO dù đã sẵn sàng cũng phải đợi. Executor này chạy tác vụ đánh dấu {@link CpuBound} trên một
+ * ForkJoinPool platform thread giới hạn theo số core (được hệ điều hành chia thời gian như bình thường),
+ * còn lại chạy trên virtual thread. Trong một request trộn cả hai, virtual thread gọi {@link #compute}
+ * để đẩy riêng phần tính toán sang pool CPU và nhả carrier trong lúc chờ.
+ */
+public class HybridExecutor extends AbstractExecutorService {
+
+    private final ExecutorService io = Executors.newVirtualThreadPerTaskExecutor();
+    private final ForkJoinPool cpu;
+    private final LongAdder cpuTasks = new LongAdder();
+    private final LongAdder ioTasks = new LongAdder();
+
+    public HybridExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public HybridExecutor(int cpuParallelism) {
+        this.cpu = new ForkJoinPool(cpuParallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("cpu-worker-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    public static boolean isCpuBound(Object task) {
+        return task.getClass().isAnnotationPresent(CpuBound.class);
+    }
+
+    /**
+     * Chạy phần tính toán trên pool CPU và chờ kết quả. Gọi từ virtual thread thì thread chỉ park
+     * (nhả carrier) trong lúc chờ; gọi từ chính pool CPU thì chạy luôn tại chỗ để tránh deadlock.
+     */
+    public <T> T compute(Callable<T> task) throws InterruptedException, ExecutionException {
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread worker && worker.getPool() == cpu) {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new ExecutionException(e);
+            }
+        }
+        cpuTasks.increment();
+        return cpu.submit(task).get();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        boolean cpuBound = command instanceof RoutedTask<?> routed ? routed.cpuBound : isCpuBound(command);
+        if (cpuBound) {
+            cpuTasks.increment();
+            cpu.execute(command);
+        } else {
+            ioTasks.increment();
+            io.execute(command);
+        }
+    }
+
+    // submit() bọc tác vụ vào FutureTask nên mất annotation; ghi lại loại tác vụ trước khi bọc
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new RoutedTask<>(callable, isCpuBound(callable));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new RoutedTask<>(Executors.callable(runnable, value), isCpuBound(runnable));
+    }
+
+    public long cpuTasks() {
+        return cpuTasks.sum();
+    }
+
+    public long ioTasks() {
+        return ioTasks.sum();
+    }
+
+    @Override
+    public void shutdown() {
+        io.shutdown();
+        cpu.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>(io.shutdownNow());
+        pending.addAll(cpu.shutdownNow());
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return io.isShutdown() && cpu.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return io.isTerminated() && cpu.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return io.awaitTermination(timeout, unit)
+                && cpu.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private static final class RoutedTask<T> extends FutureTask<T> {
+
+        private final boolean cpuBound;
+
+        private RoutedTask(Callable<T> callable, boolean cpuBound) {
+            super(callable);
+            this.cpuBound = cpuBound;
+        }
+    }
+}
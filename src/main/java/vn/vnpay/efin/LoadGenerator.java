@@ -0,0 +1,305 @@
+package vn.vnpay.efin;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bộ tạo tải cho các endpoint của HttpServerDemo, chạy hoàn toàn trên localhost, mỗi client là một virtual thread.
+ *
+ * - open: tốc độ đến cố định (rate request/giây) bất kể server trả lời nhanh hay chậm. Độ trễ tính từ thời điểm
+ *   request lẽ ra được gửi, nên không bị coordinated omission như ab/wrk.
+ * - closed: số client cố định, mỗi client gửi request kế tiếp khi nhận được phản hồi. Độ trễ được hiệu chỉnh
+ *   coordinated omission theo khoảng gửi mong muốn của mỗi client (concurrency / rate).
+ *
+ * Ví dụ: ./gradlew runMain -PmainClass=vn.vnpay.efin.LoadGenerator --args="mode=open rate=500 duration=20"
+ */
+public class LoadGenerator {
+
+    public enum Mode {
+        OPEN,
+        CLOSED
+    }
+
+    public record Options(Mode mode, String baseUrl, List<String> endpoints, int rate, int concurrency,
+                          Duration duration, int maxInFlight, Duration timeout) {
+
+        // Tham số dạng key=value, ví dụ: mode=closed concurrency=200 duration=30 endpoints=/api/slow
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq > 0) {
+                    values.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+                }
+            }
+            return new Options(
+                    Mode.valueOf(values.getOrDefault("mode", "open").toUpperCase()),
+                    values.getOrDefault("url", "http://localhost:8080"),
+                    List.of(values.getOrDefault("endpoints", "/api/fast,/api/slow,/api/parallel").split(",")),
+                    Integer.parseInt(values.getOrDefault("rate", "200")),
+                    Integer.parseInt(values.getOrDefault("concurrency", "50")),
+                    Duration.ofSeconds(Long.parseLong(values.getOrDefault("duration", "10"))),
+                    Integer.parseInt(values.getOrDefault("maxInFlight", "10000")),
+                    Duration.ofSeconds(Long.parseLong(values.getOrDefault("timeout", "10"))));
+        }
+    }
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Options options;
+    private final HttpClient client;
+    private final List<EndpointStats> stats = new ArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public LoadGenerator(Options options) {
+        this.options = options;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(options.timeout())
+                .build();
+        for (String endpoint : options.endpoints()) {
+            stats.add(new EndpointStats(endpoint, URI.create(options.baseUrl() + endpoint)));
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Options options = Options.parse(args);
+        System.out.println("Tạo tải " + options.mode() + " tới " + options.baseUrl() + options.endpoints()
+                + (options.mode() == Mode.OPEN
+                    ? ", " + options.rate() + " request/giây"
+                    : ", " + options.concurrency() + " client, mục tiêu " + options.rate() + " request/giây")
+                + " trong " + options.duration().toSeconds() + " giây");
+        new LoadGenerator(options).run();
+    }
+
+    public void run() throws InterruptedException {
+        Thread reporter = Thread.ofVirtual().name("load-reporter").start(this::reportEverySecond);
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (options.mode() == Mode.OPEN) {
+                runOpenLoop(clients, start);
+            } else {
+                runClosedLoop(clients, start);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        reporter.interrupt();
+        reporter.join();
+        stats.forEach(EndpointStats::collect);
+        printSummary(elapsed);
+    }
+
+    // Request thứ i lẽ ra được gửi tại start + i * interval; độ trễ tính từ thời điểm đó
+    private void runOpenLoop(ExecutorService clients, long start) {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, options.rate());
+        long end = start + options.duration().toNanos();
+        for (long i = 0; ; i++) {
+            long intended = start + i * intervalNanos;
+            if (intended >= end) {
+                return;
+            }
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            EndpointStats target = stats.get((int) (i % stats.size()));
+            // Server quá tải tới mức số request đang chờ vượt giới hạn: không gửi thêm. Request này không có độ trễ
+            // nên được báo ở cột "không gửi" ngay cạnh các phân vị, các phân vị chỉ tính request đã gửi
+            if (inFlight.get() >= options.maxInFlight()) {
+                target.notSent();
+                continue;
+            }
+            inFlight.incrementAndGet();
+            clients.execute(() -> {
+                try {
+                    long sent = System.nanoTime();
+                    boolean ok = send(target);
+                    long now = System.nanoTime();
+                    target.record(now - intended, now - sent, ok);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    // Mỗi client muốn gửi một request sau mỗi concurrency/rate giây; phản hồi chậm hơn khoảng đó sẽ che mất
+    // các request lẽ ra đã được gửi, HdrHistogram bù lại các mẫu này khi ghi
+    private void runClosedLoop(ExecutorService clients, long start) {
+        long end = start + options.duration().toNanos();
+        long expectedIntervalMicros = TimeUnit.SECONDS.toMicros(1) * options.concurrency() / Math.max(1, options.rate());
+        for (int c = 0; c < options.concurrency(); c++) {
+            int offset = c;
+            clients.execute(() -> {
+                for (int i = offset; System.nanoTime() < end; i++) {
+                    EndpointStats target = stats.get(i % stats.size());
+                    long sent = System.nanoTime();
+                    boolean ok = send(target);
+                    long latency = System.nanoTime() - sent;
+                    target.recordClosed(latency, expectedIntervalMicros, ok);
+                }
+            });
+        }
+    }
+
+    private boolean send(EndpointStats target) {
+        HttpRequest request = HttpRequest.newBuilder(target.uri).timeout(options.timeout()).GET().build();
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() < 400;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void reportEverySecond() {
+        System.out.printf("%6s %10s %8s %9s %10s %10s %10s%n", "giây", "req/s", "lỗi", "không gửi", "p50(ms)",
+                "p99(ms)", "max(ms)");
+        Histogram second = new Histogram(MAX_LATENCY_MICROS, 3);
+        for (int s = 1; ; s++) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            second.reset();
+            long requests = 0;
+            long errors = 0;
+            long notSent = 0;
+            for (EndpointStats endpoint : stats) {
+                second.add(endpoint.collect());
+                requests += endpoint.intervalRequests.sumThenReset();
+                errors += endpoint.intervalErrors.sumThenReset();
+                notSent += endpoint.intervalNotSent.sumThenReset();
+            }
+            // Số request thật, không tính các mẫu bù coordinated omission trong histogram
+            System.out.printf("%6d %10d %8d %9d %10.2f %10.2f %10.2f%n", s, requests, errors, notSent,
+                    millis(second.getValueAtPercentile(50)), millis(second.getValueAtPercentile(99)),
+                    millis(second.getMaxValue()));
+        }
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long notSent = stats.stream().mapToLong(e -> e.notSent.sum()).sum();
+        System.out.println("\nKết quả sau " + String.format("%.1f", seconds) + " giây"
+                + (notSent > 0 ? ", không gửi " + notSent + " request do vượt maxInFlight" : ""));
+        System.out.printf("%-16s %-9s %8s %8s %9s %9s", "endpoint", "loại", "request", "lỗi", "không gửi", "req/s");
+        for (double p : PERCENTILES) {
+            System.out.printf(" %9s", "p" + (p == Math.floor(p) ? String.valueOf((int) p) : String.valueOf(p)));
+        }
+        System.out.printf(" %9s%n", "max");
+        for (EndpointStats endpoint : stats) {
+            printRow(endpoint, "phản hồi", endpoint.response, seconds);
+            printRow(endpoint, "dịch vụ", endpoint.service, seconds);
+        }
+        System.out.println("phản hồi: độ trễ đã hiệu chỉnh coordinated omission (người dùng thấy), "
+                + "dịch vụ: thời gian từ lúc gửi tới lúc nhận (đơn vị ms)");
+        if (notSent > 0) {
+            System.out.println("Cảnh báo: phân vị chỉ tính request đã gửi, các request \"không gửi\" (vượt maxInFlight)"
+                    + " không có trong phân vị; tăng maxInFlight để đo đủ");
+        }
+    }
+
+    private static void printRow(EndpointStats endpoint, String kind, Histogram histogram, double seconds) {
+        System.out.printf("%-16s %-9s %8d %8d %9d %9.1f", endpoint.name, kind, endpoint.requests.sum(),
+                endpoint.errors.sum(), endpoint.notSent.sum(), endpoint.requests.sum() / seconds);
+        for (double p : PERCENTILES) {
+            System.out.printf(" %9.2f", millis(histogram.getValueAtPercentile(p)));
+        }
+        System.out.printf(" %9.2f%n", millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    /**
+     * Số liệu của một endpoint. Các thread client chỉ ghi vào Recorder (không lock),
+     * histogram cộng dồn chỉ được đọc/ghi bởi thread báo cáo.
+     */
+    private static final class EndpointStats {
+
+        private final String name;
+        private final URI uri;
+        private final Recorder responseRecorder = new Recorder(MAX_LATENCY_MICROS, 3);
+        private final Recorder serviceRecorder = new Recorder(MAX_LATENCY_MICROS, 3);
+        private final Histogram response = new Histogram(MAX_LATENCY_MICROS, 3);
+        private final Histogram service = new Histogram(MAX_LATENCY_MICROS, 3);
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder intervalRequests = new LongAdder();
+        private final LongAdder intervalErrors = new LongAdder();
+        private final LongAdder notSent = new LongAdder();
+        private final LongAdder intervalNotSent = new LongAdder();
+        private Histogram responseInterval;
+        private Histogram serviceInterval;
+
+        private EndpointStats(String name, URI uri) {
+            this.name = name;
+            this.uri = uri;
+        }
+
+        private void record(long responseNanos, long serviceNanos, boolean ok) {
+            responseRecorder.recordValue(toMicros(responseNanos));
+            serviceRecorder.recordValue(toMicros(serviceNanos));
+            count(ok);
+        }
+
+        private void recordClosed(long latencyNanos, long expectedIntervalMicros, boolean ok) {
+            long micros = toMicros(latencyNanos);
+            responseRecorder.recordValueWithExpectedInterval(micros, expectedIntervalMicros);
+            serviceRecorder.recordValue(micros);
+            count(ok);
+        }
+
+        private void notSent() {
+            notSent.increment();
+            intervalNotSent.increment();
+        }
+
+        private void count(boolean ok) {
+            requests.increment();
+            intervalRequests.increment();
+            if (!ok) {
+                errors.increment();
+                intervalErrors.increment();
+            }
+        }
+
+        // Gộp dữ liệu mới vào histogram cộng dồn, trả về độ trễ phản hồi của khoảng vừa qua
+        private Histogram collect() {
+            responseInterval = responseRecorder.getIntervalHistogram(responseInterval);
+            serviceInterval = serviceRecorder.getIntervalHistogram(serviceInterval);
+            response.add(responseInterval);
+            service.add(serviceInterval);
+            return responseInterval;
+        }
+
+        private static long toMicros(long nanos) {
+            return Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_LATENCY_MICROS);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package vn.vnpay.efin;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache trong process, tự nạp giá trị khi thiếu.
+ *
+ * - Giới hạn kích thước theo segmented LRU: phần tử mới vào vùng probation, được truy cập lần nữa thì lên
+ *   vùng protected; phần tử bị loại luôn lấy từ cuối probation nên một loạt key chỉ dùng một lần không đẩy
+ *   được các key hay dùng ra ngoài.
+ * - Hết hạn theo TTL tính từ lúc nạp; sau refreshAfter thì lần truy cập kế tiếp nạp lại trên virtual thread
+ *   riêng (refresh-ahead) trong khi vẫn trả giá trị cũ.
+ * - Khi nhiều virtual thread cùng thiếu một key, chỉ một thread gọi loader, các thread khác chờ kết quả đó.
+ *
+ * Dữ liệu chia thành nhiều shard, mỗi shard một ReentrantLock (không synchronized để không pin carrier).
+ *
+ * @param <K> kiểu key
+ * @param <V> kiểu giá trị
+ */
+public class LoadingCache<K, V> {
+
+    /**
+     * Nạp giá trị cho key khi cache thiếu hoặc cần làm mới. Giá trị null không được lưu vào cache.
+     */
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    public record Stats(long hits, long misses, long loads, long loadFailures, long refreshes,
+                        long evictions, long expirations, int size) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    // Tỉ lệ vùng protected trong mỗi shard, phần còn lại là probation
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final String name;
+    private final long ttlNanos;
+    private final long refreshAfterNanos;
+    private final Loader<K, V> loader;
+    private final List<Segment> segments;
+    private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param refreshAfter thời gian sau khi nạp thì làm mới trước khi hết hạn, Duration.ZERO để tắt
+     */
+    public LoadingCache(String name, int maximumSize, Duration ttl, Duration refreshAfter, Loader<K, V> loader) {
+        this.name = name;
+        this.ttlNanos = ttl.toNanos();
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        this.loader = loader;
+        int count = Integer.highestOneBit(Math.max(1, Math.min(16, maximumSize / 8)));
+        List<Segment> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add(new Segment(Math.max(2, maximumSize / count)));
+        }
+        this.segments = List.copyOf(shards);
+    }
+
+    /**
+     * Lấy giá trị của key, nạp bằng loader nếu chưa có hoặc đã hết hạn.
+     *
+     * @throws ExecutionException nếu loader ném lỗi; lỗi không được lưu vào cache
+     */
+    public V get(K key) throws InterruptedException, ExecutionException {
+        long now = System.nanoTime();
+        Entry<V> entry = segmentFor(key).get(key, now);
+        if (entry != null) {
+            hits.increment();
+            if (refreshAfterNanos > 0 && now - entry.loadedAt >= refreshAfterNanos) {
+                refreshAsync(key);
+            }
+            return entry.value;
+        }
+
+        misses.increment();
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing.get();
+        }
+        // Thread vừa nạp xong có thể đã ghi vào cache giữa lúc tra cứu và lúc đăng ký
+        entry = segmentFor(key).get(key, System.nanoTime());
+        if (entry != null) {
+            loading.remove(key, future);
+            future.complete(entry.value);
+            return entry.value;
+        }
+        load(key, future);
+        if (future.isCompletedExceptionally() && Thread.interrupted()) {
+            // Loader chạy trên chính thread này bị interrupt: báo đúng là bị gián đoạn thay vì lỗi của loader
+            throw new InterruptedException("Nạp " + key + " bị gián đoạn");
+        }
+        return future.get();
+    }
+
+    private void refreshAsync(K key) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        if (loading.putIfAbsent(key, future) == null) {
+            refreshes.increment();
+            Thread.ofVirtual().name("cache-refresh-" + name).start(() -> load(key, future));
+        }
+    }
+
+    private void load(K key, CompletableFuture<V> future) {
+        try {
+            V value = loader.load(key);
+            loads.increment();
+            if (value != null) {
+                segmentFor(key).put(key, new Entry<>(value, System.nanoTime()));
+            }
+            future.complete(value);
+        } catch (Throwable e) {
+            loadFailures.increment();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            future.completeExceptionally(e);
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    public void invalidate(K key) {
+        segmentFor(key).remove(key);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Stats stats() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), loads.sum(), loadFailures.sum(), refreshes.sum(),
+                evictions.sum(), expirations.sum(), size);
+    }
+
+    private Segment segmentFor(K key) {
+        int h = key.hashCode();
+        return segments.get((h ^ (h >>> 16)) & (segments.size() - 1));
+    }
+
+    private record Entry<V>(V value, long loadedAt) {}
+
+    /**
+     * Một shard của cache. Hai LinkedHashMap theo thứ tự chèn: đầu map là phần tử lâu chưa dùng nhất,
+     * dùng lại một phần tử thì xóa và chèn lại vào cuối.
+     */
+    private final class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<K, Entry<V>> protectedArea = new LinkedHashMap<>();
+        private final int capacity;
+        private final int protectedCapacity;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = Math.max(1, (int) (capacity * PROTECTED_RATIO));
+        }
+
+        private Entry<V> get(K key, long now) {
+            lock.lock();
+            try {
+                Entry<V> entry = protectedArea.remove(key);
+                if (entry != null) {
+                    if (expired(entry, now)) {
+                        return null;
+                    }
+                    protectedArea.put(key, entry);
+                    return entry;
+                }
+                entry = probation.remove(key);
+                if (entry == null || expired(entry, now)) {
+                    return null;
+                }
+                // Được dùng lần thứ hai: lên vùng protected, phần tử cũ nhất của protected quay về probation
+                protectedArea.put(key, entry);
+                if (protectedArea.size() > protectedCapacity) {
+                    Map.Entry<K, Entry<V>> demoted = removeEldest(protectedArea);
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+                return entry;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put(K key, Entry<V> entry) {
+            lock.lock();
+            try {
+                // Làm mới key đã ở vùng protected thì giữ nguyên vùng
+                if (protectedArea.remove(key) != null) {
+                    protectedArea.put(key, entry);
+                    return;
+                }
+                probation.remove(key);
+                probation.put(key, entry);
+                while (probation.size() + protectedArea.size() > capacity) {
+                    removeEldest(probation.isEmpty() ? protectedArea : probation);
+                    evictions.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(K key) {
+            lock.lock();
+            try {
+                if (protectedArea.remove(key) == null) {
+                    probation.remove(key);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return probation.size() + protectedArea.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Gọi khi đang giữ lock; phần tử hết hạn đã được xóa khỏi map bởi nơi gọi
+        private boolean expired(Entry<V> entry, long now) {
+            if (now - entry.loadedAt >= ttlNanos) {
+                expirations.increment();
+                return true;
+            }
+            return false;
+        }
+
+        private Map.Entry<K, Entry<V>> removeEldest(LinkedHashMap<K, Entry<V>> map) {
+            Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+            Map.Entry<K, Entry<V>> eldest = it.next();
+            it.remove();
+            return eldest;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package vn.vnpay.efin;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Echo server cục bộ dùng cho BlockingStrategy.SOCKET.
+ *
+ * Client gửi số millis cần chờ, server ngủ đúng khoảng đó rồi trả lại 1 byte,
+ * nhờ vậy phía client thực sự bị blocking trên socket read.
+ */
+public class LocalEchoServer implements AutoCloseable {
+
+    private static final class Holder {
+        private static final LocalEchoServer SHARED = startShared();
+
+        private static LocalEchoServer startShared() {
+            try {
+                return new LocalEchoServer();
+            } catch (IOException e) {
+                throw new IllegalStateException("Không khởi động được echo server cục bộ", e);
+            }
+        }
+    }
+
+    private final ServerSocket serverSocket;
+
+    public LocalEchoServer() throws IOException {
+        serverSocket = new ServerSocket(0, 4096, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().name("echo-acceptor").start(this::acceptLoop);
+    }
+
+    /**
+     * Echo server dùng chung, khởi động lần đầu khi được gọi.
+     */
+    public static LocalEchoServer shared() {
+        return Holder.SHARED;
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gửi yêu cầu tới server và chờ (blocking socket read) tới khi nhận phản hồi sau delayMillis.
+     */
+    public void roundTrip(long delayMillis) throws IOException {
+        try (Socket socket = new Socket(serverSocket.getInetAddress(), port())) {
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeLong(delayMillis);
+            out.flush();
+            if (socket.getInputStream().read() < 0) {
+                throw new IOException("Echo server đóng kết nối trước khi phản hồi");
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().start(() -> echo(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.out.println("Echo server lỗi khi accept: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void echo(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            long delayMillis = new DataInputStream(socket.getInputStream()).readLong();
+            Thread.sleep(delayMillis);
+            socket.getOutputStream().write(1);
+            socket.getOutputStream().flush();
+        } catch (IOException e) {
+            // Client đã đóng kết nối, bỏ qua
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
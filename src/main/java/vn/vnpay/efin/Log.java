@@ -0,0 +1,123 @@
+package vn.vnpay.efin;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * Điểm ghi log dùng chung cho các đường nóng (hot path) của demo.
+ *
+ * Chế độ chọn qua -Dlog.mode:
+ * - ASYNC (mặc định): qua AsyncLogger, ghi ra stdout hoặc file -Dlog.file=...
+ * - CONSOLE: System.out.println như trước, để so sánh
+ * - OFF: không ghi gì
+ * Khi ring buffer đầy: -Dlog.policy=BLOCK (mặc định) hoặc DROP; kích thước qua -Dlog.capacity.
+ */
+public final class Log {
+
+    public enum Mode {
+        ASYNC,
+        CONSOLE,
+        OFF
+    }
+
+    private static volatile Mode mode = Mode.valueOf(System.getProperty("log.mode", "ASYNC").toUpperCase());
+
+    private Log() {
+    }
+
+    // Chỉ khởi tạo AsyncLogger (và writer thread) khi thật sự dùng chế độ ASYNC
+    private static final class Holder {
+        private static final AsyncLogger LOGGER = create();
+
+        private static AsyncLogger create() {
+            AsyncLogger.OverflowPolicy policy = AsyncLogger.OverflowPolicy.valueOf(
+                    System.getProperty("log.policy", "BLOCK").toUpperCase());
+            int capacity = Integer.getInteger("log.capacity", 65_536);
+            String file = System.getProperty("log.file");
+            try {
+                AsyncLogger logger = file == null
+                        ? AsyncLogger.toStdout(capacity, policy)
+                        : AsyncLogger.toFile(Path.of(file), capacity, policy);
+                Runtime.getRuntime().addShutdownHook(new Thread(logger::close, "async-log-shutdown"));
+                return logger;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Không mở được file log " + file, e);
+            }
+        }
+    }
+
+    public static Mode mode() {
+        return mode;
+    }
+
+    public static void setMode(Mode newMode) {
+        mode = newMode;
+    }
+
+    public static void info(String template) {
+        switch (mode) {
+            case ASYNC -> Holder.LOGGER.log(template);
+            case CONSOLE -> System.out.println(template);
+            case OFF -> { }
+        }
+    }
+
+    public static void info(String template, Object arg0) {
+        switch (mode) {
+            case ASYNC -> Holder.LOGGER.log(template, arg0);
+            case CONSOLE -> System.out.println(format(template, arg0));
+            case OFF -> { }
+        }
+    }
+
+    public static void info(String template, Object arg0, Object arg1) {
+        switch (mode) {
+            case ASYNC -> Holder.LOGGER.log(template, arg0, arg1);
+            case CONSOLE -> System.out.println(format(template, arg0, arg1));
+            case OFF -> { }
+        }
+    }
+
+    public static void info(String template, Object arg0, Object arg1, Object arg2) {
+        switch (mode) {
+            case ASYNC -> Holder.LOGGER.log(template, arg0, arg1, arg2);
+            case CONSOLE -> System.out.println(format(template, arg0, arg1, arg2));
+            case OFF -> { }
+        }
+    }
+
+    public static void info(String template, Object arg0, Object arg1, Object arg2, Object arg3) {
+        switch (mode) {
+            case ASYNC -> Holder.LOGGER.log(template, arg0, arg1, arg2, arg3);
+            case CONSOLE -> System.out.println(format(template, arg0, arg1, arg2, arg3));
+            case OFF -> { }
+        }
+    }
+
+    /**
+     * Chờ log bất đồng bộ ghi xong, dùng trước khi in kết quả tổng hợp ra System.out.
+     */
+    public static void flush() {
+        if (mode == Mode.ASYNC) {
+            Holder.LOGGER.awaitDrained();
+        }
+    }
+
+    // Số message bị bỏ do ring buffer đầy
+    public static long dropped() {
+        return mode == Mode.ASYNC ? Holder.LOGGER.dropped() : 0;
+    }
+
+    private static String format(String template, Object... args) {
+        StringBuilder sb = new StringBuilder(template.length() + 32);
+        int argIndex = 0;
+        int from = 0;
+        int placeholder;
+        while ((placeholder = template.indexOf("{}", from)) >= 0 && argIndex < args.length) {
+            sb.append(template, from, placeholder).append(args[argIndex++]);
+            from = placeholder + 2;
+        }
+        return sb.append(template, from, template.length()).toString();
+    }
+}
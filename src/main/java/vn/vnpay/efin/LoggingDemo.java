@@ -0,0 +1,62 @@
+package vn.vnpay.efin;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * So sánh thời gian của cùng một khối lượng công việc khi ghi log qua System.out, qua AsyncLogger và khi tắt log.
+ *
+ * Nên chạy với -Dlog.file=build/async.log để log bất đồng bộ không lẫn với kết quả trên console.
+ */
+public class LoggingDemo {
+
+    private static final int NUMBER_OF_TASKS = 10_000;
+    private static final int LOGS_PER_TASK = 5;
+
+    public static void main(String[] args) throws Exception {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : NUMBER_OF_TASKS;
+        System.out.println("\n=== So sánh ghi log: System.out vs AsyncLogger ===\n");
+        System.out.println(tasks + " virtual threads, mỗi thread ghi " + LOGS_PER_TASK + " dòng log");
+
+        Log.Mode original = Log.mode();
+        long[] millis = new long[Log.Mode.values().length];
+        try {
+            // Chạy một lượt nhỏ với mỗi chế độ để JIT warmup, tránh chế độ chạy đầu tiên bị thiệt
+            for (Log.Mode mode : Log.Mode.values()) {
+                Log.setMode(mode);
+                runWorkload(Math.max(1, tasks / 10));
+            }
+            for (Log.Mode mode : Log.Mode.values()) {
+                Log.setMode(mode);
+                millis[mode.ordinal()] = runWorkload(tasks);
+            }
+        } finally {
+            Log.setMode(original);
+        }
+
+        System.out.println("\n===== Kết quả =====");
+        for (Log.Mode mode : Log.Mode.values()) {
+            System.out.println(mode + ": " + millis[mode.ordinal()] + " ms");
+        }
+        System.out.println("Message bị bỏ (policy DROP): " + Log.dropped());
+    }
+
+    // Dùng lại trong ScalingStudy
+    static long runWorkload(int tasks) throws InterruptedException {
+        Instant start = Instant.now();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            VirtualThreadDemo.submitTasks(executor, tasks, () -> {
+                for (int i = 0; i < LOGS_PER_TASK; i++) {
+                    Log.info("Bước {} xong trên {}", i, Thread.currentThread());
+                    Thread.sleep(1);
+                }
+            });
+        }
+        // Thời gian đo tới khi các thread nghiệp vụ xong; log bất đồng bộ được ghi nốt sau đó
+        Duration duration = Duration.between(start, Instant.now());
+        Log.flush();
+        return duration.toMillis();
+    }
+}
@@ -0,0 +1,286 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HttpExchange của NioHttpServer: cho phép các HttpHandler viết cho com.sun.net.httpserver chạy trên engine NIO.
+ *
+ * Giống HttpServer: responseLength &gt; 0 là độ dài cố định, 0 là chunked, -1 là không có body.
+ */
+class NioHttpExchange extends HttpExchange {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    private final NioHttpServer.Connection connection;
+    private final HttpContext context;
+    private final NioHttpServer.RequestHead head;
+    private boolean keepAlive;
+    private final Headers responseHeaders = new Headers();
+    private final ResponseBody responseBody = new ResponseBody();
+
+    private InputStream requestBody;
+    private OutputStream responseStream = responseBody;
+    private Map<String, Object> attributes;
+    private HttpPrincipal principal;
+
+    private int responseCode = -1;
+    private boolean chunked;
+    private boolean noBody;
+    private long remaining;
+    private boolean closed;
+
+    NioHttpExchange(NioHttpServer.Connection connection, HttpContext context, NioHttpServer.RequestHead head,
+                    byte[] body, boolean keepAlive) {
+        this.connection = connection;
+        this.context = context;
+        this.head = head;
+        this.keepAlive = keepAlive;
+        this.requestBody = new ByteArrayInputStream(body);
+    }
+
+    boolean responseStarted() {
+        return responseCode != -1;
+    }
+
+    // Kết nối chỉ dùng lại được nếu response đã được ghi đầy đủ và không yêu cầu đóng kết nối
+    boolean reusable() {
+        return keepAlive && responseStarted() && remaining == 0;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return head.headers();
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return head.uri();
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return head.method();
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return context;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!responseStarted()) {
+                sendResponseHeaders(500, -1);
+            }
+            responseStream.close();
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseStream;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (responseStarted()) {
+            throw new IOException("Response headers đã được gửi");
+        }
+        responseCode = rCode;
+        noBody = responseLength == -1 || "HEAD".equals(head.method()) || rCode == 204 || rCode == 304;
+        chunked = !noBody && responseLength == 0;
+        remaining = noBody || chunked ? 0 : responseLength;
+
+        connection.writeAscii("HTTP/1.1 " + rCode + " " + reason(rCode) + "\r\n");
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            for (String value : header.getValue()) {
+                connection.writeAscii(header.getKey() + ": " + value + "\r\n");
+            }
+        }
+        if (chunked) {
+            connection.writeAscii("Transfer-Encoding: chunked\r\n");
+        } else {
+            connection.writeAscii("Content-Length: " + Math.max(0, responseLength) + "\r\n");
+        }
+        // Handler tự đặt "Connection: close" (ví dụ server đang drain) thì header đã được ghi ở trên
+        if ("close".equalsIgnoreCase(responseHeaders.getFirst("Connection"))) {
+            keepAlive = false;
+            connection.writeAscii("\r\n");
+        } else if (!keepAlive) {
+            connection.writeAscii("Connection: close\r\n\r\n");
+        } else if ("HTTP/1.0".equals(head.protocol())) {
+            // HTTP/1.0 mặc định đóng kết nối: phải báo lại keep-alive, nếu không client (ab -k) chờ server đóng
+            connection.writeAscii("Connection: keep-alive\r\n\r\n");
+        } else {
+            connection.writeAscii("\r\n");
+        }
+    }
+
+    /**
+     * Gửi một đoạn file làm body bằng FileChannel.transferTo thẳng vào socket (sendfile), không chép qua heap.
+     * Chỉ dùng với response có Content-Length đã khai báo.
+     */
+    void transferFrom(FileChannel file, long position, long count) throws IOException {
+        if (!responseStarted() || chunked) {
+            throw new IOException("transferFrom cần response có Content-Length");
+        }
+        if (noBody) {
+            return;
+        }
+        if (count > remaining) {
+            throw new IOException("Ghi quá Content-Length đã khai báo");
+        }
+        connection.transferFrom(file, position, count);
+        remaining -= count;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return connection.remoteAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return connection.localAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return head.protocol();
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes == null ? null : attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (attributes == null) {
+            attributes = new HashMap<>();
+        }
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            requestBody = i;
+        }
+        if (o != null) {
+            responseStream = o;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return principal;
+    }
+
+    void setPrincipal(HttpPrincipal principal) {
+        this.principal = principal;
+    }
+
+    static String reason(int code) {
+        return switch (code) {
+            case 200 -> "OK";
+            case 204 -> "No Content";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 404 -> "Not Found";
+            case 413 -> "Payload Too Large";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> "Status " + code;
+        };
+    }
+
+    /**
+     * Body của response, ghi thẳng vào buffer ghi của kết nối (có đóng khung chunked nếu cần).
+     */
+    private final class ResponseBody extends OutputStream {
+
+        private boolean bodyClosed;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!responseStarted()) {
+                throw new IOException("Phải gọi sendResponseHeaders trước khi ghi body");
+            }
+            if (bodyClosed) {
+                throw new IOException("Response body đã đóng");
+            }
+            if (noBody || len == 0) {
+                return;
+            }
+            if (chunked) {
+                connection.writeAscii(Integer.toHexString(len) + "\r\n");
+                connection.write(b, off, len);
+                connection.write(CRLF, 0, CRLF.length);
+                return;
+            }
+            if (len > remaining) {
+                throw new IOException("Ghi quá Content-Length đã khai báo");
+            }
+            connection.write(b, off, len);
+            remaining -= len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (bodyClosed) {
+                return;
+            }
+            bodyClosed = true;
+            if (chunked) {
+                connection.write(LAST_CHUNK, 0, LAST_CHUNK.length);
+            }
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/1.1 server dựa trên ServerSocketChannel, thay thế cho com.sun.net.httpserver.HttpServer.
+ *
+ * - N vòng lặp selector (mặc định một vòng mỗi core) cùng accept trên một ServerSocketChannel non-blocking.
+ * - Mỗi kết nối được giao cho một virtual thread, đọc request vào direct ByteBuffer lấy từ pool.
+ * - Hỗ trợ keep-alive (idle timeout, số request tối đa mỗi kết nối) và pipelining: các response
+ *   của những request đã nằm sẵn trong buffer được gom lại và ghi một lần.
+ *
+ * API giống HttpServer (createContext, start, stop) nên dùng lại được các HttpHandler và Filter hiện có.
+ */
+public class NioHttpServer {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_BODY_SIZE = 1024 * 1024;
+    private static final long ACCEPT_BACKOFF_MILLIS = 50;
+
+    private final ServerSocketChannel serverChannel;
+    private final int selectorCount;
+    private final DirectBufferPool bufferPool;
+    private final List<NioHttpContext> contexts = new CopyOnWriteArrayList<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final List<Selector> selectors = new ArrayList<>();
+    private ThreadFactory connectionThreads = Thread.ofVirtual().name("nio-http-", 0).factory();
+
+    private volatile boolean running;
+    private Duration idleTimeout = Duration.ofSeconds(30);
+    private int maxRequestsPerConnection = 10_000;
+
+    private NioHttpServer(InetSocketAddress address, int backlog, int selectorCount, int bufferSize) throws IOException {
+        this.selectorCount = selectorCount;
+        this.bufferPool = new DirectBufferPool(bufferSize, 16_384);
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, backlog);
+    }
+
+    /**
+     * Tạo server và bind vào address, với một vòng lặp selector mỗi core.
+     */
+    public static NioHttpServer create(InetSocketAddress address, int backlog) throws IOException {
+        return create(address, backlog, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static NioHttpServer create(InetSocketAddress address, int backlog, int selectorCount) throws IOException {
+        return new NioHttpServer(address, backlog > 0 ? backlog : 4096, Math.max(1, selectorCount), DEFAULT_BUFFER_SIZE);
+    }
+
+    public HttpContext createContext(String path, HttpHandler handler) {
+        NioHttpContext context = new NioHttpContext(path, handler);
+        contexts.add(context);
+        return context;
+    }
+
+    public void removeContext(String path) {
+        contexts.removeIf(c -> c.getPath().equals(path));
+    }
+
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+    }
+
+    // Thread phục vụ mỗi kết nối, tương tự HttpServer.setExecutor; phải gọi trước start()
+    public void setThreadFactory(ThreadFactory connectionThreads) {
+        this.connectionThreads = connectionThreads;
+    }
+
+    public void start() throws IOException {
+        serverChannel.configureBlocking(false);
+        running = true;
+        for (int i = 0; i < selectorCount; i++) {
+            Selector selector = Selector.open();
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            selectors.add(selector);
+            Thread.ofPlatform().daemon().name("nio-http-selector-" + i).start(() -> selectLoop(selector));
+        }
+        Thread.ofVirtual().name("nio-http-idle-reaper").start(this::reapIdleConnections);
+    }
+
+    /**
+     * Ngừng accept kết nối mới, chờ tối đa delaySeconds cho các request đang xử lý rồi đóng mọi kết nối.
+     */
+    public void stop(int delaySeconds) {
+        running = false;
+        for (Selector selector : selectors) {
+            selector.wakeup();
+        }
+        closeQuietly(serverChannel);
+
+        // Kết nối keep-alive đang rảnh đóng ngay; kết nối đang xử lý request hoặc mới accept chưa gửi request
+        // được chờ tới deadline
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(delaySeconds);
+        connections.stream().filter(c -> !c.busy && c.served > 0).forEach(Connection::close);
+        while (!connections.isEmpty() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        connections.forEach(Connection::close);
+    }
+
+    private void selectLoop(Selector selector) {
+        try (selector) {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        acceptAll();
+                    }
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Server đã dừng
+        } catch (IOException e) {
+            if (running) {
+                System.out.println("Selector loop lỗi: " + e.getMessage());
+            }
+        }
+    }
+
+    private void acceptAll() throws ClosedChannelException {
+        // Nhiều selector cùng được đánh thức, selector nào accept trước thì giữ kết nối; accept trả null là đã hết
+        while (running) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                throw e;
+            } catch (IOException e) {
+                // Lỗi của một lần accept (thường là hết file descriptor) không được làm dừng selector loop
+                acceptFailed(e);
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.configureBlocking(true);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                // Client đóng ngay sau khi kết nối: bỏ kết nối này, phục vụ tiếp các kết nối khác
+                closeQuietly(channel);
+                continue;
+            }
+            Connection connection = new Connection(channel);
+            connections.add(connection);
+            connectionThreads.newThread(connection::serve).start();
+        }
+    }
+
+    private void acceptFailed(IOException e) {
+        if (!running) {
+            return;
+        }
+        System.out.println("Accept lỗi: " + e.getMessage());
+        if (String.valueOf(e.getMessage()).contains("Too many open files")) {
+            // Hết file descriptor: kết nối vẫn nằm trong backlog nên selector sẽ báo lại ngay, nghỉ một chút
+            // cho các kết nối khác đóng bớt thay vì quay vòng 100% CPU
+            try {
+                Thread.sleep(ACCEPT_BACKOFF_MILLIS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void reapIdleConnections() {
+        while (running) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long idleNanos = idleTimeout.toNanos();
+            long now = System.nanoTime();
+            connections.stream()
+                    .filter(c -> !c.busy && now - c.lastActivity > idleNanos)
+                    .forEach(Connection::close);
+        }
+    }
+
+    private NioHttpContext findContext(String path) {
+        // Giống HttpServer: context có path dài nhất là prefix của request path
+        NioHttpContext best = null;
+        for (NioHttpContext context : contexts) {
+            if (path.startsWith(context.getPath())
+                    && (best == null || context.getPath().length() > best.getPath().length())) {
+                best = context;
+            }
+        }
+        return best;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Bỏ qua lỗi khi đóng
+        }
+    }
+
+    // Phần đầu của một request đã parse xong (request line + headers)
+    record RequestHead(String method, URI uri, String protocol, Headers headers, int bodyStart) {}
+
+    /**
+     * Một kết nối HTTP, được phục vụ tuần tự bởi một virtual thread.
+     */
+    final class Connection {
+
+        final SocketChannel channel;
+        volatile boolean busy;
+        // Số request đã nhận; kết nối mới accept (chưa có request nào) không bị coi là rảnh khi dừng server
+        volatile int served;
+        volatile long lastActivity = System.nanoTime();
+
+        private ByteBuffer in;
+        private ByteBuffer out;
+        // Vị trí bắt đầu của request chưa xử lý trong buffer đọc (buffer luôn ở chế độ ghi)
+        private int start;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void serve() {
+            in = bufferPool.acquire();
+            out = bufferPool.acquire();
+            try {
+                boolean keepAlive = true;
+                // Request đầu tiên của kết nối đã accept vẫn được phục vụ khi server đang dừng, tránh bỏ rơi
+                // request client đã gửi; response của nó kèm "Connection: close"
+                while (keepAlive && (running || served == 0)) {
+                    RequestHead head = parseHead();
+                    if (head == null) {
+                        if (start == 0 && !in.hasRemaining()) {
+                            sendError(431, "Request header quá lớn");
+                            return;
+                        }
+                        // Hết request hoàn chỉnh trong buffer: ghi các response đã gom rồi mới chờ đọc tiếp
+                        flush();
+                        if (!readMore()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    busy = true;
+                    try {
+                        served++;
+                        keepAlive = handle(head, running && served < maxRequestsPerConnection && isKeepAlive(head));
+                    } finally {
+                        busy = false;
+                        lastActivity = System.nanoTime();
+                    }
+                }
+                flush();
+            } catch (IOException e) {
+                // Client đóng kết nối hoặc kết nối bị đóng do idle/stop
+            } finally {
+                close();
+                bufferPool.release(in);
+                bufferPool.release(out);
+            }
+        }
+
+        private boolean readMore() throws IOException {
+            if (start > 0) {
+                in.flip();
+                in.position(start);
+                in.compact();
+                start = 0;
+            }
+            int n = channel.read(in);
+            lastActivity = System.nanoTime();
+            return n >= 0;
+        }
+
+        private RequestHead parseHead() throws IOException {
+            int end = in.position();
+            int headerEnd = -1;
+            for (int i = start; i + 3 < end; i++) {
+                if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                    headerEnd = i;
+                    break;
+                }
+            }
+            if (headerEnd < 0) {
+                return null;
+            }
+
+            String[] lines = ascii(start, headerEnd).split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3) {
+                throw sendError(400, "Request line không hợp lệ");
+            }
+            Headers headers = new Headers();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+                }
+            }
+            try {
+                return new RequestHead(requestLine[0], new URI(requestLine[1]), requestLine[2], headers, headerEnd + 4);
+            } catch (URISyntaxException e) {
+                throw sendError(400, "URI không hợp lệ");
+            }
+        }
+
+        private String ascii(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            in.get(from, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+        private byte[] readBody(RequestHead head) throws IOException {
+            if (head.headers().containsKey("Transfer-Encoding")) {
+                throw sendError(501, "Không hỗ trợ request body dạng chunked");
+            }
+            String lengthHeader = head.headers().getFirst("Content-Length");
+            long declared;
+            try {
+                declared = lengthHeader == null ? 0 : Long.parseLong(lengthHeader.trim());
+            } catch (NumberFormatException e) {
+                throw sendError(400, "Content-Length không hợp lệ");
+            }
+            if (declared < 0) {
+                throw sendError(400, "Content-Length không hợp lệ");
+            }
+            if (declared > MAX_BODY_SIZE) {
+                throw sendError(413, "Request body quá lớn");
+            }
+            int length = (int) declared;
+            byte[] body = new byte[length];
+            int buffered = Math.min(length, in.position() - head.bodyStart());
+            in.get(head.bodyStart(), body, 0, buffered);
+            start = head.bodyStart() + buffered;
+
+            ByteBuffer rest = ByteBuffer.wrap(body, buffered, length - buffered);
+            while (rest.hasRemaining()) {
+                if (channel.read(rest) < 0) {
+                    throw new IOException("Kết nối đóng khi đang đọc body");
+                }
+            }
+            return body;
+        }
+
+        private boolean handle(RequestHead head, boolean keepAlive) throws IOException {
+            byte[] body = readBody(head);
+            NioHttpContext context = findContext(head.uri().getPath() == null ? "/" : head.uri().getPath());
+            if (context == null) {
+                sendError(404, "Không tìm thấy context");
+                return false;
+            }
+
+            NioHttpExchange exchange = new NioHttpExchange(this, context, head, body, keepAlive);
+            try {
+                if (!authenticate(context, exchange)) {
+                    return keepAlive && exchange.reusable();
+                }
+                new Filter.Chain(context.getFilters(), context.getHandler()).doFilter(exchange);
+            } catch (Exception e) {
+                if (!exchange.responseStarted()) {
+                    exchange.sendResponseHeaders(500, -1);
+                }
+                return false;
+            } finally {
+                exchange.close();
+            }
+            return keepAlive && exchange.reusable();
+        }
+
+        private boolean authenticate(NioHttpContext context, NioHttpExchange exchange) throws IOException {
+            Authenticator authenticator = context.getAuthenticator();
+            if (authenticator == null) {
+                return true;
+            }
+            Authenticator.Result result = authenticator.authenticate(exchange);
+            if (result instanceof Authenticator.Success success) {
+                exchange.setPrincipal(success.getPrincipal());
+                return true;
+            }
+            int code = result instanceof Authenticator.Failure failure
+                    ? failure.getResponseCode()
+                    : ((Authenticator.Retry) result).getResponseCode();
+            exchange.sendResponseHeaders(code, -1);
+            return false;
+        }
+
+        private boolean isKeepAlive(RequestHead head) {
+            String connection = head.headers().getFirst("Connection");
+            if ("HTTP/1.0".equals(head.protocol())) {
+                return "keep-alive".equalsIgnoreCase(connection);
+            }
+            return !"close".equalsIgnoreCase(connection);
+        }
+
+        private IOException sendError(int code, String message) throws IOException {
+            byte[] body = message.getBytes(StandardCharsets.UTF_8);
+            writeAscii("HTTP/1.1 " + code + " " + NioHttpExchange.reason(code) + "\r\n"
+                    + "Content-Type: text/plain; charset=utf-8\r\n"
+                    + "Content-Length: " + body.length + "\r\n"
+                    + "Connection: close\r\n\r\n");
+            write(body, 0, body.length);
+            flush();
+            return new IOException(message);
+        }
+
+        // Ghi vào buffer ghi; chỉ đẩy ra socket khi buffer đầy hoặc khi flush
+        void writeAscii(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) {
+                if (!out.hasRemaining()) {
+                    flush();
+                }
+                out.put((byte) s.charAt(i));
+            }
+        }
+
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!out.hasRemaining()) {
+                    flush();
+                }
+                int n = Math.min(length, out.remaining());
+                out.put(bytes, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        void flush() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+        }
+
+        // Đẩy header đang gom ra trước, sau đó để kernel chép file thẳng vào socket
+        void transferFrom(FileChannel file, long position, long count) throws IOException {
+            flush();
+            while (count > 0) {
+                long n = file.transferTo(position, count, channel);
+                if (n <= 0 && position >= file.size()) {
+                    throw new IOException("File ngắn hơn độ dài đã khai báo");
+                }
+                position += n;
+                count -= n;
+            }
+        }
+
+        InetSocketAddress remoteAddress() {
+            try {
+                return (InetSocketAddress) channel.getRemoteAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        InetSocketAddress localAddress() {
+            try {
+                return (InetSocketAddress) channel.getLocalAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        void close() {
+            connections.remove(this);
+            closeQuietly(channel);
+        }
+    }
+}
@@ -23,6 +23,7 @@ public class NonBlockingDemo {
 
         doSomeActionAfterOtherActionsDone(stringVal, intVal, person);
         Duration duration = Duration.between(start, Instant.now());
+        Log.flush();
         System.out.println("Thời gian thực hiện tuần tự: " + duration.toMillis() + "ms");
 
         //Non-Blocking - Thực hiện song song
@@ -56,6 +57,7 @@ public class NonBlockingDemo {
         }
         
         Duration nonBlockingDuration = Duration.between(start, Instant.now());
+        Log.flush();
         System.out.println("Time taken with Virtual Threads: " + nonBlockingDuration.toMillis() + "ms");
         
         // So sánh cải thiện
@@ -65,10 +67,65 @@ public class NonBlockingDemo {
         System.out.println("Thời gian xử lý tuần tự: " + duration.toMillis() + "ms");
         System.out.println("Thời gian xử lý song song: " + nonBlockingDuration.toMillis() + "ms");
         System.out.println("Cải thiện: " + improvement + "ms (" + String.format("%.2f", percentImprovement) + "%)");
+
+        // Cùng luồng xử lý nhưng khai báo dưới dạng đồ thị phụ thuộc
+        System.out.println("\n===== 3. Thực hiện bằng TaskGraph =====\n");
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Step<String> stringStep = graph.step("string", in -> someActionReturnString("A String"));
+        TaskGraph.Step<Integer> integerStep = graph.step("integer", in -> someActionReturnInteger(0));
+        TaskGraph.Step<Person> personStep = graph.step("person", in -> someActionReturnPerson());
+        graph.step("after", in -> {
+            doSomeActionAfterOtherActionsDone(in.get(stringStep), in.get(integerStep), in.get(personStep));
+            return null;
+        }, stringStep, integerStep, personStep);
+        TaskGraph.Result graphResult = graph.execute(Duration.ofSeconds(2));
+        Log.flush();
+        System.out.println("Thời gian với TaskGraph: " + graphResult.elapsed().toMillis() + "ms");
+
+        System.out.println("\n===== 4. Luồng đặt hàng nhiều bước phụ thuộc với TaskGraph =====\n");
+        demoCheckoutGraph();
+    }
+
+    // Luồng đặt hàng 11 bước: mỗi bước chạy ngay khi các bước nó cần đã xong.
+    // Bước khuyến mãi chậm hơn timeout riêng nên dùng fallback, không kéo dài cả luồng
+    private static void demoCheckoutGraph() throws InterruptedException {
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Step<String> auth = graph.step("auth", in -> call("auth", 50));
+        TaskGraph.Step<String> user = graph.step("user", in -> call("user", 80), auth);
+        TaskGraph.Step<String> cart = graph.step("cart", in -> call("cart", 60), auth);
+        TaskGraph.Step<String> inventory = graph.step("inventory", in -> call("inventory", 120), cart);
+        TaskGraph.Step<String> pricing = graph.step("pricing", in -> call("pricing", 90), cart, user);
+        TaskGraph.Step<String> promotions = graph.step("promotions", in -> call("promotions", 400), user)
+                .timeout(Duration.ofMillis(150))
+                .fallback(cause -> "không có khuyến mãi (" + cause.getMessage() + ")");
+        TaskGraph.Step<String> shipping = graph.step("shipping", in -> call("shipping", 70), inventory);
+        TaskGraph.Step<String> fraud = graph.step("fraud", in -> call("fraud", 110), user, pricing);
+        TaskGraph.Step<String> payment = graph.step("payment", in -> call("payment", 150), pricing, promotions, fraud);
+        TaskGraph.Step<String> order = graph.step("order", in -> call("order", 40), payment, shipping);
+        graph.step("notify", in -> call("notify", 30), order);
+
+        TaskGraph.Result result = graph.execute(Duration.ofSeconds(2));
+        long sequentialMillis = 50 + 80 + 60 + 120 + 90 + 150 + 70 + 110 + 150 + 40 + 30;
+
+        System.out.printf("%-12s %-10s %10s %10s%n", "Bước", "Trạng thái", "Bắt đầu", "Kết thúc");
+        for (TaskGraph.StepTiming step : result.steps()) {
+            System.out.printf("%-12s %-10s %8sms %8sms%n", step.name(), step.state(),
+                    step.start() == null ? "-" : step.start().toMillis(), step.end() == null ? "-" : step.end().toMillis());
+        }
+        System.out.println("Khuyến mãi: " + promotions.value());
+        System.out.println("Đường găng: " + String.join(" → ",
+                result.criticalPath().stream().map(t -> t.name() + " (" + t.latency().toMillis() + "ms)").toList()));
+        System.out.println("Kết quả: " + result.status() + " sau " + result.elapsed().toMillis()
+                + "ms (nếu chạy tuần tự, kể cả khi khuyến mãi bị cắt ở timeout: " + sequentialMillis + "ms)");
+    }
+
+    private static String call(String service, int delayMs) throws InterruptedException {
+        Thread.sleep(delayMs);
+        return service + " xong sau " + delayMs + "ms";
     }
 
     public static String someActionReturnString(String input) {
-        System.out.println("Doing some action returning string: " + input);
+        Log.info("Doing some action returning string: {}", input);
         try {
             // Mô phỏng thời gian truy vấn database từ 50-150ms
 //            int delay = ThreadLocalRandom.current().nextInt(50, 150);
@@ -81,7 +138,7 @@ public class NonBlockingDemo {
     }
 
     public static Integer someActionReturnInteger(Integer input) {
-        System.out.println("Doing some action returning integer: " + input);
+        Log.info("Doing some action returning integer: {}", input);
         try {
             // Mô phỏng thời gian truy vấn database từ 50-150ms
 //            int delay = ThreadLocalRandom.current().nextInt(50, 150);
@@ -94,7 +151,7 @@ public class NonBlockingDemo {
     }
 
     public static Person someActionReturnPerson() {
-        System.out.println("Doing some action returning person");
+        Log.info("Doing some action returning person");
         try {
             // Mô phỏng thời gian truy vấn database từ 50-150ms
 //            int delay = ThreadLocalRandom.current().nextInt(50, 150);
@@ -107,10 +164,10 @@ public class NonBlockingDemo {
     }
 
     public static void doSomeActionAfterOtherActionsDone(String string, Integer integer, Person person) {
-        System.out.println("Doing some action after other actions done: ");
+        Log.info("Doing some action after other actions done: ");
         try {
             Thread.sleep(100);
-            System.out.println(person.name + ", " + person.age + ", " + string + ", " + integer);
+            Log.info("{}, {}, {}, {}", person.name, person.age, string, integer);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -0,0 +1,49 @@
+package vn.vnpay.efin;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Demo đo ảnh hưởng của pinning lên throughput của Virtual Thread.
+ *
+ * Chạy cùng một khối lượng công việc với từng BlockingStrategy và báo cáo thời gian bị pin theo call site.
+ */
+public class PinningDemo {
+
+    private static final int NUMBER_OF_TASKS = 2_000;
+    private static final int BLOCK_MILLIS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : NUMBER_OF_TASKS;
+
+        System.out.println("\n=== Demo Pinning với Virtual Thread ===\n");
+        System.out.println("Số carrier thread: " + Runtime.getRuntime().availableProcessors()
+                + ", số tác vụ: " + tasks + ", mỗi tác vụ blocking " + BLOCK_MILLIS + "ms");
+
+        for (BlockingStrategy strategy : BlockingStrategy.values()) {
+            System.out.println("\n--- " + strategy + " ---");
+            runWorkload(strategy, tasks);
+        }
+    }
+
+    private static void runWorkload(BlockingStrategy strategy, int tasks) throws Exception {
+        PinningDetector detector = PinningDetector.start();
+        Duration duration;
+        try {
+            Instant start = Instant.now();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                VirtualThreadDemo.submitTasks(executor, tasks, () -> strategy.block(BLOCK_MILLIS));
+            }
+            duration = Duration.between(start, Instant.now());
+        } finally {
+            // Dừng detector trước khi in để chắc chắn đã nhận đủ sự kiện JFR
+            detector.close();
+        }
+
+        System.out.println("Thời gian: " + duration.toMillis() + " ms, throughput: "
+                + (tasks * 1000L / Math.max(1, duration.toMillis())) + " tác vụ/giây");
+        detector.printReport();
+    }
+}
@@ -0,0 +1,157 @@
+package vn.vnpay.efin;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Phát hiện virtual thread bị pin vào carrier thread ngay trong process.
+ *
+ * Ghi sự kiện JFR jdk.VirtualThreadPinned và cộng dồn thời gian bị pin theo call site: frame đầu tiên thuộc package
+ * vn.vnpay.efin bên trên các lớp hạ tầng blocking (BlockingStrategy, LocalEchoServer, PinningDetector và các lớp
+ * thêm qua -Dpinning.skipClasses=a.B,c.D); nếu không có thì lấy frame trên cùng.
+ */
+public class PinningDetector implements AutoCloseable {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String APP_PACKAGE = "vn.vnpay.efin.";
+    // Lớp chỉ thực hiện thao tác blocking thay cho nơi gọi: pin được tính cho frame ứng dụng bên trên chúng
+    private static final List<String> SKIPPED_CLASSES = skippedClasses();
+
+    // Thống kê pinning của một call site
+    public record PinnedSite(String callSite, long count, Duration totalPinned, Duration maxPinned) {}
+
+    private static final class SiteStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+    }
+
+    private final RecordingStream stream = new RecordingStream();
+    private final Map<String, SiteStats> sites = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private PinningDetector(Duration threshold) {
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::onPinned);
+    }
+
+    /**
+     * Bắt đầu ghi mọi lần pinning (threshold = 0).
+     */
+    public static PinningDetector start() {
+        return start(Duration.ZERO);
+    }
+
+    /**
+     * Bắt đầu ghi các lần pinning kéo dài hơn threshold.
+     */
+    public static PinningDetector start(Duration threshold) {
+        PinningDetector detector = new PinningDetector(threshold);
+        detector.stream.startAsync();
+        return detector;
+    }
+
+    private void onPinned(RecordedEvent event) {
+        sites.computeIfAbsent(callSite(event.getStackTrace()), k -> new SiteStats())
+                .record(event.getDuration().toNanos());
+    }
+
+    private static List<String> skippedClasses() {
+        List<String> skipped = new ArrayList<>(List.of(BlockingStrategy.class.getName(),
+                LocalEchoServer.class.getName(), PinningDetector.class.getName()));
+        for (String name : System.getProperty("pinning.skipClasses", "").split(",")) {
+            if (!name.isBlank()) {
+                skipped.add(name.trim());
+            }
+        }
+        return List.copyOf(skipped);
+    }
+
+    private static String callSite(RecordedStackTrace stackTrace) {
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return "<không có stack trace>";
+        }
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        RecordedFrame site = frames.stream()
+                .filter(f -> f.isJavaFrame() && isApplicationFrame(f.getMethod().getType().getName()))
+                .findFirst()
+                .orElse(frames.get(0));
+        return site.getMethod().getType().getName() + "." + site.getMethod().getName() + ":" + site.getLineNumber();
+    }
+
+    // Lớp lồng/ẩn danh (BlockingStrategy$2) được tính theo lớp ngoài
+    private static boolean isApplicationFrame(String className) {
+        if (!className.startsWith(APP_PACKAGE)) {
+            return false;
+        }
+        for (String skipped : SKIPPED_CLASSES) {
+            if (className.equals(skipped) || className.startsWith(skipped + "$")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Thống kê theo call site, sắp xếp giảm dần theo tổng thời gian bị pin.
+     */
+    public List<PinnedSite> snapshot() {
+        return sites.entrySet().stream()
+                .map(e -> new PinnedSite(e.getKey(),
+                        e.getValue().count.sum(),
+                        Duration.ofNanos(e.getValue().totalNanos.sum()),
+                        Duration.ofNanos(e.getValue().maxNanos.get())))
+                .sorted(Comparator.comparing(PinnedSite::totalPinned).reversed())
+                .toList();
+    }
+
+    /**
+     * Tổng thời gian bị pin trên mọi call site.
+     */
+    public Duration totalPinned() {
+        return Duration.ofNanos(sites.values().stream().mapToLong(s -> s.totalNanos.sum()).sum());
+    }
+
+    public void printReport() {
+        List<PinnedSite> snapshot = snapshot();
+        if (snapshot.isEmpty()) {
+            System.out.println("Không phát hiện virtual thread bị pin");
+            return;
+        }
+        System.out.println("Tổng thời gian bị pin: " + totalPinned().toMillis() + " ms");
+        for (PinnedSite site : snapshot) {
+            System.out.println("  - " + site.callSite() + ": " + site.count() + " lần, tổng "
+                    + site.totalPinned().toMillis() + " ms, lâu nhất " + site.maxPinned().toMillis() + " ms");
+        }
+    }
+
+    /**
+     * Dừng ghi và chờ xử lý hết các sự kiện còn lại.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        stream.stop();
+        stream.close();
+    }
+}
@@ -0,0 +1,177 @@
+package vn.vnpay.efin;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tải trộn mức độ quan trọng khi carrier quá tải: request rẻ kiểu /api/fast (0.2ms CPU) chạy chung với fan-out
+ * đắt kiểu /api/parallel (4 bước, mỗi bước 2ms CPU + 10ms IO). Tải nặng chiếm khoảng 125% CPU.
+ *
+ * So sánh:
+ * 1. newVirtualThreadPerTaskExecutor: mọi virtual thread xếp chung hàng đợi FIFO của scheduler, hàng đợi dài ra
+ *    không giới hạn nên request nhanh cũng chờ như request nặng.
+ * 2. PriorityExecutor với mọi tác vụ cùng loại và cùng budget: permits giữ hàng đợi carrier ngắn, nhưng request
+ *    nhanh vẫn xếp hàng sau các fan-out tới trước.
+ * 3. PriorityExecutor, request nhanh HIGH, fan-out LOW: request nhanh chỉ chờ một permit, fan-out chịu phần xếp hàng
+ *    và bị bỏ khi hết deadline 2 giây.
+ *
+ * Tải open-loop (phát theo lịch cố định từ platform thread), độ trễ tính từ thời điểm dự kiến phát request.
+ */
+public class PriorityDemo {
+
+    private static final int CARRIERS = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+            Runtime.getRuntime().availableProcessors());
+    private static final Duration DURATION = Duration.ofSeconds(5);
+    private static final long FAST_CPU_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final int HEAVY_STEPS = 4;
+    private static final long HEAVY_STEP_CPU_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long HEAVY_STEP_IO_MILLIS = 10;
+    private static final int FAST_RATE = 200 * CARRIERS;
+    // Tải nặng dùng khoảng 125% CPU (mỗi fan-out 8ms CPU)
+    private static final int HEAVY_RATE = 155 * CARRIERS;
+    private static final int PERMITS = 8 * CARRIERS;
+    private static final Duration FAST_DEADLINE = Duration.ofMillis(100);
+    private static final Duration HEAVY_DEADLINE = Duration.ofSeconds(2);
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private interface Scheduler {
+        void submit(boolean fast, Runnable task);
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("\n=== Xếp lịch theo ưu tiên và deadline khi carrier quá tải ===");
+        System.out.println(CARRIERS + " carrier, " + DURATION.toSeconds() + " giây: fast " + FAST_RATE
+                + " req/s (0.2ms CPU), heavy " + HEAVY_RATE + " req/s (" + HEAVY_STEPS + " x (2ms CPU + "
+                + HEAVY_STEP_IO_MILLIS + "ms IO)), permits " + PERMITS);
+        System.out.printf("%n%-26s %-6s %8s %8s %10s %10s %10s%n", "executor", "loại", "xong", "bị bỏ", "p50", "p99",
+                "max");
+
+        // Lượt đầu để JIT nóng lên, không in kết quả
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            run((fast, task) -> executor.submit(task), Duration.ofSeconds(1));
+        }
+
+        // Kết quả in sau khi executor đóng (mọi tác vụ đã xong hoặc bị bỏ)
+        Outcome outcome;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            outcome = run((fast, task) -> executor.submit(task), DURATION);
+        }
+        outcome.print("virtual thread per task");
+        try (PriorityExecutor executor = new PriorityExecutor("fifo", PERMITS)) {
+            outcome = run((fast, task) -> executor.submit(PriorityExecutor.Priority.NORMAL, HEAVY_DEADLINE, () -> {
+                task.run();
+                return null;
+            }), DURATION);
+        }
+        outcome.print("permits, cùng loại");
+        PriorityExecutor prioritized = new PriorityExecutor("priority", PERMITS);
+        try (prioritized) {
+            outcome = run((fast, task) -> prioritized.submit(
+                    fast ? PriorityExecutor.Priority.HIGH : PriorityExecutor.Priority.LOW,
+                    fast ? FAST_DEADLINE : HEAVY_DEADLINE, () -> {
+                        task.run();
+                        return null;
+                    }), DURATION);
+        }
+        outcome.print("ưu tiên + EDF");
+        System.out.println();
+        prioritized.stats().stream().filter(s -> s.admitted() + s.expired() > 0).forEach(s -> System.out.printf(
+                "  %-6s được cấp %6d, bị bỏ %6d, chờ permit trung bình %.2fms%n", s.priority().label(), s.admitted(),
+                s.expired(), s.totalWait().toNanos() / 1e6 / Math.max(1, s.admitted())));
+    }
+
+    private static Outcome run(Scheduler scheduler, Duration duration) throws InterruptedException {
+        Outcome outcome = new Outcome();
+        // Phát tải từ platform thread để lịch phát không bị trễ theo carrier đang quá tải
+        Thread generator = Thread.ofPlatform().start(() -> {
+            long start = System.nanoTime();
+            long fastInterval = TimeUnit.SECONDS.toNanos(1) / FAST_RATE;
+            long heavyInterval = TimeUnit.SECONDS.toNanos(1) / HEAVY_RATE;
+            long nextFast = start;
+            long nextHeavy = start;
+            long end = start + duration.toNanos();
+            while (true) {
+                boolean fast = nextFast <= nextHeavy;
+                long intended = fast ? nextFast : nextHeavy;
+                if (intended >= end) {
+                    return;
+                }
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                Runnable work = fast ? PriorityDemo::fast : PriorityDemo::heavy;
+                scheduler.submit(fast, () -> outcome.record(fast, intended, work));
+                outcome.submitted[fast ? 0 : 1]++;
+                if (fast) {
+                    nextFast += fastInterval;
+                } else {
+                    nextHeavy += heavyInterval;
+                }
+            }
+        });
+        generator.join();
+        return outcome;
+    }
+
+    private static void fast() {
+        burn(FAST_CPU_NANOS);
+    }
+
+    private static void heavy() {
+        for (int i = 0; i < HEAVY_STEPS; i++) {
+            burn(HEAVY_STEP_CPU_NANOS);
+            try {
+                Thread.sleep(HEAVY_STEP_IO_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Tính toán thuần CPU: virtual thread không bị preempt nên giữ carrier tới khi xong
+    private static void burn(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static final class Outcome {
+
+        private final Recorder fastLatency = new Recorder(MAX_LATENCY_MICROS, 3);
+        private final Recorder heavyLatency = new Recorder(MAX_LATENCY_MICROS, 3);
+        // Chỉ thread phát tải ghi, đọc sau khi thread đó kết thúc
+        private final long[] submitted = new long[2];
+
+        void record(boolean fast, long intendedNanos, Runnable work) {
+            work.run();
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedNanos);
+            (fast ? fastLatency : heavyLatency).recordValue(Math.min(MAX_LATENCY_MICROS, micros));
+        }
+
+        void print(String label) {
+            Histogram fast = fastLatency.getIntervalHistogram();
+            Histogram heavy = heavyLatency.getIntervalHistogram();
+            printRow(label, "fast", fast, submitted[0]);
+            printRow("", "heavy", heavy, submitted[1]);
+        }
+
+        private static void printRow(String label, String kind, Histogram h, long submitted) {
+            System.out.printf("%-26s %-6s %8d %8d %10s %10s %10s%n", label, kind, h.getTotalCount(),
+                    submitted - h.getTotalCount(), millis(h.getValueAtPercentile(50)),
+                    millis(h.getValueAtPercentile(99)), millis(h.getMaxValue()));
+        }
+
+        private static String millis(long micros) {
+            return String.format("%.1fms", micros / 1000.0);
+        }
+    }
+}
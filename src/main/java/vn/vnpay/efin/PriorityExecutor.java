@@ -0,0 +1,370 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Executor virtual thread có phân loại ưu tiên và xếp lịch theo deadline gần nhất (earliest deadline first).
+ *
+ * Virtual thread không có độ ưu tiên: khi carrier bận hết, request rẻ/gấp phải xếp hàng chung với fan-out đắt tiền
+ * trong hàng đợi FIFO của scheduler. Executor này giới hạn số tác vụ được chạy cùng lúc bằng permits; tác vụ chưa
+ * có permit chờ (park, không giữ carrier) trong hàng đợi sắp theo {@link Priority} rồi tới deadline. Permit trả
+ * về được chuyển thẳng cho tác vụ đứng đầu, nên khi quá tải hàng đợi dồn vào loại ưu tiên thấp còn loại cao vẫn
+ * chỉ chờ một permit. Tác vụ hết deadline khi còn trong hàng đợi bị bỏ (không tốn permit cho kết quả vô ích).
+ *
+ * HttpServer chỉ đưa cho executor một Runnable không rõ endpoint, nên {@link #execute(Runnable)} chạy ngay trên
+ * virtual thread mới; mỗi endpoint khai báo loại của mình khi đăng ký qua {@link #handler(Priority, HttpHandler)}.
+ */
+public class PriorityExecutor extends AbstractExecutorService {
+
+    /**
+     * Loại ưu tiên, loại đứng trước luôn được cấp permit trước. Budget là deadline mặc định khi request không
+     * có deadline riêng (X-Request-Timeout).
+     */
+    public enum Priority {
+        HIGH(Duration.ofMillis(100)),
+        NORMAL(Duration.ofSeconds(1)),
+        LOW(Duration.ofSeconds(5));
+
+        private final Duration budget;
+
+        Priority(Duration budget) {
+            this.budget = budget;
+        }
+
+        public Duration budget() {
+            return budget;
+        }
+
+        public String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Số liệu của một loại ưu tiên: số tác vụ được cấp permit, bị bỏ vì hết deadline khi chờ, đang chờ và tổng
+     * thời gian chờ.
+     */
+    public record Stats(Priority priority, long admitted, long expired, int waiting, Duration totalWait) {}
+
+    private static final Comparator<Waiter> ORDER = Comparator.<Waiter>comparingInt(w -> w.priority.ordinal())
+            .thenComparingLong(w -> w.deadlineNanos)
+            .thenComparingLong(w -> w.sequence);
+    private static final byte[] EXPIRED_BODY = "Hết hạn khi chờ xếp lịch, vui lòng thử lại sau"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final String name;
+    private final int permits;
+    private final ExecutorService threads;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(ORDER);
+    private final int[] waiting = new int[Priority.values().length];
+    private int available;
+    private long sequence;
+
+    private final LongAdder[] admitted = adders();
+    private final LongAdder[] expired = adders();
+    private final LongAdder[] waitNanos = adders();
+
+    public PriorityExecutor(String name, int permits, ThreadFactory threadFactory) {
+        this.name = name;
+        this.permits = permits;
+        this.available = permits;
+        this.threads = Executors.newThreadPerTaskExecutor(threadFactory);
+    }
+
+    public PriorityExecutor(String name, int permits) {
+        this(name, permits, Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Priority.values().length];
+        Arrays.setAll(adders, i -> new LongAdder());
+        return adders;
+    }
+
+    /**
+     * Bọc handler của một endpoint: request chờ permit theo loại ưu tiên và deadline (budget của loại, hoặc deadline
+     * của RequestContext nếu sớm hơn), quá deadline khi còn chờ thì trả 503 kèm Retry-After.
+     */
+    public HttpHandler handler(Priority priority, HttpHandler delegate) {
+        return exchange -> {
+            long deadlineNanos = System.nanoTime() + priority.budget().toNanos();
+            if (RequestContext.isBound()) {
+                deadlineNanos = Math.min(deadlineNanos, deadlineNanos(RequestContext.current().deadline()));
+            }
+            boolean acquired;
+            try {
+                acquired = acquire(priority, deadlineNanos);
+            } catch (InterruptedException e) {
+                // Server đang dừng và hủy request còn chờ: trả lời trước rồi mới đặt lại cờ interrupt
+                reject(exchange);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!acquired) {
+                reject(exchange);
+                return;
+            }
+            try {
+                delegate.handle(exchange);
+            } finally {
+                release();
+            }
+        };
+    }
+
+    private static void reject(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, EXPIRED_BODY.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(EXPIRED_BODY);
+        }
+    }
+
+    private static long deadlineNanos(Instant deadline) {
+        return System.nanoTime() + Duration.between(Instant.now(), deadline).toNanos();
+    }
+
+    /**
+     * Chạy tác vụ trên virtual thread mới sau khi được cấp permit. Hết deadline khi còn chờ thì Future kết thúc
+     * bằng {@link RejectedExecutionException}.
+     */
+    public <T> Future<T> submit(Priority priority, Duration deadline, Callable<T> task) {
+        PrioritizedTask<T> future = new PrioritizedTask<>(task, priority, System.nanoTime() + deadline.toNanos());
+        threads.execute(future);
+        return future;
+    }
+
+    /**
+     * Chạy ngay trên virtual thread mới, không qua hàng đợi ưu tiên (dùng làm executor của HttpServer; việc xếp
+     * lịch do {@link #handler(Priority, HttpHandler)} đảm nhận vì chỉ ở đó mới biết endpoint).
+     */
+    @Override
+    public void execute(Runnable command) {
+        threads.execute(command);
+    }
+
+    /**
+     * Chờ permit tới deadline. Trả false nếu hết deadline khi còn chờ.
+     */
+    public boolean acquire(Priority priority, long deadlineNanos) throws InterruptedException {
+        long start = System.nanoTime();
+        Waiter waiter;
+        lock.lock();
+        try {
+            if (available > 0) {
+                available--;
+                admitted[priority.ordinal()].increment();
+                return true;
+            }
+            if (deadlineNanos - start <= 0) {
+                expired[priority.ordinal()].increment();
+                return false;
+            }
+            waiter = new Waiter(priority, deadlineNanos, sequence++, lock.newCondition());
+            queue.add(waiter);
+            waiting[priority.ordinal()]++;
+            try {
+                while (!waiter.granted) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0 || waiter.skipped) {
+                        leave(waiter);
+                        expired[priority.ordinal()].increment();
+                        return false;
+                    }
+                    waiter.condition.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    // Được cấp đúng lúc bị interrupt: chuyển permit cho người kế tiếp
+                    releaseLocked();
+                } else {
+                    leave(waiter);
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+        admitted[priority.ordinal()].increment();
+        waitNanos[priority.ordinal()].add(System.nanoTime() - start);
+        return true;
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            releaseLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Chuyển permit cho tác vụ đầu hàng còn trong hạn; tác vụ đã quá hạn được đánh thức để tự rời hàng
+    private void releaseLocked() {
+        long now = System.nanoTime();
+        Waiter next;
+        while ((next = queue.poll()) != null) {
+            waiting[next.priority.ordinal()]--;
+            if (next.deadlineNanos - now > 0) {
+                next.granted = true;
+                next.condition.signal();
+                return;
+            }
+            next.skipped = true;
+            next.condition.signal();
+        }
+        available++;
+    }
+
+    private void leave(Waiter waiter) {
+        if (!waiter.skipped && queue.remove(waiter)) {
+            waiting[waiter.priority.ordinal()]--;
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int permits() {
+        return permits;
+    }
+
+    public int available() {
+        lock.lock();
+        try {
+            return available;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<Stats> stats() {
+        int[] waitingNow;
+        lock.lock();
+        try {
+            waitingNow = waiting.clone();
+        } finally {
+            lock.unlock();
+        }
+        return Arrays.stream(Priority.values())
+                .map(p -> new Stats(p, admitted[p.ordinal()].sum(), expired[p.ordinal()].sum(),
+                        waitingNow[p.ordinal()], Duration.ofNanos(waitNanos[p.ordinal()].sum())))
+                .toList();
+    }
+
+    @Override
+    public void shutdown() {
+        threads.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return threads.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return threads.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return threads.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return threads.awaitTermination(timeout, unit);
+    }
+
+    // submit() không kèm loại ưu tiên thì coi là NORMAL với budget mặc định
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new PrioritizedTask<>(callable, Priority.NORMAL, System.nanoTime() + Priority.NORMAL.budget().toNanos());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return newTaskFor(Executors.callable(runnable, value));
+    }
+
+    // Một tác vụ đang chờ permit; condition riêng để chỉ đánh thức đúng tác vụ được cấp
+    private static final class Waiter {
+
+        final Priority priority;
+        final long deadlineNanos;
+        final long sequence;
+        final Condition condition;
+        boolean granted;
+        boolean skipped;
+
+        Waiter(Priority priority, long deadlineNanos, long sequence, Condition condition) {
+            this.priority = priority;
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+    }
+
+    // Future chờ permit trên chính virtual thread của nó rồi mới chạy tác vụ
+    private final class PrioritizedTask<T> extends FutureTask<T> {
+
+        private final Priority priority;
+        private final long deadlineNanos;
+
+        private PrioritizedTask(Callable<T> callable, Priority priority, long deadlineNanos) {
+            super(callable);
+            this.priority = priority;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) {
+                return;
+            }
+            try {
+                if (!acquire(priority, deadlineNanos)) {
+                    setException(new RejectedExecutionException(
+                            name + ": hết deadline khi chờ permit (" + priority.label() + ")"));
+                    return;
+                }
+            } catch (InterruptedException e) {
+                setException(e);
+                return;
+            }
+            try {
+                super.run();
+            } finally {
+                release();
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package vn.vnpay.efin;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gom các truy vấn theo key đơn lẻ từ nhiều virtual thread thành một lần gọi batch xuống backend.
+ *
+ * - Các key tới trong cùng một cửa sổ thời gian (hoặc tới khi đủ maxBatchSize) được gộp thành một batch.
+ * - Các request giống nhau đang chờ được gộp làm một (single-flight): chỉ một key đi xuống backend.
+ * - Kết quả batch được tách ra và trả cho từng virtual thread đang chờ.
+ *
+ * @param <K> kiểu key
+ * @param <V> kiểu kết quả
+ */
+public class QueryCoalescer<K, V> implements AutoCloseable {
+
+    /**
+     * Truy vấn batch xuống backend; key không có trong kết quả sẽ nhận về null.
+     */
+    @FunctionalInterface
+    public interface BatchLoader<K, V> {
+        Map<K, V> load(List<K> keys) throws Exception;
+    }
+
+    private final BatchLoader<K, V> loader;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<K> pending = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder roundTrips = new LongAdder();
+
+    public QueryCoalescer(BatchLoader<K, V> loader, Duration window, int maxBatchSize) {
+        this.loader = loader;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.dispatcher = Thread.ofVirtual().name("query-coalescer").start(this::dispatchLoop);
+    }
+
+    /**
+     * Lấy giá trị của key, chờ tới khi batch chứa key này được backend trả về.
+     *
+     * @throws IllegalStateException nếu coalescer đã đóng
+     */
+    public V get(K key) throws InterruptedException, ExecutionException {
+        if (closed) {
+            throw new IllegalStateException("QueryCoalescer đã đóng");
+        }
+        requests.increment();
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            deduplicated.increment();
+            return existing.get();
+        }
+        pending.add(key);
+        // close() chạy xen giữa lần kiểm tra trên và putIfAbsent có thể không thấy future này: tự kết thúc nó,
+        // nếu không dispatcher đã dừng và get() chờ mãi
+        if (closed && inFlight.remove(key, future)) {
+            future.completeExceptionally(new IllegalStateException("QueryCoalescer đã đóng"));
+        }
+        return future.get();
+    }
+
+    private void dispatchLoop() {
+        try {
+            while (true) {
+                List<K> batch = new ArrayList<>();
+                batch.add(pending.take());
+                // Mở cửa sổ từ key đầu tiên, gom thêm tới khi hết cửa sổ hoặc đủ batch
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    pending.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    K next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // Gọi backend trên virtual thread riêng để dispatcher tiếp tục gom batch kế tiếp
+                Thread.ofVirtual().start(() -> execute(batch));
+            }
+        } catch (InterruptedException e) {
+            // Coalescer đã đóng
+        }
+    }
+
+    private void execute(List<K> batch) {
+        roundTrips.increment();
+        try {
+            Map<K, V> results = loader.load(batch);
+            for (K key : batch) {
+                CompletableFuture<V> future = inFlight.remove(key);
+                if (future != null) {
+                    future.complete(results.get(key));
+                }
+            }
+        } catch (Throwable e) {
+            for (K key : batch) {
+                CompletableFuture<V> future = inFlight.remove(key);
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    public long deduplicated() {
+        return deduplicated.sum();
+    }
+
+    // Số lần gọi batch xuống backend
+    public long roundTrips() {
+        return roundTrips.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        IllegalStateException closed = new IllegalStateException("QueryCoalescer đã đóng");
+        inFlight.values().forEach(f -> f.completeExceptionally(closed));
+    }
+}
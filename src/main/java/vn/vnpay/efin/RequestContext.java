@@ -0,0 +1,104 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ngữ cảnh của một request (request id, người gọi, deadline), gắn bằng ScopedValue (preview, cần --enable-preview).
+ *
+ * Khác ThreadLocal/InheritableThreadLocal: giá trị không được sao chép vào từng thread con. Các thread con tạo bởi
+ * StructuredTaskScope (ScatterGather) đọc thẳng binding của thread cha, nên fan-out ra hàng triệu virtual thread
+ * không tốn thêm bộ nhớ cho ngữ cảnh. Thread tạo ngoài StructuredTaskScope (executor, Thread.ofVirtual) không
+ * thấy ngữ cảnh; khi cần thì truyền tiếp bằng {@link #call}.
+ */
+public record RequestContext(String requestId, String principal, Instant deadline) {
+
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+    public static final String USER_HEADER = "X-User";
+    // Thời gian tối đa client cho phép (ms); không có thì dùng DEFAULT_TIMEOUT
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+    private static final String ANONYMOUS = "anonymous";
+
+    private static final ScopedValue<RequestContext> CURRENT = ScopedValue.newInstance();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    /**
+     * Ngữ cảnh của request đang xử lý, null nếu thread hiện tại không chạy trong một request.
+     */
+    public static RequestContext current() {
+        return CURRENT.orElse(null);
+    }
+
+    public static boolean isBound() {
+        return CURRENT.isBound();
+    }
+
+    /**
+     * Thời gian còn lại tới deadline (âm nếu đã quá hạn).
+     */
+    public Duration remaining() {
+        return Duration.between(Instant.now(), deadline);
+    }
+
+    public boolean isExpired() {
+        return !Instant.now().isBefore(deadline);
+    }
+
+    /**
+     * Chạy task với ngữ cảnh này được gắn cho thread hiện tại và các thread con của StructuredTaskScope.
+     */
+    public <R> R call(Callable<R> task) throws Exception {
+        return ScopedValue.where(CURRENT, this).call(task);
+    }
+
+    /**
+     * Tạo ngữ cảnh từ header của request: giữ X-Request-Id của client nếu có, không thì sinh id mới.
+     */
+    public static RequestContext from(HttpExchange exchange) {
+        String requestId = exchange.getRequestHeaders().getFirst(REQUEST_ID_HEADER);
+        if (requestId == null || requestId.isBlank()) {
+            requestId = "req-" + SEQUENCE.incrementAndGet();
+        }
+        String principal = exchange.getRequestHeaders().getFirst(USER_HEADER);
+        Duration timeout = DEFAULT_TIMEOUT;
+        String timeoutHeader = exchange.getRequestHeaders().getFirst(TIMEOUT_HEADER);
+        if (timeoutHeader != null) {
+            try {
+                timeout = Duration.ofMillis(Math.max(0, Long.parseLong(timeoutHeader.trim())));
+            } catch (NumberFormatException e) {
+                // Header sai định dạng thì dùng timeout mặc định
+            }
+        }
+        return new RequestContext(requestId, principal == null || principal.isBlank() ? ANONYMOUS : principal,
+                Instant.now().plus(timeout));
+    }
+
+    /**
+     * Bọc handler: mỗi exchange có một ngữ cảnh riêng, gắn trong suốt thời gian handler chạy.
+     * Request id được trả lại qua header X-Request-Id để client đối chiếu log.
+     */
+    public static HttpHandler bind(HttpHandler handler) {
+        return exchange -> {
+            RequestContext context = from(exchange);
+            exchange.getResponseHeaders().set(REQUEST_ID_HEADER, context.requestId());
+            try {
+                context.call(() -> {
+                    handler.handle(exchange);
+                    return null;
+                });
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        };
+    }
+}
@@ -0,0 +1,215 @@
+package vn.vnpay.efin;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * So sánh gọi thẳng một downstream chập chờn với gọi qua {@link ResilientCall}:
+ * 1. Đuôi chậm: timeout cắt đuôi nhưng thành lỗi, hedging ở p95 cắt đuôi mà vẫn thành công.
+ * 2. Sự cố: downstream treo, không có circuit breaker thì mọi request chờ hết timeout; có breaker thì fail fast
+ *    và tự đóng lại qua HALF_OPEN khi downstream hồi phục.
+ * 3. Bulkhead: burst vượt giới hạn bị từ chối ngay, downstream không phải gánh hết.
+ */
+public class ResilienceDemo {
+
+    private static final int CLIENTS = 50;
+    private static final int CALLS_PER_CLIENT = 40;
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("\n=== Resilience: timeout, hedging, circuit breaker, bulkhead ===");
+
+        System.out.println("\n1. Đuôi chậm: log-normal median 40ms, 5% cuộc gọi mất 800ms");
+        System.out.println(CLIENTS + " client x " + CALLS_PER_CLIENT + " cuộc gọi");
+        printHeader();
+        runTail("gọi thẳng", null);
+        runTail("timeout 300ms", new ResilientCall("tail-timeout").timeout(Duration.ofMillis(300)));
+        ResilientCall hedged = new ResilientCall("tail-hedge").timeout(Duration.ofSeconds(2)).hedge(95);
+        // Lượt đầu để đủ mẫu tính p95, lượt sau mới là kết quả
+        runWorkload(tailBackend(), hedged, CLIENTS, 5);
+        runTail("hedge p95", hedged);
+        ResilientCall.Stats stats = hedged.stats();
+        System.out.println("Hedge: ngưỡng " + stats.hedgeDelay().toMillis() + "ms, gửi thêm " + stats.hedges()
+                + " lần (" + stats.hedges() * 100 / Math.max(1, stats.calls()) + "% tải), thắng " + stats.hedgeWins());
+
+        System.out.println("\n2. Sự cố: downstream treo 5 giây mỗi cuộc gọi, kéo dài 2 giây rồi hồi phục");
+        runOutage(false);
+        runOutage(true);
+
+        System.out.println("\n3. Bulkhead: 200 request cùng lúc tới downstream 300ms, giới hạn 20");
+        runBulkhead();
+    }
+
+    private static FlakyBackend tailBackend() {
+        return new FlakyBackend("tail", FlakyBackend.LatencyDistribution.logNormal(Duration.ofMillis(40), 0.3))
+                .slowTail(0.05, Duration.ofMillis(800));
+    }
+
+    private static void runTail(String label, ResilientCall resilientCall) throws InterruptedException {
+        Outcome outcome = runWorkload(tailBackend(), resilientCall, CLIENTS, CALLS_PER_CLIENT);
+        outcome.print(label);
+    }
+
+    // Closed loop: mỗi client gọi lần lượt callsPerClient lần
+    private static Outcome runWorkload(FlakyBackend backend, ResilientCall resilientCall, int clients,
+                                       int callsPerClient) throws InterruptedException {
+        Outcome outcome = new Outcome();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                executor.submit(() -> {
+                    for (int i = 0; i < callsPerClient; i++) {
+                        String request = "request-" + client + "-" + i;
+                        outcome.record(() -> invoke(backend, resilientCall, request));
+                    }
+                });
+            }
+        }
+        outcome.elapsedNanos = System.nanoTime() - start;
+        return outcome;
+    }
+
+    private static String invoke(FlakyBackend backend, ResilientCall resilientCall, String request) throws Exception {
+        return resilientCall == null ? backend.call(request) : resilientCall.call(() -> backend.call(request));
+    }
+
+    private static void runOutage(boolean withBreaker) throws InterruptedException {
+        FlakyBackend backend = new FlakyBackend("payment",
+                FlakyBackend.LatencyDistribution.uniform(Duration.ofMillis(20), Duration.ofMillis(60)));
+        CircuitBreaker breaker = new CircuitBreaker("payment", 20, 10, 0.5, Duration.ofMillis(500), 3);
+        ResilientCall resilientCall = new ResilientCall("payment").timeout(Duration.ofMillis(300));
+        if (withBreaker) {
+            resilientCall.circuitBreaker(breaker);
+        }
+
+        // Sự cố từ giây thứ 1 tới giây thứ 3, in các lần breaker đổi trạng thái
+        Thread chaos = Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(1_000);
+                backend.outage(Duration.ofSeconds(5));
+                Thread.sleep(2_000);
+                backend.recover();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long start = System.nanoTime();
+        Thread watcher = Thread.ofVirtual().start(() -> {
+            CircuitBreaker.State last = breaker.state();
+            while (!Thread.currentThread().isInterrupted()) {
+                CircuitBreaker.State current = breaker.state();
+                if (current != last) {
+                    System.out.printf("    %5dms: breaker %s -> %s%n",
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), last, current);
+                    last = current;
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        System.out.println((withBreaker ? "Có" : "Không có") + " circuit breaker (timeout 300ms):");
+        Outcome outcome = new Outcome();
+        long end = start + TimeUnit.SECONDS.toNanos(4);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < CLIENTS; c++) {
+                executor.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        boolean ok = outcome.record(() -> resilientCall.call(() -> backend.call("charge")));
+                        if (!ok) {
+                            // Lỗi thì nghỉ một chút như client thật, tránh vòng lặp bận khi bị từ chối ngay
+                            Thread.sleep(20);
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+        outcome.elapsedNanos = System.nanoTime() - start;
+        watcher.interrupt();
+        chaos.join();
+        watcher.join();
+        printHeader();
+        outcome.print(withBreaker ? "có breaker" : "không breaker");
+        System.out.println("    Cuộc gọi tới downstream: " + backend.calls() + ", bị từ chối ngay: "
+                + outcome.rejected.sum() + ", thời gian chờ trung bình của cuộc gọi lỗi: "
+                + outcome.failedMillis.sum() / Math.max(1, outcome.failures.sum()) + "ms");
+    }
+
+    private static void runBulkhead() throws InterruptedException {
+        for (boolean limited : new boolean[] {false, true}) {
+            FlakyBackend backend = new FlakyBackend("report",
+                    FlakyBackend.LatencyDistribution.constant(Duration.ofMillis(300)));
+            ResilientCall resilientCall = new ResilientCall("report").timeout(Duration.ofSeconds(2));
+            if (limited) {
+                resilientCall.bulkhead(20);
+            }
+            Outcome outcome = runWorkload(backend, resilientCall, 200, 1);
+            System.out.println((limited ? "Bulkhead 20" : "Không giới hạn") + ": thành công " + outcome.successes.sum()
+                    + ", bị từ chối ngay " + outcome.rejected.sum() + ", downstream phải chạy đồng thời tối đa "
+                    + backend.maxInFlight());
+        }
+    }
+
+    private static void printHeader() {
+        System.out.printf("%-16s %8s %8s %8s %8s %9s %7s %7s%n",
+                "", "p50", "p95", "p99", "max", "gọi/s", "lỗi", "từ chối");
+    }
+
+    // Kết quả của một lượt chạy: độ trễ từ phía client (cả cuộc gọi thành công lẫn lỗi)
+    private static final class Outcome {
+
+        private final Histogram histogram = new Histogram(MAX_LATENCY_MICROS, 3);
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder failedMillis = new LongAdder();
+        private long elapsedNanos;
+
+        boolean record(Callable<?> call) {
+            long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                call.call();
+                ok = true;
+                successes.increment();
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+            } catch (Exception e) {
+                failures.increment();
+                failedMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            long micros = Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            lock.lock();
+            try {
+                histogram.recordValue(micros);
+            } finally {
+                lock.unlock();
+            }
+            return ok;
+        }
+
+        void print(String label) {
+            System.out.printf("%-16s %6.0fms %6.0fms %6.0fms %6.0fms %9.0f %7d %7d%n", label,
+                    millis(50), millis(95), millis(99), histogram.getMaxValue() / 1000.0,
+                    histogram.getTotalCount() * 1e9 / elapsedNanos, failures.sum(), rejected.sum());
+        }
+
+        private double millis(double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package vn.vnpay.efin;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.StructuredTaskScope.Subtask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bọc các cuộc gọi tới một downstream: bulkhead, circuit breaker, timeout và hedged request.
+ *
+ * - Bulkhead: {@link ConcurrencyLimiter} cố định, vượt giới hạn thì từ chối ngay thay vì xếp hàng.
+ * - Circuit breaker: {@link CircuitBreaker}, đang mở thì từ chối ngay không gọi downstream.
+ * - Timeout: mỗi lần gọi chạy trong một StructuredTaskScope; hết hạn thì scope đóng lại và interrupt virtual thread
+ *   đang gọi. Hạn là mốc sớm hơn giữa timeout và deadline của {@link RequestContext} (nếu có).
+ * - Hedging: gọi chưa xong sau độ trễ p95 (đo từ các lần gọi thành công gần đây) thì gửi thêm một lần gọi, lấy
+ *   kết quả nào về trước, lần còn lại bị interrupt. Chỉ bật cho cuộc gọi idempotent (đọc dữ liệu...).
+ *
+ * Lỗi của downstream được ném lại nguyên vẹn; hết hạn ném TimeoutException, bị từ chối ném
+ * RejectedExecutionException. Thread gọi bị interrupt thì cuộc gọi được coi là hủy (không tính lỗi cho breaker).
+ * Cuộc gọi không phản hồi interrupt sẽ giữ thread gọi tới khi nó tự kết thúc.
+ */
+public class ResilientCall {
+
+    /**
+     * Thống kê tích lũy từ lúc tạo.
+     */
+    public record Stats(long calls, long successes, long failures, long timeouts, long cancelled, long hedges,
+                        long hedgeWins, long rejectedByBreaker, long rejectedByBulkhead, CircuitBreaker.State breakerState,
+                        Duration hedgeDelay) {}
+
+    // Cần ít nhất chừng này mẫu mới tính p95 để hedge, tránh hedge theo vài mẫu đầu tiên
+    private static final int MIN_HEDGE_SAMPLES = 50;
+    private static final long HEDGE_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final String name;
+    private Duration timeout = Duration.ofSeconds(1);
+    private double hedgePercentile;
+    private ConcurrencyLimiter bulkhead;
+    private CircuitBreaker breaker;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder rejectedByBreaker = new LongAdder();
+    private final LongAdder rejectedByBulkhead = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    // Độ trễ của các lần gọi thành công, gom theo từng giây để tính lại ngưỡng hedge
+    private final Recorder latency = new Recorder(MAX_LATENCY_MICROS, 2);
+    private final Histogram pending = new Histogram(MAX_LATENCY_MICROS, 2);
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile long nextRefreshNanos = System.nanoTime() + HEDGE_REFRESH_NANOS;
+    // 0 = chưa đủ mẫu, chưa hedge
+    private volatile long hedgeDelayNanos;
+
+    public ResilientCall(String name) {
+        this.name = name;
+    }
+
+    public ResilientCall timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Bật hedging tại phân vị độ trễ percentile (ví dụ 95).
+     */
+    public ResilientCall hedge(double percentile) {
+        this.hedgePercentile = percentile;
+        return this;
+    }
+
+    public ResilientCall bulkhead(int maxConcurrent) {
+        this.bulkhead = ConcurrencyLimiter.fixed(name, maxConcurrent);
+        return this;
+    }
+
+    public ResilientCall circuitBreaker(CircuitBreaker breaker) {
+        this.breaker = breaker;
+        return this;
+    }
+
+    public <T> T call(Callable<? extends T> call) throws Exception {
+        calls.increment();
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            rejectedByBulkhead.increment();
+            throw new RejectedExecutionException(name + ": quá giới hạn bulkhead " + bulkhead.limit());
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        boolean cancelled = false;
+        try {
+            CircuitBreaker.Permit permit = breaker == null ? CircuitBreaker.Permit.NORMAL : breaker.tryAcquire();
+            if (permit == CircuitBreaker.Permit.REJECTED) {
+                rejectedByBreaker.increment();
+                throw new RejectedExecutionException(name + ": circuit breaker đang mở");
+            }
+            try {
+                T value = attempt(call, deadline());
+                success = true;
+                return value;
+            } catch (TimeoutException e) {
+                timeouts.increment();
+                throw e;
+            } catch (InterruptedException e) {
+                cancelled = true;
+                throw e;
+            } finally {
+                // Thread gọi bị hủy (server dừng, request cha bỏ cuộc) không nói gì về sức khỏe downstream:
+                // trả quyền gọi cho breaker mà không tính là lỗi
+                cancelled |= !success && Thread.currentThread().isInterrupted();
+                if (breaker != null) {
+                    if (success) {
+                        breaker.onSuccess(permit);
+                    } else if (cancelled) {
+                        breaker.onCancel(permit);
+                    } else {
+                        breaker.onFailure(permit);
+                    }
+                }
+                if (success) {
+                    successes.increment();
+                    recordLatency(System.nanoTime() - start);
+                } else if (cancelled) {
+                    this.cancelled.increment();
+                } else {
+                    failures.increment();
+                }
+            }
+        } finally {
+            if (bulkhead != null) {
+                if (cancelled) {
+                    bulkhead.cancel();
+                } else {
+                    bulkhead.release(System.nanoTime() - start, !success);
+                }
+            }
+        }
+    }
+
+    private Instant deadline() {
+        Instant deadline = Instant.now().plus(timeout);
+        RequestContext context = RequestContext.current();
+        return context != null && context.deadline().isBefore(deadline) ? context.deadline() : deadline;
+    }
+
+    private <T> T attempt(Callable<? extends T> call, Instant deadline) throws Exception {
+        long hedgeDelay = hedgeDelayNanos;
+        boolean hedgeAcquired = false;
+        try (var scope = new StructuredTaskScope.ShutdownOnSuccess<T>()) {
+            Subtask<? extends T> primary = scope.fork(call);
+            Subtask<? extends T> hedge = null;
+            Instant hedgeAt = Instant.now().plusNanos(hedgeDelay);
+            if (hedgeDelay > 0 && hedgeAt.isBefore(deadline)) {
+                try {
+                    scope.joinUntil(hedgeAt);
+                } catch (TimeoutException e) {
+                    // Lần gọi hedge cũng chiếm một chỗ của bulkhead; hết chỗ thì chỉ chờ lần gọi đầu
+                    hedgeAcquired = bulkhead == null || bulkhead.tryAcquire();
+                    if (hedgeAcquired) {
+                        hedges.increment();
+                        hedge = scope.fork(call);
+                    }
+                }
+            }
+            // Hết hạn: TimeoutException thoát khỏi try, close() shutdown scope và interrupt các lần gọi còn chạy
+            try {
+                scope.joinUntil(deadline);
+            } catch (TimeoutException e) {
+                throw new TimeoutException(name + ": quá hạn, không có phản hồi trước " + deadline);
+            }
+            T value = scope.result(e -> e instanceof Exception ex ? ex : new ExecutionException(e));
+            if (hedge != null && hedge.state() == Subtask.State.SUCCESS && primary.state() != Subtask.State.SUCCESS) {
+                hedgeWins.increment();
+            }
+            return value;
+        } finally {
+            if (hedgeAcquired && bulkhead != null) {
+                bulkhead.release(0, false);
+            }
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        if (hedgePercentile <= 0) {
+            return;
+        }
+        latency.recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        long now = System.nanoTime();
+        // Mỗi giây một thread tính lại ngưỡng; thread khác không lấy được lock thì bỏ qua
+        if (now >= nextRefreshNanos && refreshLock.tryLock()) {
+            try {
+                nextRefreshNanos = now + HEDGE_REFRESH_NANOS;
+                pending.add(latency.getIntervalHistogram());
+                if (pending.getTotalCount() >= MIN_HEDGE_SAMPLES) {
+                    hedgeDelayNanos = TimeUnit.MICROSECONDS.toNanos(pending.getValueAtPercentile(hedgePercentile));
+                    pending.reset();
+                }
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Stats stats() {
+        return new Stats(calls.sum(), successes.sum(), failures.sum(), timeouts.sum(), cancelled.sum(), hedges.sum(),
+                hedgeWins.sum(), rejectedByBreaker.sum(), rejectedByBulkhead.sum(),
+                breaker == null ? CircuitBreaker.State.CLOSED : breaker.state(), Duration.ofNanos(hedgeDelayNanos));
+    }
+}
@@ -0,0 +1,216 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ghi response HTTP gần như không cấp phát: body được ghép từ các {@link Segment} đã encode sẵn và các giá trị
+ * động được encode UTF-8 thẳng vào một byte[] lấy từ pool, thay vì nối String rồi getBytes cho mỗi request.
+ *
+ * Hai chế độ:
+ * - {@link #acquire()} + {@link #send}: gom cả body rồi gửi với Content-Length.
+ * - {@link #chunked}: gửi header trước, body được đẩy ra theo từng chunk mỗi khi buffer đầy,
+ *   dùng cho payload lớn mà không phải giữ cả body trong bộ nhớ.
+ *
+ * Writer phải được close() để trả buffer về pool.
+ */
+public final class ResponseWriter implements AutoCloseable {
+
+    /**
+     * Đoạn body cố định, encode UTF-8 một lần khi khởi tạo.
+     */
+    public record Segment(byte[] bytes) {
+        public static Segment of(String text) {
+            return new Segment(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+    // Buffer lớn hơn mức này không được trả về pool, tránh giữ bộ nhớ vì một response lớn bất thường
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+    private static final int POOL_SIZE = 256;
+
+    // Pool dạng mảng slot, lấy/trả bằng CAS nên không cấp phát node như ConcurrentLinkedQueue
+    private static final AtomicReferenceArray<ResponseWriter> POOL = new AtomicReferenceArray<>(POOL_SIZE);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length;
+    // Khác null khi đang ở chế độ chunked
+    private OutputStream streamingBody;
+
+    private ResponseWriter() {
+    }
+
+    /**
+     * Lấy một writer rỗng từ pool, tạo mới nếu pool hết.
+     */
+    public static ResponseWriter acquire() {
+        int start = (int) (Thread.currentThread().threadId() & (POOL_SIZE - 1));
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int slot = (start + i) & (POOL_SIZE - 1);
+            ResponseWriter writer = POOL.get(slot);
+            if (writer != null && POOL.compareAndSet(slot, writer, null)) {
+                return writer;
+            }
+        }
+        return new ResponseWriter();
+    }
+
+    /**
+     * Gửi header với Transfer-Encoding: chunked ngay, phần body ghi sau đó được đẩy ra mỗi khi buffer đầy.
+     */
+    public static ResponseWriter chunked(HttpExchange exchange, int statusCode) throws IOException {
+        ResponseWriter writer = acquire();
+        exchange.sendResponseHeaders(statusCode, 0);
+        writer.streamingBody = exchange.getResponseBody();
+        return writer;
+    }
+
+    public ResponseWriter append(Segment segment) throws IOException {
+        return append(segment.bytes(), 0, segment.bytes().length);
+    }
+
+    public ResponseWriter append(byte[] bytes, int offset, int count) throws IOException {
+        while (count > 0) {
+            int n = Math.min(count, ensureSpace(count));
+            System.arraycopy(bytes, offset, buffer, length, n);
+            length += n;
+            offset += n;
+            count -= n;
+        }
+        return this;
+    }
+
+    /**
+     * Encode UTF-8 từng ký tự vào buffer, không tạo byte[] hay CharBuffer trung gian.
+     */
+    public ResponseWriter append(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            ensureSpace(4);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                buffer[length++] = (byte) (0xF0 | (cp >> 18));
+                buffer[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[length++] = '?';
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    public ResponseWriter append(long value) throws IOException {
+        ensureSpace(20);
+        if (value == Long.MIN_VALUE) {
+            return append("-9223372036854775808");
+        }
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    /**
+     * Ghi thread theo dạng VirtualThread[#id,name] mà không gọi Thread.toString()
+     * (toString tạo String mới và kèm cả tên carrier đang chạy).
+     */
+    public ResponseWriter append(Thread thread) throws IOException {
+        append(thread.isVirtual() ? "VirtualThread[#" : "Thread[#").append(thread.threadId());
+        if (!thread.getName().isEmpty()) {
+            append(",").append(thread.getName());
+        }
+        return append("]");
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Gửi toàn bộ body đã ghi với Content-Length, một lần write duy nhất từ buffer của writer.
+     */
+    public void send(HttpExchange exchange, int statusCode) throws IOException {
+        exchange.sendResponseHeaders(statusCode, length == 0 ? -1 : length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(buffer, 0, length);
+        }
+    }
+
+    // Bảo đảm còn chỗ cho ít nhất min byte (tối đa bằng dung lượng buffer ở chế độ chunked); trả về số byte còn trống
+    private int ensureSpace(int min) throws IOException {
+        if (buffer.length - length >= min) {
+            return buffer.length - length;
+        }
+        if (streamingBody != null) {
+            // Chế độ chunked: đẩy phần đã ghi ra thành một chunk rồi dùng lại buffer
+            flushChunk();
+            return buffer.length;
+        }
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + min));
+        return buffer.length - length;
+    }
+
+    private void flushChunk() throws IOException {
+        if (length > 0) {
+            streamingBody.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+    /**
+     * Ở chế độ chunked: gửi phần còn lại và chunk kết thúc. Sau đó trả buffer về pool.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (streamingBody != null) {
+                flushChunk();
+                streamingBody.close();
+            }
+        } finally {
+            streamingBody = null;
+            length = 0;
+            release();
+        }
+    }
+
+    private void release() {
+        if (buffer.length > MAX_POOLED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        int start = (int) (Thread.currentThread().threadId() & (POOL_SIZE - 1));
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int slot = (start + i) & (POOL_SIZE - 1);
+            if (POOL.get(slot) == null && POOL.compareAndSet(slot, null, this)) {
+                return;
+            }
+        }
+    }
+}
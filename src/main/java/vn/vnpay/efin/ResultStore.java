@@ -0,0 +1,263 @@
+package vn.vnpay.efin;
+
+import org.HdrHistogram.Histogram;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Kho kết quả dạng cột cho các lần chạy batch lớn: mỗi kết quả là một dòng (batch id, độ trễ micro giây, trạng thái)
+ * nằm trong ba mảng nguyên thủy int/long/byte, không có object hay String nào cho từng dòng (13 byte mỗi dòng).
+ *
+ * - Ghi: mỗi thread mượn một {@link Writer} qua {@link #writer()}; writer sở hữu chunk riêng nên append chỉ là ghi
+ *   mảng, không lock, không CAS. Chunk được đưa vào hàng đợi lock-free của kho ngay khi cấp (lúc chunk trước đầy),
+ *   còn số dòng của chunk được công bố sau mỗi lần append.
+ *   Writer trả lại bằng close() được thread khác dùng tiếp, nên số chunk dở dang chỉ bằng số writer đồng thời.
+ * - Tổng hợp: {@link #summarize()} đi qua dữ liệu một lần, mỗi chunk vừa với cache L2: vòng min/max/sum chỉ trên mảng
+ *   long (JIT vector hóa được) rồi vòng histogram + đếm trạng thái trên chính chunk đó khi còn trong cache.
+ *
+ * Có thể tổng hợp trong lúc đang ghi: chỉ các dòng đã công bố được tính. Writer công bố kích thước chunk bằng
+ * release store (không có fence StoreLoad như ghi volatile), bên đọc lấy bằng acquire load.
+ */
+public final class ResultStore {
+
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+    public static final byte TIMEOUT = 2;
+    private static final String[] STATUS_NAMES = {"ok", "error", "timeout"};
+
+    // 16K dòng x 13 byte khoảng 208KB mỗi chunk
+    private static final int DEFAULT_CHUNK_ROWS = 16 * 1024;
+    private static final long MAX_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    /**
+     * Kết quả tổng hợp: độ trễ tính bằng micro giây, đếm theo trạng thái và histogram để lấy phân vị.
+     */
+    public record Summary(long count, long min, long max, long sum, long[] statusCounts, Histogram histogram) {
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long percentile(double percentile) {
+            return histogram.getValueAtPercentile(percentile);
+        }
+
+        public long count(byte status) {
+            return statusCounts[status];
+        }
+    }
+
+    private final String name;
+    private final int chunkRows;
+    private final Queue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+    private final Queue<Writer> idleWriters = new ConcurrentLinkedQueue<>();
+    private final LongAdder writersCreated = new LongAdder();
+
+    public ResultStore(String name) {
+        this(name, DEFAULT_CHUNK_ROWS);
+    }
+
+    public ResultStore(String name, int chunkRows) {
+        if (chunkRows <= 0) {
+            throw new IllegalArgumentException("chunkRows phải > 0");
+        }
+        this.name = name;
+        this.chunkRows = chunkRows;
+    }
+
+    public static String statusName(byte status) {
+        return STATUS_NAMES[status];
+    }
+
+    /**
+     * Mượn một writer cho thread hiện tại; trả lại bằng close() (dùng try-with-resources). Một writer chỉ được một
+     * thread dùng tại một thời điểm.
+     */
+    public Writer writer() {
+        Writer writer = idleWriters.poll();
+        if (writer == null) {
+            writersCreated.increment();
+            writer = new Writer();
+        }
+        writer.leased = true;
+        return writer;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Số dòng đã công bố.
+     */
+    public long size() {
+        long size = 0;
+        for (Chunk chunk : chunks) {
+            size += chunk.published();
+        }
+        return size;
+    }
+
+    /**
+     * Bộ nhớ các cột đã cấp phát (gồm cả phần chưa dùng của các chunk).
+     */
+    public long allocatedBytes() {
+        return (long) chunks.size() * chunkRows * (Long.BYTES + Integer.BYTES + Byte.BYTES);
+    }
+
+    public long writersCreated() {
+        return writersCreated.sum();
+    }
+
+    /**
+     * Tổng hợp toàn bộ dòng trong một lần đi qua dữ liệu.
+     */
+    public Summary summarize() {
+        long count = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long sum = 0;
+        long[] statusCounts = new long[STATUS_NAMES.length];
+        Histogram histogram = new Histogram(MAX_LATENCY_MICROS, 3);
+        for (Chunk chunk : chunks) {
+            int size = chunk.published();
+            long[] latency = chunk.latencyMicros;
+            byte[] status = chunk.status;
+            // Vòng chỉ đọc một mảng long, không rẽ nhánh phụ thuộc dữ liệu: JIT vector hóa được
+            for (int i = 0; i < size; i++) {
+                long value = latency[i];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+            }
+            // Chunk vẫn còn trong cache, vòng thứ hai không phải đọc lại từ bộ nhớ
+            for (int i = 0; i < size; i++) {
+                histogram.recordValue(latency[i]);
+                statusCounts[status[i]]++;
+            }
+            count += size;
+        }
+        return new Summary(count, count == 0 ? 0 : min, count == 0 ? 0 : max, sum, statusCounts, histogram);
+    }
+
+    /**
+     * Tổng hợp riêng các dòng có trạng thái cho trước.
+     */
+    public Summary summarize(byte wanted) {
+        long count = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long sum = 0;
+        Histogram histogram = new Histogram(MAX_LATENCY_MICROS, 3);
+        for (Chunk chunk : chunks) {
+            int size = chunk.published();
+            long[] latency = chunk.latencyMicros;
+            byte[] status = chunk.status;
+            for (int i = 0; i < size; i++) {
+                if (status[i] == wanted) {
+                    long value = latency[i];
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    sum += value;
+                    histogram.recordValue(value);
+                    count++;
+                }
+            }
+        }
+        long[] statusCounts = new long[STATUS_NAMES.length];
+        statusCounts[wanted] = count;
+        return new Summary(count, count == 0 ? 0 : min, count == 0 ? 0 : max, sum, statusCounts, histogram);
+    }
+
+    /**
+     * Tổng độ trễ theo batch id (batch id từ 0 tới batches - 1), ví dụ để tìm batch chậm nhất.
+     */
+    public long[] sumByBatch(int batches) {
+        long[] sums = new long[batches];
+        for (Chunk chunk : chunks) {
+            int size = chunk.published();
+            long[] latency = chunk.latencyMicros;
+            int[] batchIds = chunk.batchIds;
+            for (int i = 0; i < size; i++) {
+                sums[batchIds[i]] += latency[i];
+            }
+        }
+        return sums;
+    }
+
+    // Một khối dòng của một writer; chỉ writer sở hữu ghi vào, size công bố các dòng đã ghi cho bên đọc
+    private static final class Chunk {
+
+        private static final VarHandle SIZE;
+
+        static {
+            try {
+                SIZE = MethodHandles.lookup().findVarHandle(Chunk.class, "size", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final int[] batchIds;
+        final long[] latencyMicros;
+        final byte[] status;
+        // Chỉ truy cập qua SIZE: setRelease bảo đảm các phần tử mảng ghi trước được thấy trước size mới
+        private int size;
+
+        Chunk(int rows) {
+            batchIds = new int[rows];
+            latencyMicros = new long[rows];
+            status = new byte[rows];
+        }
+
+        void publish(int rows) {
+            SIZE.setRelease(this, rows);
+        }
+
+        int published() {
+            return (int) SIZE.getAcquire(this);
+        }
+    }
+
+    /**
+     * Ghi dòng vào chunk riêng của writer. Không an toàn luồng: mỗi thread mượn writer riêng.
+     */
+    public final class Writer implements AutoCloseable {
+
+        private Chunk chunk;
+        private int size;
+        private boolean leased;
+
+        private Writer() {
+        }
+
+        public void append(int batchId, long latencyMicros, byte status) {
+            if (chunk == null || size == chunkRows) {
+                chunk = new Chunk(chunkRows);
+                size = 0;
+                chunks.add(chunk);
+            }
+            chunk.batchIds[size] = batchId;
+            chunk.latencyMicros[size] = Math.min(MAX_LATENCY_MICROS, Math.max(0, latencyMicros));
+            chunk.status[size] = status;
+            chunk.publish(++size);
+        }
+
+        /**
+         * Trả writer về kho để thread khác dùng tiếp phần còn trống của chunk.
+         */
+        @Override
+        public void close() {
+            // close() hai lần không được đưa writer vào hàng chờ hai lần (hai thread sẽ ghi chung một chunk)
+            if (leased) {
+                leased = false;
+                idleWriters.add(this);
+            }
+        }
+    }
+}
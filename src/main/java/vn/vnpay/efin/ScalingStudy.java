@@ -0,0 +1,493 @@
+package vn.vnpay.efin;
+
+import com.sun.management.OperatingSystemMXBean;
+import com.sun.management.ThreadMXBean;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Khảo sát virtual thread scale thế nào theo số carrier thread.
+ *
+ * Mỗi workload chạy lại trong một JVM con riêng với -Djdk.virtualThreadScheduler.parallelism/maxPoolSize khác nhau,
+ * ghim vào đúng ngần ấy core bằng taskset (khi có taskset và đủ core). Kết quả là đường speedup so với mức
+ * parallelism nhỏ nhất, kèm cờ chỉ ra chỗ ngừng scale và nguyên nhân nghi vấn:
+ * - Tranh chấp: so cặp biến thể của cùng workload, biến thể sau bỏ đi một điểm tranh chấp (submit latch/join:
+ *   CountDownLatch chung; logging console/async: khóa của System.out). JFR trên JDK 21 không ghi sự kiện park
+ *   của virtual thread nên không dùng được để tìm khóa.
+ * - Cấp phát: byte/op và tỉ lệ thời gian GC trong lúc đo.
+ * - Chờ IO: CPU dùng thấp so với số core được cấp, thêm carrier không giúp gì.
+ *
+ * Tham số dạng key=value, ví dụ:
+ * ./gradlew runMain -PmainClass=vn.vnpay.efin.ScalingStudy --args="parallelism=2,4,8,16,32,64 workloads=submit,http"
+ */
+public class ScalingStudy {
+
+    private static final String WORKER_FLAG = "--worker";
+    private static final String RESULT_PREFIX = "SCALING_RESULT ";
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    // Ngưỡng gắn cờ
+    private static final double MIN_EFFICIENCY = 0.7;
+    private static final double CONTENTION_GAIN = 1.2;
+    private static final double MAX_GC_SHARE = 0.1;
+    private static final double ALLOC_GROWTH = 1.5;
+    private static final double IDLE_CPU = 0.5;
+
+    /**
+     * Workload và các biến thể. Với workload có contention != null, biến thể đầu chứa điểm tranh chấp đó,
+     * các biến thể sau thì không.
+     */
+    enum Workload {
+        SUBMIT("CountDownLatch chung", "latch", "join"),
+        NONBLOCKING(null, "async"),
+        LOGGING("khóa System.out", "console", "async"),
+        HTTP(null, "jdk", "nio");
+
+        private final String contention;
+        private final List<String> variants;
+
+        Workload(String contention, String... variants) {
+            this.contention = contention;
+            this.variants = List.of(variants);
+        }
+    }
+
+    public record Options(List<Integer> parallelism, List<Integer> maxPoolSizes, List<Workload> workloads,
+                          int rounds, boolean taskset, Path out, int tasks, int requests, int concurrency,
+                          Workload workload, String variant) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq > 0) {
+                    values.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+                }
+            }
+            String workload = values.get("workload");
+            return new Options(
+                    ints(values.getOrDefault("parallelism", defaultParallelism())),
+                    ints(values.getOrDefault("maxPoolSize", "256")),
+                    Arrays.stream(values.getOrDefault("workloads", "submit,nonblocking,logging,http").split(","))
+                            .map(w -> Workload.valueOf(w.trim().toUpperCase())).toList(),
+                    Integer.parseInt(values.getOrDefault("rounds", "3")),
+                    Boolean.parseBoolean(values.getOrDefault("taskset", "true")),
+                    Path.of(values.getOrDefault("out", "build/scaling/scaling.csv")),
+                    Integer.parseInt(values.getOrDefault("tasks", "10000")),
+                    Integer.parseInt(values.getOrDefault("requests", "5000")),
+                    Integer.parseInt(values.getOrDefault("concurrency", "64")),
+                    workload == null ? null : Workload.valueOf(workload.toUpperCase()),
+                    values.get("variant"));
+        }
+
+        // Lũy thừa của 2 tới số core của máy (tối thiểu tới 2 để luôn có một đường cong)
+        private static String defaultParallelism() {
+            List<String> levels = new ArrayList<>();
+            for (int p = 1; p <= Math.max(2, CORES); p *= 2) {
+                levels.add(String.valueOf(p));
+            }
+            return String.join(",", levels);
+        }
+
+        private static List<Integer> ints(String csv) {
+            return Arrays.stream(csv.split(",")).map(String::trim).map(Integer::valueOf).sorted().toList();
+        }
+
+        private List<String> workerArgs() {
+            return List.of("rounds=" + rounds, "tasks=" + tasks, "requests=" + requests,
+                    "concurrency=" + concurrency);
+        }
+    }
+
+    // Số liệu một lần đo trong JVM con
+    record Sample(long ops, long wallNanos, long cpuNanos, long allocBytes, long gcMillis) {
+
+        String format() {
+            return RESULT_PREFIX + "ops=" + ops + " wallNanos=" + wallNanos + " cpuNanos=" + cpuNanos
+                    + " allocBytes=" + allocBytes + " gcMillis=" + gcMillis;
+        }
+
+        static Sample parse(String line) {
+            Map<String, Long> values = new HashMap<>();
+            for (String pair : line.substring(RESULT_PREFIX.length()).trim().split(" ")) {
+                int eq = pair.indexOf('=');
+                values.put(pair.substring(0, eq), Long.parseLong(pair.substring(eq + 1)));
+            }
+            return new Sample(values.get("ops"), values.get("wallNanos"), values.get("cpuNanos"),
+                    values.get("allocBytes"), values.get("gcMillis"));
+        }
+    }
+
+    // Một điểm trên đường speedup
+    record Run(Workload workload, String variant, int maxPoolSize, int parallelism, boolean pinned, Sample sample) {
+
+        double opsPerSecond() {
+            return sample.ops() * 1e9 / sample.wallNanos();
+        }
+
+        // Số core thực sự dùng được: ghim bằng taskset thì bằng parallelism, không thì bị giới hạn bởi máy
+        int usableCores() {
+            return pinned ? parallelism : Math.min(parallelism, CORES);
+        }
+
+        double cpuUtilization() {
+            return (double) sample.cpuNanos() / sample.wallNanos() / usableCores();
+        }
+
+        double allocPerOp() {
+            return (double) sample.allocBytes() / sample.ops();
+        }
+
+        double gcShare() {
+            return sample.gcMillis() * 1e6 / sample.wallNanos();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && WORKER_FLAG.equals(args[0])) {
+            runWorker(Options.parse(args));
+            return;
+        }
+        Options options = Options.parse(args);
+        Optional<Path> taskset = options.taskset() ? findOnPath("taskset") : Optional.empty();
+        System.out.println("Khảo sát scale: parallelism=" + options.parallelism() + ", maxPoolSize="
+                + options.maxPoolSizes() + ", máy có " + CORES + " core, taskset "
+                + (taskset.isPresent() ? "bật" : "không dùng"));
+
+        List<Run> runs = new ArrayList<>();
+        for (Workload workload : options.workloads()) {
+            for (String variant : workload.variants) {
+                for (int maxPoolSize : options.maxPoolSizes()) {
+                    for (int parallelism : options.parallelism()) {
+                        System.out.printf("  %s/%s parallelism=%d maxPoolSize=%d ...%n",
+                                workload.name().toLowerCase(), variant, parallelism, maxPoolSize);
+                        fork(options, taskset, workload, variant, parallelism, maxPoolSize).ifPresent(runs::add);
+                    }
+                }
+            }
+        }
+        report(runs, options.out());
+    }
+
+    // Chạy một cấu hình trong JVM con, trả về số liệu nếu JVM con kết thúc bình thường
+    private static Optional<Run> fork(Options options, Optional<Path> taskset, Workload workload, String variant,
+                                      int parallelism, int maxPoolSize) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        boolean pinned = taskset.isPresent() && parallelism <= CORES;
+        if (pinned) {
+            command.addAll(List.of(taskset.get().toString(), "-c", parallelism == 1 ? "0" : "0-" + (parallelism - 1)));
+        }
+        command.add(ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+        // Giữ nguyên cấu hình heap/GC của JVM cha để các lần chạy so sánh được với nhau
+        ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .filter(arg -> arg.startsWith("-Xm") || arg.startsWith("-XX:"))
+                .forEach(command::add);
+        command.add("--enable-preview");
+        command.add("-Djdk.virtualThreadScheduler.parallelism=" + parallelism);
+        command.add("-Djdk.virtualThreadScheduler.maxPoolSize=" + Math.max(parallelism, maxPoolSize));
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), ScalingStudy.class.getName(),
+                WORKER_FLAG, "workload=" + workload.name(), "variant=" + variant));
+        command.addAll(options.workerArgs());
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        // Chỉ giữ dòng kết quả và vài dòng cuối để báo lỗi; workload logging in ra rất nhiều dòng
+        Deque<String> tail = new ArrayDeque<>();
+        String result = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = line;
+                } else {
+                    tail.addLast(line);
+                    if (tail.size() > 20) {
+                        tail.removeFirst();
+                    }
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || result == null) {
+            System.out.println("    JVM con lỗi (exit " + exitCode + "), các dòng cuối:");
+            tail.forEach(line -> System.out.println("    | " + line));
+            return Optional.empty();
+        }
+        return Optional.of(new Run(workload, variant, maxPoolSize, parallelism, pinned, Sample.parse(result)));
+    }
+
+    private static Optional<Path> findOnPath(String program) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return Optional.empty();
+        }
+        return Arrays.stream(path.split(File.pathSeparator))
+                .map(dir -> Path.of(dir, program))
+                .filter(Files::isExecutable)
+                .findFirst();
+    }
+
+    private static void report(List<Run> runs, Path out) throws IOException {
+        Map<String, List<Run>> series = new LinkedHashMap<>();
+        for (Run run : runs) {
+            series.computeIfAbsent(run.workload() + "/" + run.variant() + "/" + run.maxPoolSize(),
+                    k -> new ArrayList<>()).add(run);
+        }
+
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+            csv.println("workload,variant,maxPoolSize,parallelism,pinned,opsPerSecond,speedup,efficiency,"
+                    + "cpuUtilization,allocPerOp,gcShare,flags");
+            for (List<Run> points : series.values()) {
+                printSeries(points, runs, csv);
+            }
+        }
+        System.out.println("\nĐã ghi CSV (vẽ đường speedup theo parallelism): " + out.toAbsolutePath());
+    }
+
+    private static void printSeries(List<Run> points, List<Run> allRuns, PrintWriter csv) {
+        points.sort(Comparator.comparingInt(Run::parallelism));
+        Run baseline = points.get(0);
+        System.out.printf("%n== %s/%s, maxPoolSize=%d ==%n",
+                baseline.workload().name().toLowerCase(), baseline.variant(), baseline.maxPoolSize());
+        System.out.printf("%5s %4s %11s %8s %9s %5s %9s %5s  %s%n",
+                "p", "ghim", "ops/s", "speedup", "hiệu suất", "CPU", "byte/op", "GC", "speedup");
+
+        boolean stopped = false;
+        for (Run run : points) {
+            double speedup = run.opsPerSecond() / baseline.opsPerSecond();
+            double ideal = (double) run.usableCores() / baseline.usableCores();
+            double efficiency = speedup / ideal;
+            List<String> flags = new ArrayList<>();
+            if (!run.pinned() && run.parallelism() > CORES) {
+                flags.add("vượt số core (" + CORES + "), chỉ đo chi phí của scheduler");
+            }
+            if (ideal > 1 && efficiency < MIN_EFFICIENCY && !stopped) {
+                stopped = true;
+                flags.add("ngừng scale");
+                flags.addAll(causes(run, baseline));
+            }
+            contention(run, allRuns).ifPresent(flags::add);
+
+            System.out.printf(Locale.ROOT, "%5d %4s %11.0f %7.2fx %8.0f%% %4.0f%% %9.0f %4.1f%%  %s%n",
+                    run.parallelism(), run.pinned() ? "có" : "-", run.opsPerSecond(), speedup, efficiency * 100,
+                    run.cpuUtilization() * 100, run.allocPerOp(), run.gcShare() * 100,
+                    "#".repeat((int) Math.min(60, Math.round(speedup * 10))));
+            for (String flag : flags) {
+                System.out.println("      ! " + flag);
+            }
+            csv.printf(Locale.ROOT, "%s,%s,%d,%d,%s,%.1f,%.3f,%.3f,%.3f,%.1f,%.4f,\"%s\"%n",
+                    run.workload().name().toLowerCase(), run.variant(), run.maxPoolSize(), run.parallelism(),
+                    run.pinned(), run.opsPerSecond(), speedup, efficiency, run.cpuUtilization(), run.allocPerOp(),
+                    run.gcShare(), String.join("; ", flags));
+        }
+    }
+
+    // Nguyên nhân nghi vấn tại điểm ngừng scale
+    private static List<String> causes(Run run, Run baseline) {
+        List<String> causes = new ArrayList<>();
+        if (run.cpuUtilization() < IDLE_CPU) {
+            causes.add(String.format(Locale.ROOT, "CPU chỉ dùng %.0f%%: bị chặn bởi thời gian chờ (sleep/IO)"
+                    + " hoặc khóa, thêm carrier không giúp", run.cpuUtilization() * 100));
+        }
+        if (run.gcShare() > MAX_GC_SHARE) {
+            causes.add(String.format(Locale.ROOT, "GC chiếm %.0f%% thời gian", run.gcShare() * 100));
+        }
+        if (baseline.allocPerOp() > 0 && run.allocPerOp() > baseline.allocPerOp() * ALLOC_GROWTH) {
+            causes.add(String.format(Locale.ROOT, "cấp phát tăng từ %.0f lên %.0f byte/op",
+                    baseline.allocPerOp(), run.allocPerOp()));
+        }
+        if (causes.isEmpty() && run.workload().contention == null) {
+            causes.add("không rõ nguyên nhân từ số liệu này, nên xem thêm bằng JFR/async-profiler");
+        }
+        return causes;
+    }
+
+    // So với biến thể không có điểm tranh chấp ở cùng parallelism/maxPoolSize
+    private static Optional<String> contention(Run run, List<Run> allRuns) {
+        Workload workload = run.workload();
+        if (workload.contention == null || !run.variant().equals(workload.variants.get(0))) {
+            return Optional.empty();
+        }
+        return allRuns.stream()
+                .filter(other -> other.workload() == workload && !other.variant().equals(run.variant())
+                        && other.parallelism() == run.parallelism() && other.maxPoolSize() == run.maxPoolSize())
+                .max(Comparator.comparingDouble(Run::opsPerSecond))
+                .filter(other -> other.opsPerSecond() >= run.opsPerSecond() * CONTENTION_GAIN)
+                .map(other -> String.format(Locale.ROOT, "tranh chấp %s: biến thể %s nhanh hơn %.0f%%",
+                        workload.contention, other.variant(),
+                        (other.opsPerSecond() / run.opsPerSecond() - 1) * 100));
+    }
+
+    // ===== JVM con =====
+
+    private static void runWorker(Options options) throws Exception {
+        try (WorkerState state = WorkerState.start(options)) {
+            // Một lượt warmup cho JIT, sau đó lấy lượt có thời gian trung vị
+            state.runOnce();
+            List<Sample> samples = new ArrayList<>();
+            for (int i = 0; i < options.rounds(); i++) {
+                samples.add(measure(state));
+            }
+            samples.sort(Comparator.comparingLong(Sample::wallNanos));
+            Log.flush();
+            System.out.println(samples.get(samples.size() / 2).format());
+        }
+    }
+
+    private static Sample measure(WorkerState state) throws Exception {
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long cpuBefore = os.getProcessCpuTime();
+        long allocBefore = threads.getTotalThreadAllocatedBytes();
+        long gcBefore = gcMillis();
+        long start = System.nanoTime();
+        long ops = state.runOnce();
+        long wall = System.nanoTime() - start;
+        return new Sample(ops, wall, os.getProcessCpuTime() - cpuBefore,
+                Math.max(0, threads.getTotalThreadAllocatedBytes() - allocBefore), gcMillis() - gcBefore);
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(t -> t > 0).sum();
+    }
+
+    // Trạng thái dùng chung giữa các lượt của JVM con (server và client HTTP chỉ tạo một lần)
+    private static final class WorkerState implements AutoCloseable {
+
+        private final Options options;
+        private HttpClient client;
+        private URI uri;
+        private Runnable stopServer = () -> { };
+
+        private WorkerState(Options options) {
+            this.options = options;
+        }
+
+        static WorkerState start(Options options) throws IOException {
+            WorkerState state = new WorkerState(options);
+            switch (options.workload()) {
+                case LOGGING -> Log.setMode("console".equals(options.variant()) ? Log.Mode.CONSOLE : Log.Mode.ASYNC);
+                case HTTP -> state.startHttp();
+                default -> { }
+            }
+            return state;
+        }
+
+        // Server và client cùng một JVM nên dùng chung các carrier thread đang được khảo sát
+        private void startHttp() throws IOException {
+            InetSocketAddress address = new InetSocketAddress("localhost", 0);
+            int port;
+            if ("nio".equals(options.variant())) {
+                NioHttpServer server = NioHttpServer.create(address, 0);
+                server.setThreadFactory(Thread.ofVirtual().name("nio-http-", 0).factory());
+                HttpServerDemo.registerHandlers(server::createContext);
+                server.start();
+                port = server.getAddress().getPort();
+                stopServer = () -> server.stop(0);
+            } else {
+                HttpServer server = HttpServer.create(address, 0);
+                HttpServerDemo.registerHandlers(server::createContext);
+                server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+                server.start();
+                port = server.getAddress().getPort();
+                stopServer = () -> server.stop(0);
+            }
+            uri = URI.create("http://localhost:" + port + "/api/fast");
+            client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build();
+        }
+
+        // Chạy workload một lần, trả về số thao tác đã làm
+        long runOnce() throws Exception {
+            return switch (options.workload()) {
+                case SUBMIT -> runSubmit();
+                case NONBLOCKING -> {
+                    VirtualThreadDemo.demoNonBlockingIO();
+                    yield VirtualThreadDemo.NON_BLOCKING_TASKS;
+                }
+                case LOGGING -> {
+                    LoggingDemo.runWorkload(options.tasks());
+                    yield options.tasks();
+                }
+                case HTTP -> runHttp();
+            };
+        }
+
+        private long runSubmit() throws InterruptedException {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                if ("latch".equals(options.variant())) {
+                    VirtualThreadDemo.submitTasks(executor, options.tasks(), () -> Thread.sleep(10));
+                } else {
+                    // Không có latch chung, close() của executor chờ mọi tác vụ xong
+                    for (int i = 0; i < options.tasks(); i++) {
+                        executor.submit(() -> {
+                            Thread.sleep(10);
+                            return null;
+                        });
+                    }
+                }
+            }
+            return options.tasks();
+        }
+
+        // Closed-loop: concurrency client, mỗi client gửi phần request của mình lần lượt
+        private long runHttp() {
+            HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+            int perClient = Math.max(1, options.requests() / options.concurrency());
+            LongAdder completed = new LongAdder();
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int c = 0; c < options.concurrency(); c++) {
+                    clients.submit(() -> {
+                        for (int i = 0; i < perClient; i++) {
+                            client.send(request, HttpResponse.BodyHandlers.discarding());
+                            completed.increment();
+                        }
+                        return null;
+                    });
+                }
+            }
+            return completed.sum();
+        }
+
+        @Override
+        public void close() {
+            stopServer.run();
+        }
+    }
+}
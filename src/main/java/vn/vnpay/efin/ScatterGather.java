@@ -0,0 +1,204 @@
+package vn.vnpay.efin;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.StructuredTaskScope.Subtask;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fan-out/fan-in các tác vụ con trên virtual thread bằng StructuredTaskScope (preview, cần --enable-preview).
+ *
+ * - ALL_SUCCESSFUL: cần mọi nhánh thành công, một nhánh lỗi thì hủy ngay các nhánh còn lại.
+ * - FIRST_SUCCESS: lấy nhánh thành công đầu tiên, hủy các nhánh còn lại.
+ * Cả hai đều có deadline cho toàn bộ request; hết hạn thì mọi nhánh đang chạy bị interrupt.
+ * Kết quả kèm độ trễ từng nhánh và nhánh nằm trên đường găng (critical path).
+ *
+ * @param <T> kiểu kết quả của mỗi nhánh
+ */
+public class ScatterGather<T> {
+
+    public enum Policy {
+        ALL_SUCCESSFUL,
+        FIRST_SUCCESS
+    }
+
+    public enum Status {
+        SUCCESS,
+        FAILED,
+        TIMED_OUT
+    }
+
+    public enum BranchState {
+        RUNNING,
+        SUCCESS,
+        FAILED,
+        CANCELLED
+    }
+
+    // Trạng thái và độ trễ của một nhánh, tính từ lúc bắt đầu fan-out
+    public record BranchTiming(String name, BranchState state, Duration latency) {}
+
+    /**
+     * Kết quả fan-out. values theo thứ tự fork với ALL_SUCCESSFUL, một phần tử với FIRST_SUCCESS,
+     * rỗng nếu thất bại hoặc hết hạn.
+     */
+    public record Result<T>(Status status, List<T> values, Throwable cause,
+                            List<BranchTiming> branches, Duration elapsed, BranchTiming criticalPath) {
+
+        public boolean isSuccess() {
+            return status == Status.SUCCESS;
+        }
+
+        public Optional<BranchTiming> critical() {
+            return Optional.ofNullable(criticalPath);
+        }
+    }
+
+    private final Policy policy;
+    private final List<Branch<T>> branches = new ArrayList<>();
+
+    private ScatterGather(Policy policy) {
+        this.policy = policy;
+    }
+
+    public static <T> ScatterGather<T> allSuccessful() {
+        return new ScatterGather<>(Policy.ALL_SUCCESSFUL);
+    }
+
+    public static <T> ScatterGather<T> firstSuccess() {
+        return new ScatterGather<>(Policy.FIRST_SUCCESS);
+    }
+
+    public ScatterGather<T> fork(String name, Callable<? extends T> task) {
+        branches.add(new Branch<>(name, task));
+        return this;
+    }
+
+    public Result<T> execute(Duration timeout) throws InterruptedException {
+        return execute(Instant.now().plus(timeout));
+    }
+
+    /**
+     * Chạy mọi nhánh, chờ tới khi biết kết quả hoặc tới deadline. Các nhánh không còn cần thiết
+     * bị interrupt và đã kết thúc khi hàm này trả về.
+     */
+    public Result<T> execute(Instant deadline) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        branches.forEach(b -> b.startNanos = startNanos);
+        return policy == Policy.ALL_SUCCESSFUL ? executeAll(deadline, startNanos) : executeFirst(deadline, startNanos);
+    }
+
+    private Result<T> executeAll(Instant deadline, long startNanos) throws InterruptedException {
+        List<Subtask<T>> subtasks = new ArrayList<>(branches.size());
+        Status status = Status.SUCCESS;
+        Throwable cause = null;
+
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            branches.forEach(b -> subtasks.add(scope.fork(b)));
+            try {
+                scope.joinUntil(deadline);
+                scope.throwIfFailed();
+            } catch (TimeoutException e) {
+                scope.shutdown();
+                status = Status.TIMED_OUT;
+                cause = e;
+            } catch (ExecutionException e) {
+                status = Status.FAILED;
+                cause = e.getCause();
+            }
+        }
+
+        List<T> values = status == Status.SUCCESS ? subtasks.stream().map(Subtask::get).toList() : List.of();
+        return result(status, values, cause, startNanos);
+    }
+
+    private Result<T> executeFirst(Instant deadline, long startNanos) throws InterruptedException {
+        Status status = Status.SUCCESS;
+        Throwable cause = null;
+        List<T> values = List.of();
+
+        try (var scope = new StructuredTaskScope.ShutdownOnSuccess<T>()) {
+            branches.forEach(scope::fork);
+            try {
+                scope.joinUntil(deadline);
+                values = List.of(scope.result());
+            } catch (TimeoutException e) {
+                scope.shutdown();
+                status = Status.TIMED_OUT;
+                cause = e;
+            } catch (ExecutionException e) {
+                status = Status.FAILED;
+                cause = e.getCause();
+            }
+        }
+        return result(status, values, cause, startNanos);
+    }
+
+    private Result<T> result(Status status, List<T> values, Throwable cause, long startNanos) {
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        List<BranchTiming> timings = branches.stream().map(Branch::timing).toList();
+        return new Result<>(status, values, cause, timings, elapsed, criticalPath(status, timings));
+    }
+
+    // Nhánh quyết định thời gian trả lời: nhánh chậm nhất khi cần tất cả, nhánh thắng khi lấy nhánh đầu tiên,
+    // nhánh lỗi sớm nhất khi thất bại
+    private BranchTiming criticalPath(Status status, List<BranchTiming> timings) {
+        return switch (status) {
+            case SUCCESS -> policy == Policy.ALL_SUCCESSFUL
+                    ? timings.stream().max(Comparator.comparing(BranchTiming::latency)).orElse(null)
+                    : timings.stream().filter(t -> t.state() == BranchState.SUCCESS)
+                            .min(Comparator.comparing(BranchTiming::latency)).orElse(null);
+            case FAILED -> timings.stream().filter(t -> t.state() == BranchState.FAILED)
+                    .min(Comparator.comparing(BranchTiming::latency)).orElse(null);
+            case TIMED_OUT -> null;
+        };
+    }
+
+    /**
+     * Một nhánh, ghi lại trạng thái và thời điểm kết thúc của chính nó.
+     */
+    private static final class Branch<T> implements Callable<T> {
+
+        private final String name;
+        private final Callable<? extends T> task;
+        private volatile long startNanos;
+        private volatile long endNanos;
+        private volatile BranchState state = BranchState.RUNNING;
+
+        private Branch(String name, Callable<? extends T> task) {
+            this.name = name;
+            this.task = task;
+        }
+
+        @Override
+        public T call() throws Exception {
+            try {
+                T value = task.call();
+                finish(BranchState.SUCCESS);
+                return value;
+            } catch (Exception e) {
+                // Bị interrupt do scope shutdown (nhánh khác lỗi/thắng hoặc hết deadline) là bị hủy, không phải lỗi
+                boolean cancelled = e instanceof InterruptedException || Thread.currentThread().isInterrupted();
+                finish(cancelled ? BranchState.CANCELLED : BranchState.FAILED);
+                throw e;
+            }
+        }
+
+        private void finish(BranchState finalState) {
+            endNanos = System.nanoTime();
+            state = finalState;
+        }
+
+        private BranchTiming timing() {
+            long end = state == BranchState.RUNNING ? System.nanoTime() : endNanos;
+            return new BranchTiming(name, state, Duration.ofNanos(end - startNanos));
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Dừng server êm (graceful shutdown) thay cho stop(0) cắt ngang request đang xử lý:
+ *
+ * 1. DRAINING: ngừng nhận kết nối mới, /health trả 503 để load balancer ngừng chuyển request tới, request đang xử lý
+ *    (và request tới trên kết nối keep-alive còn mở, trả kèm "Connection: close") được chạy tới khi xong.
+ * 2. Quá drainTimeout: interrupt virtual thread của các request còn lại; StructuredTaskScope trong handler hủy các
+ *    tác vụ con của chúng, handler có ABORT_GRACE để trả lỗi cho client.
+ * 3. STOPPED: server đóng mọi kết nối, in số request đã drain và số request bị hủy.
+ *
+ * Handler được theo dõi qua {@link #track(HttpHandler)}; {@link #installShutdownHook()} chạy quá trình trên khi JVM
+ * nhận SIGTERM/SIGINT (rolling restart), hook chờ drain xong mới để JVM thoát.
+ */
+public class ServerLifecycle {
+
+    public enum Phase {
+        RUNNING,
+        DRAINING,
+        STOPPED
+    }
+
+    /**
+     * Kết quả của một lần dừng: số request đang xử lý khi bắt đầu drain, số request hoàn thành trong lúc drain
+     * (gồm cả request tới trên kết nối keep-alive) và số request bị hủy vì quá hạn.
+     */
+    public record DrainReport(int inFlightAtStart, long drained, long aborted, Duration elapsed) {}
+
+    // Thời gian cho handler bị interrupt trả lỗi về client trước khi server đóng kết nối
+    private static final Duration ABORT_GRACE = Duration.ofSeconds(1);
+    // Không còn request nào trong chừng này thì coi là đã drain xong: kết nối đã accept trước khi đóng socket lắng
+    // nghe có thể tới handler muộn hơn một chút
+    private static final long QUIET_NANOS = Duration.ofMillis(200).toNanos();
+    private static final byte[] UP = "UP".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DRAINING = "DRAINING".getBytes(StandardCharsets.UTF_8);
+
+    private final String name;
+    private final Duration drainTimeout;
+    private volatile IntConsumer stopServer = delaySeconds -> {};
+
+    private final AtomicReference<Phase> phase = new AtomicReference<>(Phase.RUNNING);
+    private final Set<InFlight> active = ConcurrentHashMap.newKeySet();
+    private final LongAdder drained = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private volatile DrainReport report;
+
+    public ServerLifecycle(String name, Duration drainTimeout) {
+        this.name = name;
+        this.drainTimeout = drainTimeout;
+    }
+
+    /**
+     * Hàm dừng của server (HttpServer::stop hoặc NioHttpServer::stop): đóng socket lắng nghe ngay, chờ tối đa
+     * delaySeconds cho các exchange còn lại rồi đóng mọi kết nối.
+     */
+    public ServerLifecycle attach(IntConsumer stopServer) {
+        this.stopServer = stopServer;
+        return this;
+    }
+
+    public ServerLifecycle installShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(Thread.ofPlatform().name(name + "-shutdown-hook").unstarted(this::shutdown));
+        return this;
+    }
+
+    /**
+     * Bọc handler để biết request nào đang xử lý và thread nào cần interrupt khi quá hạn drain.
+     */
+    public HttpHandler track(HttpHandler delegate) {
+        return exchange -> {
+            InFlight request = new InFlight(Thread.currentThread());
+            active.add(request);
+            if (phase.get() != Phase.RUNNING) {
+                // Request tới trên kết nối keep-alive trong lúc drain: vẫn phục vụ nhưng báo client mở kết nối mới
+                exchange.getResponseHeaders().set("Connection", "close");
+            }
+            try {
+                delegate.handle(exchange);
+            } finally {
+                active.remove(request);
+                if (phase.get() != Phase.RUNNING) {
+                    (request.aborted ? aborted : drained).increment();
+                    signal();
+                }
+            }
+        };
+    }
+
+    /**
+     * Handler cho /health: 200 khi đang chạy, 503 khi đang drain để load balancer ngừng chuyển request tới.
+     */
+    public HttpHandler healthHandler() {
+        return this::health;
+    }
+
+    private void health(HttpExchange exchange) throws IOException {
+        boolean running = phase.get() == Phase.RUNNING;
+        byte[] body = running ? UP : DRAINING;
+        if (!running) {
+            exchange.getResponseHeaders().set("Connection", "close");
+        }
+        exchange.sendResponseHeaders(running ? 200 : 503, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * Drain rồi dừng server. Gọi nhiều lần (main và shutdown hook) thì chỉ lần đầu thực hiện, các lần sau chờ
+     * lần đầu xong và trả cùng kết quả.
+     */
+    public DrainReport shutdown() {
+        if (!phase.compareAndSet(Phase.RUNNING, Phase.DRAINING)) {
+            awaitStoppedUninterruptibly();
+            return report;
+        }
+        long start = System.nanoTime();
+        int inFlightAtStart = active.size();
+        System.out.println("[" + name + "] Bắt đầu drain: ngừng nhận kết nối mới, " + inFlightAtStart
+                + " request đang xử lý, chờ tối đa " + drainTimeout.toMillis() + "ms");
+
+        // stop() đóng socket lắng nghe ngay rồi chờ các exchange, chạy riêng để theo dõi request song song
+        int stopDelaySeconds = (int) Math.ceil((drainTimeout.toMillis() + ABORT_GRACE.toMillis()) / 1000.0);
+        Thread stopper = Thread.ofPlatform().name(name + "-stop").start(() -> stopServer.accept(stopDelaySeconds));
+
+        boolean interrupted = false;
+        try {
+            if (!awaitQuiet(start + drainTimeout.toNanos())) {
+                int remaining = 0;
+                for (InFlight request : active) {
+                    request.aborted = true;
+                    request.thread.interrupt();
+                    remaining++;
+                }
+                System.out.println("[" + name + "] Quá hạn drain, hủy " + remaining + " request còn lại");
+                awaitIdle(System.nanoTime() + ABORT_GRACE.toNanos());
+            }
+            // HttpServer.stop của JDK 21 chờ hết delay nếu lúc dừng không còn exchange nào (JDK-8304065);
+            // request đã xong nên gọi stop(0) để đóng các kết nối còn lại ngay
+            stopServer.accept(0);
+            stopper.join();
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+
+        report = new DrainReport(inFlightAtStart, drained.sum(), aborted.sum(),
+                Duration.ofNanos(System.nanoTime() - start));
+        phase.set(Phase.STOPPED);
+        signal();
+        System.out.println("[" + name + "] Đã dừng sau " + report.elapsed().toMillis() + "ms: drain "
+                + report.drained() + " request, hủy " + report.aborted() + " request");
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return report;
+    }
+
+    /**
+     * Chờ server dừng tối đa timeout (dừng do shutdown hook hoặc lời gọi {@link #shutdown()} khác).
+     */
+    public boolean awaitStopped(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        lock.lock();
+        try {
+            while (phase.get() != Phase.STOPPED) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                changed.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Chờ tới khi server dừng hẳn; thread chính gọi để giữ JVM sống khi server chỉ có daemon/virtual thread (NIO).
+     */
+    public void awaitStopped() throws InterruptedException {
+        lock.lock();
+        try {
+            while (phase.get() != Phase.STOPPED) {
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitStoppedUninterruptibly() {
+        lock.lock();
+        try {
+            while (phase.get() != Phase.STOPPED) {
+                changed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean awaitQuiet(long deadlineNanos) throws InterruptedException {
+        while (awaitIdle(deadlineNanos)) {
+            long finished = drained.sum() + aborted.sum();
+            long quietUntil = Math.min(deadlineNanos, System.nanoTime() + QUIET_NANOS);
+            lock.lock();
+            try {
+                long remaining;
+                while (active.isEmpty() && (remaining = quietUntil - System.nanoTime()) > 0) {
+                    changed.awaitNanos(remaining);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (active.isEmpty() && drained.sum() + aborted.sum() == finished) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean awaitIdle(long deadlineNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            while (!active.isEmpty()) {
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                changed.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signal() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Phase phase() {
+        return phase.get();
+    }
+
+    public int inFlight() {
+        return active.size();
+    }
+
+    /**
+     * Kết quả của lần dừng, null nếu server chưa dừng.
+     */
+    public DrainReport report() {
+        return report;
+    }
+
+    // Một request đang xử lý và thread đang chạy nó
+    private static final class InFlight {
+
+        final Thread thread;
+        volatile boolean aborted;
+
+        InFlight(Thread thread) {
+            this.thread = thread;
+        }
+    }
+}
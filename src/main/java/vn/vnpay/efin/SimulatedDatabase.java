@@ -0,0 +1,73 @@
+package vn.vnpay.efin;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Database giả lập chạy trong process: giới hạn số kết nối mở đồng thời và có độ trễ mỗi truy vấn,
+ * giống một database thật đứng sau connection pool.
+ */
+public class SimulatedDatabase {
+
+    private final int maxConnections;
+    private final int minLatencyMs;
+    private final int maxLatencyMs;
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    public SimulatedDatabase(int maxConnections, int minLatencyMs, int maxLatencyMs) {
+        this.maxConnections = maxConnections;
+        this.minLatencyMs = minLatencyMs;
+        this.maxLatencyMs = maxLatencyMs;
+    }
+
+    /**
+     * Mở kết nối mới, thất bại nếu database đã đủ số kết nối tối đa.
+     */
+    public Connection connect() throws SQLException {
+        int current;
+        do {
+            current = openConnections.get();
+            if (current >= maxConnections) {
+                throw new SQLException("Quá số kết nối tối đa (" + maxConnections + ")");
+            }
+        } while (!openConnections.compareAndSet(current, current + 1));
+        return new Connection();
+    }
+
+    public int openConnections() {
+        return openConnections.get();
+    }
+
+    public int maxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Một kết nối tới database giả lập; mỗi lần query tốn minLatencyMs-maxLatencyMs.
+     */
+    public class Connection implements AutoCloseable {
+
+        private volatile boolean closed;
+
+        private Connection() {
+        }
+
+        public String query(String sql) throws SQLException, InterruptedException {
+            if (closed) {
+                throw new SQLException("Kết nối đã đóng");
+            }
+            int delay = ThreadLocalRandom.current().nextInt(minLatencyMs, maxLatencyMs + 1);
+            BlockingStrategy.current().block(delay);
+            return sql + " hoàn thành sau " + delay + "ms";
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                openConnections.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package vn.vnpay.efin;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * So sánh thời gian khởi động của HttpServerDemo theo chế độ chạy, mỗi lần chạy là một JVM mới:
+ * - cold: mặc định, chỉ có CDS archive của JDK.
+ * - cds: thêm AppCDS archive tạo từ lần chạy huấn luyện (-Dhttp.training=true), class của app, thư viện và các
+ *   class JDK mà server dùng được nạp sẵn từ archive.
+ * - warmup: gọi các handler trong bộ nhớ trước khi mở cổng ({@link HandlerWarmup}).
+ * - cds+warmup: cả hai.
+ *
+ * Đo từ phía client, tính từ lúc tạo process: thời gian tới response đầu tiên, rồi tải closed-loop trong duration
+ * giây với thông lượng theo từng cửa sổ 100ms. Thời gian tới thông lượng đỉnh là lúc có 3 cửa sổ liên tiếp đạt 90%
+ * mức ổn định (trung vị của 1/3 cuối lần chạy). Các mốc phía server (mở cổng, request đầu tiên) đọc từ /metrics.
+ * Client và server chạy chung máy nên trên máy ít core, hai bên tranh CPU với nhau như nhau ở mọi chế độ.
+ *
+ * AppCDS chỉ nhận classpath gồm các file jar, nên chạy qua Gradle (tự tạo archive trước):
+ * ./gradlew startupBenchmark -PstartupArgs="runs=5 duration=10 modes=cold,cds,warmup,cds+warmup"
+ */
+public class StartupBenchmark {
+
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int STEADY_WINDOWS = 3;
+    private static final double PEAK_FRACTION = 0.9;
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final Duration START_TIMEOUT = Duration.ofSeconds(60);
+
+    enum Mode {
+        COLD("cold", false, false),
+        CDS("cds", true, false),
+        WARMUP("warmup", false, true),
+        CDS_WARMUP("cds+warmup", true, true);
+
+        private final String label;
+        private final boolean cds;
+        private final boolean warmup;
+
+        Mode(String label, boolean cds, boolean warmup) {
+            this.label = label;
+            this.cds = cds;
+            this.warmup = warmup;
+        }
+
+        static Mode parse(String label) {
+            return Arrays.stream(values()).filter(m -> m.label.equalsIgnoreCase(label.trim())).findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Chế độ không hợp lệ: " + label));
+        }
+    }
+
+    public record Options(List<Mode> modes, int runs, Duration duration, int concurrency, String endpoint, int port,
+                          Path archive, long warmupMillis, Path out) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq > 0) {
+                    values.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+                }
+            }
+            return new Options(
+                    Arrays.stream(values.getOrDefault("modes", "cold,cds,warmup,cds+warmup").split(","))
+                            .map(Mode::parse).toList(),
+                    Integer.parseInt(values.getOrDefault("runs", "3")),
+                    Duration.ofSeconds(Long.parseLong(values.getOrDefault("duration", "10"))),
+                    Integer.parseInt(values.getOrDefault("concurrency", "32")),
+                    values.getOrDefault("endpoint", "/api/fast"),
+                    Integer.parseInt(values.getOrDefault("port", "8090")),
+                    Path.of(values.getOrDefault("archive", "build/cds/app.jsa")),
+                    Long.parseLong(values.getOrDefault("warmupMillis", "2000")),
+                    Path.of(values.getOrDefault("out", "build/startup/startup.csv")));
+        }
+    }
+
+    // Kết quả một lần chạy; thời gian tính bằng millis từ lúc tạo process, -1 nếu không có
+    record Run(Mode mode, long firstResponseMillis, long serverReadyMillis, long serverFirstRequestMillis,
+               long timeToPeakMillis, double firstSecondRps, double steadyRps, long firstSecondP99Micros,
+               long steadyP99Micros, long errors) {}
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        List<Mode> modes = options.modes();
+        if (modes.stream().anyMatch(m -> m.cds)) {
+            Optional<String> problem = cdsProblem();
+            if (problem.isPresent()) {
+                System.out.println("Bỏ qua các chế độ AppCDS: " + problem.get());
+                modes = modes.stream().filter(m -> !m.cds).toList();
+            } else {
+                ensureArchive(options);
+            }
+        }
+        System.out.println("Khởi động HttpServerDemo theo chế độ " + modes.stream().map(m -> m.label).toList()
+                + ", " + options.runs() + " lần mỗi chế độ, tải closed-loop " + options.concurrency() + " client tới "
+                + options.endpoint() + " trong " + options.duration().toSeconds() + " giây");
+
+        // Lần đầu chỉ để JIT của chính JVM client nóng lên, không tính vào kết quả
+        System.out.println("Lượt làm nóng client (bỏ qua kết quả)...");
+        launch(options, modes.get(0));
+
+        List<Run> runs = new ArrayList<>();
+        for (int round = 1; round <= options.runs(); round++) {
+            // Xen kẽ các chế độ trong mỗi lượt để nhiễu của máy chia đều cho các chế độ
+            for (Mode mode : modes) {
+                Optional<Run> run = launch(options, mode);
+                if (run.isPresent()) {
+                    Run r = run.get();
+                    runs.add(r);
+                    System.out.printf("  lượt %d %-11s response đầu %5dms, đỉnh sau %7s, ổn định %7.0f req/s%n",
+                            round, mode.label, r.firstResponseMillis(), millis(r.timeToPeakMillis()), r.steadyRps());
+                }
+            }
+        }
+        report(modes, runs, options.out());
+    }
+
+    // AppCDS (archive động) không nhận thư mục không rỗng trong classpath
+    private static Optional<String> cdsProblem() {
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            Path path = Path.of(entry);
+            if (!Files.isDirectory(path)) {
+                continue;
+            }
+            // Đóng stream để trả lại file descriptor của thư mục
+            try (Stream<Path> entries = Files.list(path)) {
+                if (entries.findAny().isPresent()) {
+                    return Optional.of("classpath có thư mục " + entry + ", cần chạy từ jar (./gradlew startupBenchmark)");
+                }
+            } catch (IOException e) {
+                return Optional.of("không đọc được " + entry);
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Tạo lại archive khi chưa có hoặc cũ hơn jar trong classpath (JVM sẽ từ chối archive không khớp classpath)
+    private static void ensureArchive(Options options) throws IOException, InterruptedException {
+        Path archive = options.archive();
+        long newestJar = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+                .map(File::new).filter(File::isFile).mapToLong(File::lastModified).max().orElse(0);
+        if (Files.exists(archive) && Files.getLastModifiedTime(archive).toMillis() >= newestJar) {
+            return;
+        }
+        System.out.println("Tạo AppCDS archive " + archive + " bằng lần chạy huấn luyện...");
+        if (archive.getParent() != null) {
+            Files.createDirectories(archive.getParent());
+        }
+        List<String> command = javaCommand();
+        command.add("-XX:ArchiveClassesAtExit=" + archive);
+        command.add("-Xlog:cds=off");
+        command.add("-Dhttp.training=true");
+        command.add("-Dhttp.port=" + options.port());
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), HttpServerDemo.class.getName()));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Deque<String> tail = tail(process);
+        if (process.waitFor() != 0 || !Files.exists(archive)) {
+            tail.forEach(line -> System.out.println("    | " + line));
+            throw new IOException("Không tạo được AppCDS archive");
+        }
+    }
+
+    private static List<String> javaCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+        // Giữ nguyên cấu hình heap/GC của JVM cha để các chế độ so sánh được với nhau
+        ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .filter(arg -> arg.startsWith("-Xm") || arg.startsWith("-XX:+Use"))
+                .forEach(command::add);
+        command.add("--enable-preview");
+        return command;
+    }
+
+    private static Optional<Run> launch(Options options, Mode mode) throws IOException, InterruptedException {
+        List<String> command = javaCommand();
+        if (mode.cds) {
+            command.add("-XX:SharedArchiveFile=" + options.archive());
+        }
+        if (mode.warmup) {
+            command.add("-Dhttp.warmup=true");
+            command.add("-Dhttp.warmupMillis=" + options.warmupMillis());
+        }
+        command.addAll(List.of("-Dhttp.port=" + options.port(), "-Dhttp.runSeconds=0", "-Dhttp.drainSeconds=2",
+                "-cp", System.getProperty("java.class.path"), HttpServerDemo.class.getName()));
+
+        URI base = URI.create("http://localhost:" + options.port());
+        long launchNanos = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Deque<String> tail = tail(process);
+        try (HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build()) {
+            long firstResponseNanos = awaitFirstResponse(client, base.resolve(options.endpoint()), launchNanos);
+            if (firstResponseNanos < 0) {
+                System.out.println("    Server (" + mode.label + ") không phản hồi sau " + START_TIMEOUT.toSeconds()
+                        + " giây, các dòng cuối:");
+                tail.forEach(line -> System.out.println("    | " + line));
+                return Optional.empty();
+            }
+            Load load = runLoad(client, base.resolve(options.endpoint()), options, launchNanos, firstResponseNanos);
+            Map<String, Long> phases = serverPhases(client, base);
+            return Optional.of(load.toRun(mode, firstResponseNanos, phases));
+        } finally {
+            // SIGTERM: server drain rồi thoát, cổng được giải phóng trước lần chạy sau
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    // Giữ vài dòng cuối của output JVM con để báo lỗi; đọc liên tục để JVM con không bị nghẽn khi ghi stdout
+    private static Deque<String> tail(Process process) {
+        Deque<String> tail = new ArrayDeque<>();
+        Thread.ofVirtual().start(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    synchronized (tail) {
+                        tail.addLast(line);
+                        if (tail.size() > 20) {
+                            tail.removeFirst();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // JVM con đã thoát
+            }
+        });
+        return tail;
+    }
+
+    // Thử gọi liên tục tới khi có response thành công, trả về nanos từ lúc tạo process (-1 nếu quá hạn)
+    private static long awaitFirstResponse(HttpClient client, URI uri, long launchNanos) throws InterruptedException {
+        long deadline = launchNanos + START_TIMEOUT.toNanos();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(5)).GET().build();
+        while (System.nanoTime() < deadline) {
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return System.nanoTime() - launchNanos;
+                }
+            } catch (ConnectException | HttpTimeoutException e) {
+                // Cổng chưa mở
+            } catch (IOException e) {
+                // Kết nối bị đóng khi server đang khởi động, thử lại
+            }
+            Thread.sleep(5);
+        }
+        return -1;
+    }
+
+    // Số liệu tải của một lần chạy: số request theo cửa sổ 100ms (tính từ lúc tạo process), độ trễ theo từng giây
+    private record Load(AtomicLongArray windows, int firstWindow, int lastWindow, List<Histogram> seconds,
+                        long errors) {
+
+        Run toRun(Mode mode, long firstResponseNanos, Map<String, Long> phases) {
+            long[] counts = new long[lastWindow - firstWindow];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = windows.get(firstWindow + i);
+            }
+            // Bỏ cửa sổ cuối (có thể chưa trọn) khi lấy mức ổn định
+            long[] steadyCounts = Arrays.copyOfRange(counts, counts.length * 2 / 3, Math.max(counts.length - 1,
+                    counts.length * 2 / 3 + 1));
+            Arrays.sort(steadyCounts);
+            double steadyPerWindow = steadyCounts[steadyCounts.length / 2];
+            long timeToPeak = -1;
+            for (int i = 0; i + STEADY_WINDOWS <= counts.length; i++) {
+                boolean reached = true;
+                for (int j = i; j < i + STEADY_WINDOWS; j++) {
+                    reached &= counts[j] >= PEAK_FRACTION * steadyPerWindow;
+                }
+                if (reached) {
+                    timeToPeak = TimeUnit.NANOSECONDS.toMillis((firstWindow + i + 1) * WINDOW_NANOS);
+                    break;
+                }
+            }
+
+            Histogram steady = new Histogram(MAX_LATENCY_MICROS, 3);
+            seconds.subList(seconds.size() * 2 / 3, seconds.size()).forEach(steady::add);
+            Histogram firstSecond = seconds.get(0);
+            double windowsPerSecond = TimeUnit.SECONDS.toNanos(1) / (double) WINDOW_NANOS;
+            return new Run(mode, TimeUnit.NANOSECONDS.toMillis(firstResponseNanos),
+                    phases.getOrDefault("ready", -1L), phases.getOrDefault("first-request", -1L), timeToPeak,
+                    firstSecond.getTotalCount(), steadyPerWindow * windowsPerSecond,
+                    firstSecond.getValueAtPercentile(99), steady.getValueAtPercentile(99), errors);
+        }
+    }
+
+    private static Load runLoad(HttpClient client, URI uri, Options options, long launchNanos, long startNanos)
+            throws InterruptedException {
+        long endNanos = startNanos + options.duration().toNanos();
+        AtomicLongArray windows = new AtomicLongArray((int) (endNanos / WINDOW_NANOS) + 2);
+        Recorder latency = new Recorder(MAX_LATENCY_MICROS, 3);
+        List<Histogram> seconds = new ArrayList<>();
+        LongAdder errors = new LongAdder();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(10)).GET().build();
+
+        // Mỗi giây lấy histogram độ trễ của giây vừa qua
+        Thread sampler = Thread.ofVirtual().start(() -> {
+            long next = launchNanos + startNanos;
+            try {
+                while (true) {
+                    next += TimeUnit.SECONDS.toNanos(1);
+                    long sleep = next - System.nanoTime();
+                    if (sleep > 0) {
+                        Thread.sleep(Duration.ofNanos(sleep));
+                    }
+                    seconds.add(latency.getIntervalHistogram());
+                    if (next >= launchNanos + endNanos) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < options.concurrency(); c++) {
+                clients.submit(() -> {
+                    long now;
+                    while ((now = System.nanoTime()) - launchNanos < endNanos) {
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            long done = System.nanoTime();
+                            if (response.statusCode() == 200) {
+                                windows.incrementAndGet((int) ((done - launchNanos) / WINDOW_NANOS));
+                                latency.recordValue(Math.min(MAX_LATENCY_MICROS,
+                                        TimeUnit.NANOSECONDS.toMicros(done - now)));
+                            } else {
+                                errors.increment();
+                            }
+                        } catch (IOException e) {
+                            errors.increment();
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+        sampler.join();
+        return new Load(windows, (int) (startNanos / WINDOW_NANOS), (int) (endNanos / WINDOW_NANOS), seconds,
+                errors.sum());
+    }
+
+    // Các mốc khởi động server tự ghi (startup_phase_seconds trong /metrics), đổi ra millis
+    private static Map<String, Long> serverPhases(HttpClient client, URI base) {
+        Map<String, Long> phases = new HashMap<>();
+        try {
+            String body = client.send(HttpRequest.newBuilder(base.resolve("/metrics")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString()).body();
+            for (String line : body.split("\n")) {
+                if (line.startsWith("startup_phase_seconds{phase=\"")) {
+                    int nameStart = line.indexOf('"') + 1;
+                    String name = line.substring(nameStart, line.indexOf('"', nameStart));
+                    double seconds = Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+                    phases.put(name, Math.round(seconds * 1000));
+                }
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            // Không có số liệu phía server thì chỉ báo số liệu phía client
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return phases;
+    }
+
+    private static void report(List<Mode> modes, List<Run> runs, Path out) throws IOException {
+        System.out.println("\nTrung vị theo chế độ (thời gian tính từ lúc tạo process):");
+        System.out.printf("%-11s %10s %9s %12s %9s %12s %11s %10s %10s %6s%n", "chế độ", "resp đầu", "mở cổng",
+                "req đầu (sv)", "tới đỉnh", "req giây đầu", "ổn định/s", "p99 giây đầu", "p99 ổn định", "lỗi");
+        Map<Mode, List<Run>> byMode = new LinkedHashMap<>();
+        modes.forEach(mode -> byMode.put(mode, runs.stream().filter(r -> r.mode() == mode).toList()));
+        byMode.forEach((mode, list) -> {
+            if (list.isEmpty()) {
+                return;
+            }
+            System.out.printf("%-11s %10s %9s %12s %9s %12d %11.0f %10s %10s %6d%n", mode.label,
+                    millis(median(list, Run::firstResponseMillis)), millis(median(list, Run::serverReadyMillis)),
+                    millis(median(list, Run::serverFirstRequestMillis)), millis(median(list, Run::timeToPeakMillis)),
+                    median(list, r -> (long) r.firstSecondRps()), (double) median(list, r -> (long) r.steadyRps()),
+                    micros(median(list, Run::firstSecondP99Micros)), micros(median(list, Run::steadyP99Micros)),
+                    list.stream().mapToLong(Run::errors).sum());
+        });
+
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+            csv.println("mode,firstResponseMillis,serverReadyMillis,serverFirstRequestMillis,timeToPeakMillis,"
+                    + "firstSecondRps,steadyRps,firstSecondP99Micros,steadyP99Micros,errors");
+            for (Run r : runs) {
+                csv.println(String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%.0f,%.0f,%d,%d,%d", r.mode().label,
+                        r.firstResponseMillis(), r.serverReadyMillis(), r.serverFirstRequestMillis(),
+                        r.timeToPeakMillis(), r.firstSecondRps(), r.steadyRps(), r.firstSecondP99Micros(),
+                        r.steadyP99Micros(), r.errors()));
+            }
+        }
+        System.out.println("\nĐã ghi CSV: " + out.toAbsolutePath());
+    }
+
+    private static long median(List<Run> runs, ToLongFunction<Run> value) {
+        long[] values = runs.stream().mapToLong(value).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private static String millis(long millis) {
+        return millis < 0 ? "-" : millis + "ms";
+    }
+
+    private static String micros(long micros) {
+        return micros >= 1000 ? String.format(Locale.ROOT, "%.1fms", micros / 1000.0) : micros + "µs";
+    }
+}
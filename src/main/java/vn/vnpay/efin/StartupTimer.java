@@ -0,0 +1,93 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Đo các mốc khởi động của server, tính từ lúc process bắt đầu (gồm cả thời gian JVM tự khởi động):
+ * vào main, warmup xong, mở cổng (ready) và request thật đầu tiên hoàn thành.
+ *
+ * Mốc request đầu tiên chỉ tính sau {@link #ready()}, nên request giả của warmup không được tính.
+ * Thời gian tới thông lượng đỉnh phải đo từ phía client, xem {@link StartupBenchmark}.
+ */
+public class StartupTimer {
+
+    /**
+     * Một mốc khởi động, millis tính từ lúc process bắt đầu.
+     */
+    public record Phase(String name, long millis) {}
+
+    private final long processStartMillis = processStartMillis();
+    private final List<Phase> phases = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean firstRequestSeen = new AtomicBoolean();
+    private volatile boolean ready;
+
+    public Phase mark(String name) {
+        Phase phase = new Phase(name, System.currentTimeMillis() - processStartMillis);
+        phases.add(phase);
+        return phase;
+    }
+
+    /**
+     * Cổng đã mở, từ đây request hoàn thành đầu tiên là request thật.
+     */
+    public void ready() {
+        mark("ready");
+        ready = true;
+        System.out.println("Khởi động: " + summary());
+    }
+
+    /**
+     * Bọc handler để ghi mốc request đầu tiên; sau mốc đó chỉ còn một lần đọc biến volatile mỗi request.
+     */
+    public HttpHandler track(HttpHandler delegate) {
+        return exchange -> {
+            try {
+                delegate.handle(exchange);
+            } finally {
+                if (ready && !firstRequestSeen.get() && firstRequestSeen.compareAndSet(false, true)) {
+                    Phase phase = mark("first-request");
+                    System.out.println("Request đầu tiên hoàn thành sau " + phase.millis()
+                            + "ms kể từ lúc process bắt đầu (" + exchange.getRequestURI() + ")");
+                }
+            }
+        };
+    }
+
+    // Trên Linux tính từ /proc (độ chính xác 10ms); startInstant của ProcessHandle lấy mốc boot theo giây nên có thể
+    // lệch tới 1 giây, còn RuntimeMXBean tốn vài chục ms nạp class JMX ngay trong lúc khởi động
+    private static long processStartMillis() {
+        long now = System.currentTimeMillis();
+        try {
+            String stat = Files.readString(Path.of("/proc/self/stat"));
+            // Các trường sau "(tên process)": trường thứ 20 là starttime, tính bằng clock tick (USER_HZ = 100)
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            double uptimeSeconds = Double.parseDouble(Files.readString(Path.of("/proc/uptime")).split(" ")[0]);
+            return now - (Math.round(uptimeSeconds * 1000) - Long.parseLong(fields[19]) * 10);
+        } catch (IOException | RuntimeException e) {
+            return ProcessHandle.current().info().startInstant().orElseGet(Instant::now).toEpochMilli();
+        }
+    }
+
+    public List<Phase> phases() {
+        return List.copyOf(phases);
+    }
+
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : phases) {
+            if (!sb.isEmpty()) {
+                sb.append(", ");
+            }
+            sb.append(phase.name()).append(' ').append(phase.millis()).append("ms");
+        }
+        return sb.toString();
+    }
+}
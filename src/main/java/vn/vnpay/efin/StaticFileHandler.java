@@ -0,0 +1,94 @@
+package vn.vnpay.efin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Phục vụ file tĩnh dưới một thư mục gốc.
+ *
+ * Trên NioHttpServer, nội dung file đi thẳng từ page cache ra socket bằng FileChannel.transferTo (sendfile),
+ * không chép qua heap. Trên com.sun.net.httpserver (không lộ SocketChannel), file được đọc theo từng đoạn
+ * tối đa 64KB rồi ghi ra OutputStream của exchange.
+ */
+public class StaticFileHandler implements HttpHandler {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final String prefix;
+
+    /**
+     * @param prefix phần đầu của path được bỏ đi trước khi ghép với root, ví dụ "/static/"
+     */
+    public StaticFileHandler(Path root, String prefix) {
+        this.root = root.toAbsolutePath().normalize();
+        this.prefix = prefix;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+        Path file = resolve(exchange.getRequestURI().getPath());
+        if (file == null || !Files.isRegularFile(file) || !Files.isReadable(file)) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            String contentType = Files.probeContentType(file);
+            exchange.getResponseHeaders().set("Content-Type",
+                    contentType != null ? contentType : "application/octet-stream");
+            // Độ dài 0 với HttpExchange nghĩa là chunked, file rỗng hoặc HEAD thì gửi không có body
+            boolean noBody = size == 0 || "HEAD".equals(exchange.getRequestMethod());
+            exchange.sendResponseHeaders(200, noBody ? -1 : size);
+            if (noBody) {
+                exchange.close();
+            } else if (exchange instanceof NioHttpExchange nio) {
+                nio.transferFrom(channel, 0, size);
+                nio.getResponseBody().close();
+            } else {
+                copy(channel, size, exchange.getResponseBody());
+            }
+        }
+    }
+
+    // Chặn path traversal: file phải nằm trong root sau khi chuẩn hóa
+    private Path resolve(String path) {
+        if (path == null || !path.startsWith(prefix)) {
+            return null;
+        }
+        Path file = root.resolve(path.substring(prefix.length())).normalize();
+        return file.startsWith(root) ? file : null;
+    }
+
+    private static void copy(FileChannel channel, long size, OutputStream os) throws IOException {
+        try (os) {
+            byte[] chunk = new byte[(int) Math.min(size, COPY_BUFFER_SIZE)];
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            long position = 0;
+            while (position < size) {
+                buffer.clear();
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    throw new IOException("File ngắn hơn độ dài đã khai báo");
+                }
+                os.write(chunk, 0, n);
+                position += n;
+            }
+        }
+    }
+}
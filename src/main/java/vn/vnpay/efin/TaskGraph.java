@@ -0,0 +1,378 @@
+package vn.vnpay.efin;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Chạy một đồ thị các bước phụ thuộc nhau trên virtual thread.
+ *
+ * Mỗi bước khai báo các bước đầu vào; bước được chạy ngay khi mọi đầu vào đã xong, nên tổng thời gian bằng
+ * chuỗi phụ thuộc dài nhất chứ không phụ thuộc thứ tự viết code. Vì bước chỉ tham chiếu được các bước đã khai
+ * báo trước nó, đồ thị luôn không có chu trình.
+ *
+ * - Mỗi bước có thể có timeout riêng (hết hạn thì thread của bước bị interrupt) và fallback khi lỗi/hết hạn.
+ * - Một bước lỗi không có fallback thì các bước đang chạy bị hủy, các bước chưa chạy bị bỏ qua.
+ * - Kết quả kèm thời điểm bắt đầu/kết thúc từng bước và đường găng (chuỗi bước quyết định tổng thời gian).
+ */
+public class TaskGraph {
+
+    /**
+     * Thân của một bước; đọc kết quả các bước đầu vào qua {@link Inputs}.
+     */
+    @FunctionalInterface
+    public interface StepFunction<T> {
+        T run(Inputs inputs) throws Exception;
+    }
+
+    /**
+     * Giá trị thay thế khi bước lỗi hoặc hết hạn (cause là TimeoutException).
+     */
+    @FunctionalInterface
+    public interface Fallback<T> {
+        T recover(Throwable cause) throws Exception;
+    }
+
+    public enum Status {
+        SUCCESS,
+        FAILED,
+        TIMED_OUT
+    }
+
+    public enum StepState {
+        PENDING,
+        RUNNING,
+        SUCCESS,
+        // Bước lỗi hoặc hết hạn nhưng đã dùng giá trị từ fallback
+        FALLBACK,
+        FAILED,
+        TIMED_OUT,
+        // Bị hủy khi đang chạy hoặc không được chạy vì bước khác lỗi / hết deadline của cả đồ thị
+        CANCELLED
+    }
+
+    // start/end tính từ lúc bắt đầu chạy đồ thị; bước chưa chạy có start = end = null
+    public record StepTiming(String name, StepState state, Duration start, Duration end) {
+        public Duration latency() {
+            return start == null ? Duration.ZERO : end.minus(start);
+        }
+    }
+
+    public record Result(Status status, Throwable cause, List<StepTiming> steps,
+                         List<StepTiming> criticalPath, Duration elapsed) {
+
+        public boolean isSuccess() {
+            return status == Status.SUCCESS;
+        }
+    }
+
+    private final List<Step<?>> steps = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // Các trường dưới đây chỉ truy cập khi giữ lock
+    private long startNanos;
+    private int unfinished;
+    private Throwable failure;
+    private boolean executed;
+
+    public <T> Step<T> step(String name, StepFunction<T> function, Step<?>... inputs) {
+        for (Step<?> input : inputs) {
+            if (input.graph() != this) {
+                throw new IllegalArgumentException("Bước " + input.name + " không thuộc đồ thị này");
+            }
+        }
+        Step<T> step = new Step<>(name, function, List.of(inputs));
+        for (Step<?> input : inputs) {
+            input.dependents.add(step);
+        }
+        steps.add(step);
+        return step;
+    }
+
+    /**
+     * Chạy đồ thị, chờ tới khi mọi bước xong, có bước lỗi hoặc hết deadline. Khi trả về, không còn bước nào
+     * đang chạy. Mỗi đồ thị chỉ chạy được một lần.
+     */
+    public Result execute(Duration deadline) throws InterruptedException {
+        lock.lock();
+        try {
+            if (executed) {
+                throw new IllegalStateException("TaskGraph chỉ chạy được một lần");
+            }
+            executed = true;
+            startNanos = System.nanoTime();
+            unfinished = steps.size();
+            for (Step<?> step : steps) {
+                if (step.inputs.isEmpty()) {
+                    step.launch();
+                }
+            }
+            Status status = awaitCompletion(startNanos + deadline.toNanos());
+            return result(status);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Gọi khi đang giữ lock. Thread gọi execute đồng thời làm watchdog: interrupt các bước quá timeout riêng
+    private Status awaitCompletion(long deadlineNanos) throws InterruptedException {
+        try {
+            while (unfinished > 0 && failure == null) {
+                long now = System.nanoTime();
+                if (now >= deadlineNanos) {
+                    failure = new TimeoutException("Quá deadline của đồ thị");
+                    cancelAll();
+                    return Status.TIMED_OUT;
+                }
+                long wakeUp = deadlineNanos;
+                for (Step<?> step : steps) {
+                    if (step.state == StepState.RUNNING && step.deadlineNanos > 0 && !step.expired) {
+                        if (now >= step.deadlineNanos) {
+                            step.expire();
+                        } else {
+                            wakeUp = Math.min(wakeUp, step.deadlineNanos);
+                        }
+                    }
+                }
+                changed.awaitNanos(wakeUp - now);
+            }
+        } catch (InterruptedException e) {
+            cancelAll();
+            throw e;
+        }
+        if (failure != null) {
+            cancelAll();
+            return Status.FAILED;
+        }
+        return Status.SUCCESS;
+    }
+
+    // Gọi khi đang giữ lock: interrupt các bước đang chạy, chờ chúng kết thúc; bước chưa chạy bị đánh dấu hủy
+    private void cancelAll() throws InterruptedException {
+        List<Thread> running = new ArrayList<>();
+        for (Step<?> step : steps) {
+            if (step.state == StepState.RUNNING) {
+                step.thread.interrupt();
+                running.add(step.thread);
+            } else if (step.state == StepState.PENDING) {
+                step.state = StepState.CANCELLED;
+            }
+        }
+        // Nhả lock để các bước bị interrupt ghi được trạng thái cuối
+        lock.unlock();
+        try {
+            for (Thread thread : running) {
+                thread.join();
+            }
+        } finally {
+            lock.lock();
+        }
+    }
+
+    private Result result(Status status) {
+        long end = System.nanoTime();
+        List<StepTiming> timings = steps.stream().map(s -> s.timing(end)).toList();
+        return new Result(status, status == Status.SUCCESS ? null : failure, timings,
+                criticalPath(), Duration.ofNanos(end - startNanos));
+    }
+
+    // Đi ngược từ bước kết thúc muộn nhất, mỗi lần chọn đầu vào kết thúc muộn nhất (đầu vào làm bước phải chờ)
+    private List<StepTiming> criticalPath() {
+        Step<?> current = steps.stream().filter(s -> s.endNanos > 0)
+                .max(Comparator.comparingLong(s -> s.endNanos)).orElse(null);
+        List<StepTiming> path = new ArrayList<>();
+        long end = System.nanoTime();
+        while (current != null) {
+            path.add(0, current.timing(end));
+            current = current.inputs.stream().filter(s -> s.endNanos > 0)
+                    .max(Comparator.comparingLong(s -> s.endNanos)).orElse(null);
+        }
+        return path;
+    }
+
+    /**
+     * Cho bước đọc kết quả của các bước đầu vào đã khai báo.
+     */
+    public static final class Inputs {
+
+        private final Step<?> owner;
+
+        private Inputs(Step<?> owner) {
+            this.owner = owner;
+        }
+
+        public <T> T get(Step<T> input) {
+            if (!owner.inputs.contains(input)) {
+                throw new IllegalArgumentException(input.name + " không phải đầu vào của " + owner.name);
+            }
+            return input.value;
+        }
+    }
+
+    /**
+     * Một bước trong đồ thị.
+     */
+    public final class Step<T> {
+
+        private final String name;
+        private final StepFunction<T> function;
+        private final List<Step<?>> inputs;
+        private final List<Step<?>> dependents = new ArrayList<>();
+        private Duration timeout;
+        private Fallback<T> fallback;
+
+        // Các trường dưới đây ghi khi giữ lock của đồ thị; value được đọc bởi bước sau (happens-before qua lock)
+        private volatile T value;
+        private StepState state = StepState.PENDING;
+        private int pendingInputs;
+        private Thread thread;
+        private long beginNanos;
+        private long deadlineNanos;
+        private long endNanos;
+        private boolean expired;
+
+        private Step(String name, StepFunction<T> function, List<Step<?>> inputs) {
+            this.name = name;
+            this.function = function;
+            this.inputs = inputs;
+            this.pendingInputs = inputs.size();
+        }
+
+        public Step<T> timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Step<T> fallback(Fallback<T> fallback) {
+            this.fallback = fallback;
+            return this;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * Kết quả của bước sau khi đồ thị chạy xong (null nếu bước không thành công).
+         */
+        public T value() {
+            return value;
+        }
+
+        private TaskGraph graph() {
+            return TaskGraph.this;
+        }
+
+        // Gọi khi đang giữ lock
+        private void launch() {
+            state = StepState.RUNNING;
+            beginNanos = System.nanoTime();
+            deadlineNanos = timeout == null ? 0 : beginNanos + timeout.toNanos();
+            thread = Thread.ofVirtual().name("task-graph-" + name).start(this::run);
+        }
+
+        // Gọi khi đang giữ lock
+        private void expire() {
+            expired = true;
+            thread.interrupt();
+        }
+
+        private void run() {
+            T result = null;
+            Throwable error = null;
+            try {
+                result = function.run(new Inputs(this));
+            } catch (Throwable e) {
+                error = e;
+            }
+
+            StepState outcome;
+            // Bước nuốt interrupt rồi trả về muộn vẫn tính là hết hạn
+            if (isExpired()) {
+                error = new TimeoutException(name + " quá timeout " + timeout.toMillis() + "ms");
+                outcome = StepState.TIMED_OUT;
+            } else if (error == null) {
+                value = result;
+                finish(StepState.SUCCESS, null);
+                return;
+            } else {
+                outcome = StepState.FAILED;
+            }
+
+            if (isCancelled()) {
+                outcome = StepState.CANCELLED;
+            } else if (fallback != null) {
+                // Xóa cờ interrupt do timeout để fallback chạy được bình thường
+                Thread.interrupted();
+                try {
+                    value = fallback.recover(error);
+                    outcome = StepState.FALLBACK;
+                } catch (Throwable fallbackError) {
+                    error = fallbackError;
+                }
+            }
+            finish(outcome, error);
+        }
+
+        private boolean isExpired() {
+            lock.lock();
+            try {
+                return expired;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Bị interrupt vì đồ thị đã thất bại/hết deadline, không phải do timeout của chính bước
+        private boolean isCancelled() {
+            lock.lock();
+            try {
+                return failure != null && !expired;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void finish(StepState outcome, Throwable error) {
+            lock.lock();
+            try {
+                endNanos = System.nanoTime();
+                state = outcome;
+                unfinished--;
+                if (outcome == StepState.SUCCESS || outcome == StepState.FALLBACK) {
+                    if (failure == null) {
+                        for (Step<?> dependent : dependents) {
+                            if (--dependent.pendingInputs == 0 && dependent.state == StepState.PENDING) {
+                                dependent.launch();
+                            }
+                        }
+                    }
+                } else if (failure == null) {
+                    failure = error;
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private StepTiming timing(long now) {
+            lock.lock();
+            try {
+                if (beginNanos == 0) {
+                    return new StepTiming(name, state, null, null);
+                }
+                long end = endNanos > 0 ? endNanos : now;
+                return new StepTiming(name, state,
+                        Duration.ofNanos(beginNanos - startNanos), Duration.ofNanos(end - startNanos));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
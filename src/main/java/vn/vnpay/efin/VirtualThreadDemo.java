@@ -1,13 +1,29 @@
 package vn.vnpay.efin;
 
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.*;
-import java.util.stream.IntStream;
+import java.util.function.Supplier;
 
 public class VirtualThreadDemo {
 
     private static final int NUMBER_OF_TASKS = 10_000;
+    static final int NON_BLOCKING_TASKS = 1000;
+    private static final int MILLION_TASKS = 1_000_000;
+
+    // Tải trộn: mỗi core vài job tính toán ~50ms, song song với các request IO ngủ 5ms nhiều lần
+    private static final int CPU_JOBS_PER_CORE = 8;
+    private static final Duration CPU_JOB_TIME = Duration.ofMillis(50);
+    private static final int IO_REQUESTS = 200;
+    private static final int IO_ROUNDS = 20;
+    private static final long IO_WAIT_MILLIS = 5;
 
     public static void main(String[] args) throws Exception {
         System.out.println("Demo Virtual Thread - Xử lý non-blocking");
@@ -19,10 +35,16 @@ public class VirtualThreadDemo {
         System.out.println("\n2. Demo Non-blocking IO với Virtual Thread:");
         demoNonBlockingIO();
         
-        System.out.println("\n3. Demo HTTP Server với Virtual Thread:");
+        System.out.println("\n3. Theo dõi " + MILLION_TASKS + " tác vụ với CompletionTracker:");
+        demoMillionTasks();
+
+        System.out.println("\n4. Tải trộn CPU/IO: virtual-only, platform-only và hybrid:");
+        compareMixedWorkload();
+
+        System.out.println("\n5. Demo HTTP Server với Virtual Thread:");
         HttpServerDemo.main(args);
         
-        System.out.println("\n4. Demo Database với Virtual Thread:");
+        System.out.println("\n6. Demo Database với Virtual Thread:");
         DatabaseVirtualThreadDemo.main(args);
     }
     
@@ -46,58 +68,194 @@ public class VirtualThreadDemo {
     }
     
     private static void submitTasks(ExecutorService executorService) throws Exception {
-        CountDownLatch latch = new CountDownLatch(NUMBER_OF_TASKS);
-        IntStream.range(0, NUMBER_OF_TASKS).forEach(i -> {
-            executorService.submit(() -> {
+        // Giả lập tác vụ CPU nhẹ với thời gian chờ IO
+        submitTasks(executorService, NUMBER_OF_TASKS, () -> Thread.sleep(10)); // Giả lập I/O blocking
+    }
+
+    // Gửi taskCount tác vụ vào executor và chờ tất cả hoàn thành (dùng chung với benchmark JMH).
+    // CompletionTracker thay cho CountDownLatch chung: không có Future mỗi tác vụ, các thread không CAS chung một biến
+    static void submitTasks(ExecutorService executorService, int taskCount, BlockingTask task) throws InterruptedException {
+        CompletionTracker<Void> tracker = CompletionTracker.counting(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            tracker.execute(executorService, i, index -> {
                 try {
-                    // Giả lập tác vụ CPU nhẹ với thời gian chờ IO
-                    Thread.sleep(10); // Giả lập I/O blocking
+                    task.run();
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
-                } finally {
-                    latch.countDown();
                 }
+                return null;
             });
-        });
-        latch.await();
+        }
+        tracker.await();
+        if (tracker.failure() != null) {
+            throw new CompletionException(tracker.failedCount() + "/" + taskCount + " tác vụ lỗi", tracker.failure());
+        }
+    }
+
+    // Tác vụ có thể bị blocking (sleep, IO...) và bị gián đoạn
+    @FunctionalInterface
+    interface BlockingTask {
+        void run() throws InterruptedException;
     }
     
-    private static void demoNonBlockingIO() throws Exception {
-        System.out.println("Bắt đầu mô phỏng các tác vụ IO non-blocking với 1000 virtual threads...");
+    // Dùng lại trong ScalingStudy
+    static void demoNonBlockingIO() throws Exception {
+        System.out.println("Bắt đầu mô phỏng các tác vụ IO non-blocking với " + NON_BLOCKING_TASKS + " virtual threads...");
         
         try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
-            CountDownLatch latch = new CountDownLatch(1000);
+            CompletionTracker<Void> tracker = CompletionTracker.counting(NON_BLOCKING_TASKS);
             
-            for (int i = 0; i < 1000; i++) {
-                int taskId = i;
-                executor.submit(() -> {
-                    try {
-                        // Mô phỏng tác vụ IO như gọi API, truy vấn DB...
-                        simulateIOOperation(taskId);
-                    } finally {
-                        latch.countDown();
-                    }
+            for (int i = 0; i < NON_BLOCKING_TASKS; i++) {
+                tracker.execute(executor, i, taskId -> {
+                    // Mô phỏng tác vụ IO như gọi API, truy vấn DB...
+                    simulateIOOperation(taskId);
+                    return null;
                 });
             }
             
-            System.out.println("Đã tạo 1000 virtual threads để xử lý các tác vụ IO non-blocking");
+            System.out.println("Đã tạo " + NON_BLOCKING_TASKS + " virtual threads để xử lý các tác vụ IO non-blocking");
             System.out.println("Đang chờ hoàn thành...");
-            latch.await();
+            tracker.await();
+            Log.flush();
             System.out.println("Tất cả tác vụ IO đã hoàn thành!");
         }
     }
     
+    // Một triệu virtual thread, mỗi thread ghi kết quả vào mảng cấp phát sẵn của tracker.
+    // Không có Future hay danh sách nào lớn dần theo số tác vụ, bộ nhớ chỉ tăng theo số thread đang sống
+    private static void demoMillionTasks() throws Exception {
+        long retainedBefore = retainedHeap();
+        Instant start = Instant.now();
+        CompletionTracker<Integer> tracker = CompletionTracker.collecting(MILLION_TASKS);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < MILLION_TASKS; i++) {
+                tracker.execute(executor, i, index -> index % 1000);
+            }
+            tracker.await();
+        }
+        Duration duration = Duration.between(start, Instant.now());
+        long retainedAfter = retainedHeap();
+
+        long sum = 0;
+        for (int i = 0; i < MILLION_TASKS; i++) {
+            sum += tracker.result(i);
+        }
+        System.out.println(tracker + " sau " + duration.toMillis() + " ms, tổng kết quả " + sum);
+        System.out.println("Heap còn giữ sau khi xong: thêm khoảng " + Math.max(0, retainedAfter - retainedBefore) / (1024 * 1024)
+                + " MB (mảng kết quả " + MILLION_TASKS + " phần tử và các Integer trong đó)");
+    }
+
+    // Heap đang dùng sau khi gọi GC, xấp xỉ lượng bộ nhớ còn được tham chiếu
+    private static long retainedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
     private static void simulateIOOperation(int taskId) {
         try {
             // Mô phỏng thời gian chờ IO ngẫu nhiên từ 100-300ms
             int delay = ThreadLocalRandom.current().nextInt(100, 300);
-            Thread.sleep(delay);
+            BlockingStrategy.current().block(delay);
             
             if (taskId % 100 == 0) {
-                System.out.println("Task " + taskId + " hoàn thành sau " + delay + "ms, sử dụng " + Thread.currentThread());
+                Log.info("Task {} hoàn thành sau {}ms, sử dụng {}", taskId, delay, Thread.currentThread());
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
-} 
\ No newline at end of file
+
+    private static void compareMixedWorkload() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int cpuJobs = CPU_JOBS_PER_CORE * cores;
+        int rounds = HashJob.calibrate(CPU_JOB_TIME);
+        System.out.println(cpuJobs + " job CPU (~" + CPU_JOB_TIME.toMillis() + "ms/job, " + cores + " core) + "
+                + IO_REQUESTS + " request IO (" + IO_ROUNDS + " lần chờ " + IO_WAIT_MILLIS + "ms)");
+        System.out.printf("%-15s %10s %12s %14s %14s %14s%n",
+                "Chế độ", "Tổng (ms)", "Tác vụ/s", "IO trễ p50", "IO trễ p99", "IO trễ max");
+
+        runMixedWorkload("virtual-only", Executors::newVirtualThreadPerTaskExecutor, cpuJobs, rounds);
+        runMixedWorkload("platform-only", () -> Executors.newFixedThreadPool(IO_REQUESTS + cpuJobs), cpuJobs, rounds);
+        runMixedWorkload("hybrid", HybridExecutor::new, cpuJobs, rounds);
+        System.out.println("IO trễ = thời gian chờ thực tế vượt quá " + IO_WAIT_MILLIS
+                + "ms, tức lúc virtual thread đã sẵn sàng nhưng chưa có carrier/CPU để chạy tiếp");
+    }
+
+    private static void runMixedWorkload(String mode, Supplier<ExecutorService> factory, int cpuJobs, int rounds)
+            throws Exception {
+        long[] ioDelays = new long[IO_REQUESTS * IO_ROUNDS];
+        List<Future<?>> futures = new ArrayList<>(cpuJobs + IO_REQUESTS);
+        long start = System.nanoTime();
+        try (ExecutorService executor = factory.get()) {
+            for (int i = 0; i < IO_REQUESTS; i++) {
+                int offset = i * IO_ROUNDS;
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < IO_ROUNDS; round++) {
+                        long begin = System.nanoTime();
+                        Thread.sleep(IO_WAIT_MILLIS);
+                        ioDelays[offset + round] = System.nanoTime() - begin - TimeUnit.MILLISECONDS.toNanos(IO_WAIT_MILLIS);
+                    }
+                    return null;
+                }));
+            }
+            // Job CPU gửi sau khi các request IO đã chạy, để chúng chạy chồng lên nhau.
+            // Với HybridExecutor, job CPU đi sang pool CPU nhờ @CpuBound
+            for (int i = 0; i < cpuJobs; i++) {
+                futures.add(executor.submit(new HashJob(rounds)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(ioDelays);
+        System.out.printf("%-15s %10d %12.0f %12.1fms %12.1fms %12.1fms%n",
+                mode, TimeUnit.NANOSECONDS.toMillis(elapsed), futures.size() * 1e9 / elapsed,
+                percentileMillis(ioDelays, 0.50), percentileMillis(ioDelays, 0.99),
+                percentileMillis(ioDelays, 1.0));
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1);
+        return Math.max(0, sorted[Math.max(0, index)]) / 1e6;
+    }
+
+    /**
+     * Job tính toán thuần CPU: băm SHA-256 lặp lại trên một khối 1KB.
+     */
+    @CpuBound
+    static final class HashJob implements Callable<byte[]> {
+
+        private static final byte[] BLOCK = "virtual-thread-".repeat(70).getBytes(StandardCharsets.UTF_8);
+
+        private final int rounds;
+
+        HashJob(int rounds) {
+            this.rounds = rounds;
+        }
+
+        @Override
+        public byte[] call() throws NoSuchAlgorithmException {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = BLOCK;
+            for (int i = 0; i < rounds; i++) {
+                digest.update(BLOCK);
+                hash = digest.digest(hash);
+            }
+            return hash;
+        }
+
+        // Ước lượng số vòng để một job chạy khoảng target trên máy hiện tại (chạy vài lần cho JIT khởi động)
+        static int calibrate(Duration target) throws NoSuchAlgorithmException {
+            int probe = 2_000;
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < 5; i++) {
+                long begin = System.nanoTime();
+                new HashJob(probe).call();
+                best = Math.min(best, System.nanoTime() - begin);
+            }
+            return (int) Math.max(1, probe * target.toNanos() / best);
+        }
+    }
+}